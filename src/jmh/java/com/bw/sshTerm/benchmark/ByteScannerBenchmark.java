@@ -0,0 +1,61 @@
+/**
+ * Copyright 2025, Bernd Wengenroth.
+ * This is free and unencumbered software released into the public domain.
+ * Check LICENSE for details.
+ */
+package com.bw.sshTerm.benchmark;
+
+import com.bw.sshTerm.ByteScanner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the {@link ByteScanner} implementations alone. Reports MB/s.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ByteScannerBenchmark {
+
+    @Param({"scalar", "vector"})
+    public String scanner;
+
+    @Param({"PLAIN", "SGR", "CJK"})
+    public Workload workload;
+
+    private ByteScanner byteScanner;
+    private byte[] payload;
+
+    @Setup
+    public void setup() {
+        byteScanner = ByteScanner.create(scanner);
+        payload = workload.createPayload();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Workload.PAYLOAD_SIZE)
+    public int scan() {
+        int controls = 0;
+        int i = 0;
+        while (i < payload.length) {
+            i = byteScanner.findControl(payload, i, payload.length) + 1;
+            ++controls;
+        }
+        return controls;
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright 2025, Bernd Wengenroth.
+ * This is free and unencumbered software released into the public domain.
+ * Check LICENSE for details.
+ */
+package com.bw.sshTerm.benchmark;
+
+import com.bw.sshTerm.GlyphAtlas;
+import com.bw.sshTerm.TerminalPane;
+import com.bw.sshTerm.Xterm;
+import com.bw.sshTerm.model.TerminalModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the painting of a {@link TerminalPane} into an image, with characters drawn as text
+ * or from the {@link GlyphAtlas} and with or without back buffer.<p>
+ * The screen shows the end of the payload of the workload. {@link #paint()} paints the unchanged screen, with back buffer
+ * only the image is copied. {@link #scrollLine()} adds a line at the bottom, so that the screen scrolls, and paints.
+ */
+@State(Scope.Thread)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PaintBenchmark {
+
+    @Param({"PLAIN", "SGR", "CJK"})
+    public Workload workload;
+
+    @Param({"false", "true"})
+    public boolean glyphAtlas;
+
+    @Param({"false", "true"})
+    public boolean backBuffer;
+
+    private TerminalPane pane;
+    private BufferedImage image;
+    private Xterm xterm;
+    private byte[] line;
+
+    @Setup
+    public void setup() {
+        final TerminalModel model = new TerminalModel(Workload.COLUMNS, Workload.ROWS);
+        pane = new TerminalPane("Monospaced-PLAIN-14", model);
+        pane.setForeground(Color.BLACK);
+        pane.setBackground(Color.WHITE);
+        final FontMetrics metrics = pane.getFontMetrics(pane.getFont());
+        final int charWidth = metrics.charWidth('W');
+        pane.setSize(charWidth * (Workload.COLUMNS + 4), metrics.getHeight() * Workload.ROWS);
+        pane.getPreferredSize();
+
+        xterm = new Xterm();
+        xterm.attach(null, model);
+        final byte[] payload = workload.createPayload();
+        xterm.handleShellOutput(payload, payload.length);
+        line = ("\033[" + Workload.ROWS + ";1H\033[32m12:00:00 INFO\033[0m request served in 12 ms by worker-3, status=200\r\n")
+                .getBytes(StandardCharsets.UTF_8);
+
+        pane.setGlyphAtlasEnabled(glyphAtlas);
+        pane.setBackBufferEnabled(backBuffer);
+        pane.setConnected(true, null);
+        image = new BufferedImage(pane.getWidth(), pane.getHeight(), BufferedImage.TYPE_INT_RGB);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void paint() {
+        paintPane();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void scrollLine() {
+        xterm.handleShellOutput(line, line.length);
+        paintPane();
+    }
+
+    private void paintPane() {
+        final Graphics2D g = image.createGraphics();
+        try {
+            g.setClip(0, 0, image.getWidth(), image.getHeight());
+            g.setColor(pane.getBackground());
+            g.fillRect(0, 0, image.getWidth(), image.getHeight());
+            pane.paintComponent(g);
+        } finally {
+            g.dispose();
+        }
+    }
+}
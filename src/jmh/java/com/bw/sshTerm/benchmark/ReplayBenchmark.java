@@ -0,0 +1,68 @@
+/**
+ * Copyright 2025, Bernd Wengenroth.
+ * This is free and unencumbered software released into the public domain.
+ * Check LICENSE for details.
+ */
+package com.bw.sshTerm.benchmark;
+
+import com.bw.sshTerm.SessionPlayer;
+import com.bw.sshTerm.SessionRecorder;
+import com.bw.sshTerm.Xterm;
+import com.bw.sshTerm.model.TerminalModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays a recorded session (see {@link SessionRecorder}) as fast as possible into a headless {@link Xterm}.<p>
+ * The recording is taken from system property "sshTerm.replay" (set by "gradle jmh -PjmhReplay=file").
+ * If not set, a recording of the {@link Workload#SGR} payload is used.
+ * Reports the time per replay of the whole recording.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ReplayBenchmark {
+
+    private SessionPlayer player;
+    private Xterm control;
+
+    @Setup
+    public void setup() throws IOException {
+        String file = System.getProperty("sshTerm.replay");
+        if (file != null && !file.isEmpty()) {
+            player = new SessionPlayer(Paths.get(file), false);
+        } else {
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            byte[] payload = Workload.SGR.createPayload();
+            try (SessionRecorder recorder = new SessionRecorder(os)) {
+                recorder.recordResize(Workload.COLUMNS, Workload.ROWS);
+                for (int offset = 0; offset < payload.length; offset += 1024)
+                    recorder.recordOutput(payload, offset, Math.min(1024, payload.length - offset));
+            }
+            player = new SessionPlayer(os.toByteArray(), false);
+        }
+        control = new Xterm();
+        control.attach(null, new TerminalModel(Workload.COLUMNS, Workload.ROWS));
+    }
+
+    @Benchmark
+    public long replay() throws IOException {
+        return player.play(control);
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright 2025, Bernd Wengenroth.
+ * This is free and unencumbered software released into the public domain.
+ * Check LICENSE for details.
+ */
+package com.bw.sshTerm.benchmark;
+
+import com.bw.sshTerm.TerminalControl;
+import com.bw.sshTerm.Xterm;
+import com.bw.sshTerm.model.TerminalModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures parser and model: Feeds a payload in read-sized chunks into {@link TerminalControl#handleShellOutput}
+ * of a headless {@link Xterm}.<p>
+ * One operation is one byte of the payload, so
+ * {@link #throughput()} reports MB/s (bytes per microsecond) and {@link #timePerByte()} reports ns/byte.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class TerminalBenchmark {
+
+    /**
+     * Size of the chunks, same as the read buffer of the JSch channel.
+     */
+    private static final int CHUNK_SIZE = 1024;
+
+    @Param({"PLAIN", "SGR", "CURSOR", "SCROLL", "CJK"})
+    public Workload workload;
+
+    private byte[] payload;
+    private final byte[] buffer = new byte[CHUNK_SIZE];
+    private TerminalControl control;
+
+    @Setup
+    public void setup() {
+        payload = workload.createPayload();
+        control = new Xterm();
+        control.attach(null, new TerminalModel(Workload.COLUMNS, Workload.ROWS));
+    }
+
+    private void process() {
+        for (int offset = 0; offset < payload.length; offset += CHUNK_SIZE) {
+            int n = Math.min(CHUNK_SIZE, payload.length - offset);
+            System.arraycopy(payload, offset, buffer, 0, n);
+            control.handleShellOutput(buffer, n);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @OperationsPerInvocation(Workload.PAYLOAD_SIZE)
+    public void throughput() {
+        process();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @OperationsPerInvocation(Workload.PAYLOAD_SIZE)
+    public void timePerByte() {
+        process();
+    }
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright 2025, Bernd Wengenroth.
+ * This is free and unencumbered software released into the public domain.
+ * Check LICENSE for details.
+ */
+package com.bw.sshTerm.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Generates output of a terminal server for benchmarks.<p>
+ * Each payload starts with "home and clear screen", so repeated processing starts from the same state,
+ * and is padded with spaces to exactly {@link #PAYLOAD_SIZE} bytes.
+ * The payloads are generated with a fixed seed and are identical for every run.
+ */
+public enum Workload {
+
+    /**
+     * Plain ASCII text lines, e.g. "cat" of a log file.
+     */
+    PLAIN {
+        @Override
+        void generate(Random r, StringBuilder sb) {
+            appendWords(r, sb, 60 + r.nextInt(40));
+            sb.append("\r\n");
+        }
+    },
+    /**
+     * Text with many color changes, e.g. "ls --color" or compiler output.
+     */
+    SGR {
+        @Override
+        void generate(Random r, StringBuilder sb) {
+            int n = 4 + r.nextInt(8);
+            for (int i = 0; i < n; ++i) {
+                sb.append("\033[").append(r.nextInt(2)).append(';').append(30 + r.nextInt(8));
+                if (r.nextInt(4) == 0)
+                    sb.append(';').append(40 + r.nextInt(8));
+                sb.append('m');
+                appendWords(r, sb, 4 + r.nextInt(8));
+                sb.append("\033[0m ");
+            }
+            sb.append("\r\n");
+        }
+    },
+    /**
+     * Cursor addressed redraws of the full screen, e.g. "top" or a full screen editor.
+     */
+    CURSOR {
+        @Override
+        void generate(Random r, StringBuilder sb) {
+            sb.append("\033[H");
+            for (int row = 1; row <= ROWS; ++row) {
+                sb.append("\033[").append(row).append(";1H");
+                if (row % 3 == 0)
+                    sb.append("\033[7m");
+                appendWords(r, sb, 20 + r.nextInt(COLUMNS - 30));
+                sb.append("\033[0m\033[K");
+            }
+            sb.append("\033[").append(1 + r.nextInt(ROWS)).append(';').append(1 + r.nextInt(COLUMNS)).append('H');
+        }
+    },
+    /**
+     * Scrolling inside a scroll region, e.g. a pager or editor with status lines.
+     */
+    SCROLL {
+        @Override
+        void generate(Random r, StringBuilder sb) {
+            sb.append("\033[2;").append(ROWS - 1).append('r');
+            sb.append("\033[").append(ROWS - 1).append(";1H");
+            for (int i = 0; i < ROWS; ++i) {
+                sb.append("\r\n");
+                appendWords(r, sb, 20 + r.nextInt(50));
+            }
+            sb.append("\033[r");
+        }
+    },
+    /**
+     * UTF-8 encoded CJK text mixed with some ASCII.
+     */
+    CJK {
+        @Override
+        void generate(Random r, StringBuilder sb) {
+            int n = 20 + r.nextInt(20);
+            for (int i = 0; i < n; ++i) {
+                if (r.nextInt(8) == 0)
+                    sb.append(' ').append(r.nextInt(1000)).append(' ');
+                else
+                    sb.appendCodePoint(0x4E00 + r.nextInt(0x9FFF - 0x4E00));
+            }
+            sb.append("\r\n");
+        }
+    };
+
+    /**
+     * Size of each payload in bytes.
+     */
+    public static final int PAYLOAD_SIZE = 1 << 20;
+
+    /**
+     * Terminal size the payloads are generated for.
+     */
+    public static final int COLUMNS = 80;
+    public static final int ROWS = 24;
+
+    private static final String LETTERS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789.,-_/";
+
+    /**
+     * Appends one unit (a line or a screen) of output.
+     */
+    abstract void generate(Random r, StringBuilder sb);
+
+    /**
+     * Creates the payload.
+     */
+    public byte[] createPayload() {
+        Random r = new Random(4711);
+        ByteArrayOutputStream os = new ByteArrayOutputStream(PAYLOAD_SIZE);
+        StringBuilder sb = new StringBuilder(4096);
+        sb.append("\033[H\033[2J");
+        while (true) {
+            generate(r, sb);
+            byte[] unit = sb.toString().getBytes(StandardCharsets.UTF_8);
+            if (os.size() + unit.length > PAYLOAD_SIZE)
+                break;
+            os.write(unit, 0, unit.length);
+            sb.setLength(0);
+        }
+        byte[] payload = Arrays.copyOf(os.toByteArray(), PAYLOAD_SIZE);
+        Arrays.fill(payload, os.size(), PAYLOAD_SIZE, (byte) ' ');
+        return payload;
+    }
+
+    static void appendWords(Random r, StringBuilder sb, int length) {
+        int end = sb.length() + length;
+        while (sb.length() < end) {
+            if (r.nextInt(6) == 0)
+                sb.append(' ');
+            else
+                sb.append(LETTERS.charAt(r.nextInt(LETTERS.length())));
+        }
+    }
+}
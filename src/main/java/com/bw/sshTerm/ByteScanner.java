@@ -0,0 +1,65 @@
+/**
+ * Copyright 2025, Bernd Wengenroth.
+ * This is free and unencumbered software released into the public domain.
+ * Check LICENSE for details.
+ */
+package com.bw.sshTerm;
+
+/**
+ * Finds the next "interesting" byte in the output of the terminal server.<p>
+ * Most output is text (printable ASCII or UTF-8), that can be written to the screen without parsing.
+ * A scanner finds the end of such runs, so the parser can skip over plain text.<p>
+ * Two implementations exist: A scalar one and one based on the (incubating) Vector API of the JDK.
+ * The vector implementation is only available if the module "jdk.incubator.vector" was added to the JVM
+ * ("--add-modules jdk.incubator.vector").
+ */
+public interface ByteScanner {
+
+    /**
+     * System property to select the scanner. Values are "scalar", "vector" or "auto" (the default).
+     */
+    String PROPERTY_SCANNER = "sshTerm.scanner";
+
+    /**
+     * Creates the scanner selected by system property {@link #PROPERTY_SCANNER}.
+     */
+    static ByteScanner create() {
+        return create(System.getProperty(PROPERTY_SCANNER, "auto"));
+    }
+
+    /**
+     * Creates a scanner.
+     *
+     * @param type "scalar", "vector" or "auto". "vector" and "auto" fall back to the scalar scanner if
+     *             the Vector API is not available.
+     * @return The scanner, never null.
+     */
+    static ByteScanner create(String type) {
+        if (!"scalar".equalsIgnoreCase(type) &&
+                ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                return (ByteScanner) Class.forName("com.bw.sshTerm.VectorByteScanner")
+                        .getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // Fall back to scalar version.
+            }
+        }
+        return new ScalarByteScanner();
+    }
+
+    /**
+     * Gets the index of the first control byte (C0 control 0x00-0x1F or DEL 0x7F).
+     * Bytes &gt;= 0x80 are handled as text (parts of UTF-8 sequences).
+     *
+     * @param buffer The buffer.
+     * @param start  The index to start with.
+     * @param end    The end index (exclusive) of the valid data in buffer.
+     * @return The index of the first control byte or end if all bytes are text.
+     */
+    int findControl(byte[] buffer, int start, int end);
+
+    /**
+     * Gets a short name of the implementation.
+     */
+    String getName();
+}
@@ -15,8 +15,6 @@ public class Caret {
     private TerminalPane pane;
 
     private boolean visible = true;
-    private int caretX = 0;
-    private int caretY = 0;
 
     private int lastDrawnCursorX = -1;
     private int lastDrawnCursorY = -1;
@@ -27,27 +25,6 @@ public class Caret {
 
     }
 
-    public void setCaret(int x, int y) {
-        caretX = x;
-        caretY = y;
-    }
-
-    public int getCaretX() {
-        return caretX;
-    }
-
-    public void setCaretX(int x) {
-        caretX = x;
-    }
-
-    public int getCaretY() {
-        return caretY;
-    }
-
-    public void setCaretY(int y) {
-        caretY = y;
-    }
-
     public void install(TerminalPane pane) {
 
         this.pane = pane;
@@ -67,8 +44,8 @@ public class Caret {
      */
     public void drawCursor(Graphics2D g2) {
 
-        int newCursorX = pane.getLeftPageMargin() + caretX * pane.charWidth;
-        int newCursorY = pane.getBaseY() + (caretY * pane.charHeight);
+        int newCursorX = pane.getLeftPageMargin() + pane.model.getSnapshot().caretX * pane.charWidth;
+        int newCursorY = pane.getBaseY() + (pane.model.getSnapshot().caretY * pane.charHeight);
         boolean needsUpdateOldPosition = (lastDrawnCursorX >= 0) && (newCursorX != lastDrawnCursorX || newCursorY != lastDrawnCursorY);
 
         if (needsUpdateOldPosition) {
@@ -101,12 +78,22 @@ public class Caret {
         }
     }
 
+    /**
+     * Gets the area of the cursor at the current caret position and, if drawn, at the last drawn position.
+     */
+    public Rectangle getRepaintArea() {
+        Rectangle r = new Rectangle(pane.getLeftPageMargin() + pane.model.getSnapshot().caretX * pane.charWidth,
+                pane.getBaseY() + (pane.model.getSnapshot().caretY * pane.charHeight), pane.charWidth + 1, pane.charHeight + 1);
+        if (lastCursorDrawn)
+            r.add(new Rectangle(lastDrawnCursorX, lastDrawnCursorY, pane.charWidth + 1, pane.charHeight + 1));
+        return r;
+    }
+
     /**
      * Sets the caret visible or not.
      */
     public void setVisible(boolean visible) {
         if (this.visible != visible) {
-            System.out.println("Switched Caret visible " + visible);
             this.visible = visible;
             pane.triggerRepaintCursor();
         }
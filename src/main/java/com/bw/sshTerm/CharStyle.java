@@ -3,5 +3,6 @@ package com.bw.sshTerm;
 public interface CharStyle {
     int BOLD = 1;
     int UNDERLINED = 2;
+    int INVERSE = 4;
 
 }
@@ -0,0 +1,178 @@
+/**
+ * Copyright 2025, Bernd Wengenroth.
+ * This is free and unencumbered software released into the public domain.
+ * Check LICENSE for details.
+ */
+package com.bw.sshTerm;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reusable accumulator for parameters of control sequences.<p>
+ * Numeric parameters and sub-parameters (separated by ':') are collected into a primitive array while the bytes arrive.
+ * The text of OSC sequences is collected into a bounded byte buffer.
+ * After construction nothing is allocated, unless the text is explicitly requested as string.
+ */
+public final class ControlSequenceParameters {
+
+    /**
+     * Maximal number of parameters. Additional parameters are ignored.
+     */
+    public static final int MAX_PARAMETERS = 32;
+
+    /**
+     * Maximal length of text in bytes. Additional text is ignored.
+     */
+    public static final int MAX_TEXT_LENGTH = 4096;
+
+    /**
+     * Maximal value of a numeric parameter. Larger values are clamped.
+     */
+    public static final int MAX_VALUE = 0xFFFF;
+
+    /**
+     * Value of parameters without digits.
+     */
+    private static final int DEFAULT = -1;
+
+    private final int[] values = new int[MAX_PARAMETERS];
+    private final boolean[] subParameter = new boolean[MAX_PARAMETERS];
+    private final byte[] text = new byte[MAX_TEXT_LENGTH];
+    private int count = 0;
+    private int textLength = 0;
+
+    /**
+     * Removes all parameters and text.
+     */
+    public void reset() {
+        count = 0;
+        textLength = 0;
+    }
+
+    /**
+     * Adds a digit to the current parameter. Starts the first parameter if needed.
+     *
+     * @param digit The digit value [0-9].
+     */
+    public void addDigit(int digit) {
+        if (count == 0)
+            startParameter(false);
+        int i = count - 1;
+        if (i < MAX_PARAMETERS) {
+            int v = values[i];
+            v = (v == DEFAULT) ? digit : (v * 10 + digit);
+            values[i] = Math.min(v, MAX_VALUE);
+        }
+    }
+
+    /**
+     * Starts the next parameter (separator ';').
+     */
+    public void nextParameter() {
+        if (count == 0)
+            startParameter(false);
+        startParameter(false);
+    }
+
+    /**
+     * Starts the next sub-parameter (separator ':').
+     */
+    public void nextSubParameter() {
+        if (count == 0)
+            startParameter(false);
+        startParameter(true);
+    }
+
+    private void startParameter(boolean sub) {
+        if (count < MAX_PARAMETERS) {
+            values[count] = DEFAULT;
+            subParameter[count] = sub;
+        }
+        ++count;
+    }
+
+    /**
+     * Gets the number of parameters, including sub-parameters.
+     */
+    public int size() {
+        return Math.min(count, MAX_PARAMETERS);
+    }
+
+    /**
+     * Gets a numeric parameter.
+     *
+     * @param n          Zero based index of the parameter.
+     * @param defaultVal Value to return if the parameter doesn't exist or is empty.
+     * @return The value.
+     */
+    public int getInt(int n, int defaultVal) {
+        if (n < size()) {
+            int v = values[n];
+            return v == DEFAULT ? defaultVal : v;
+        }
+        return defaultVal;
+    }
+
+    /**
+     * Checks if a parameter is a sub-parameter of the previous one, e.g. "5" in "38:5:123".
+     *
+     * @param n Zero based index of the parameter.
+     */
+    public boolean isSubParameter(int n) {
+        return n < size() && subParameter[n];
+    }
+
+    /**
+     * Adds a byte to the text.
+     */
+    public void addText(byte b) {
+        if (textLength < MAX_TEXT_LENGTH)
+            text[textLength++] = b;
+    }
+
+    /**
+     * Gets the length of the text in bytes.
+     */
+    public int getTextLength() {
+        return textLength;
+    }
+
+    /**
+     * Gets the text as string. Allocates a new string on each call.
+     */
+    public String getText() {
+        return new String(text, 0, textLength, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Checks if the text is equal to some string without allocating memory.
+     *
+     * @param other The string to compare with, can be null.
+     * @return true if equal.
+     */
+    public boolean textEquals(CharSequence other) {
+        if (other == null || other.length() != textLength)
+            return false;
+        for (int i = 0; i < textLength; ++i) {
+            byte b = text[i];
+            // Non-ASCII bytes would need decoding, handle as "not equal".
+            if (b < 0 || other.charAt(i) != b)
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < size(); ++i) {
+            if (i > 0)
+                sb.append(subParameter[i] ? ':' : ',');
+            if (values[i] != DEFAULT)
+                sb.append(values[i]);
+        }
+        if (textLength > 0)
+            sb.append(" '").append(getText()).append('\'');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,201 @@
+/**
+ * Copyright 2025, Bernd Wengenroth.
+ * This is free and unencumbered software released into the public domain.
+ * Check LICENSE for details.
+ */
+package com.bw.sshTerm;
+
+import com.bw.sshTerm.model.CharWidth;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache of rasterized characters for {@link TerminalPane}.<p>
+ * Each combination of character, bold style and foreground color is drawn once into a slot of a shared image,
+ * painting a character copies its slot. A slot is two cells wide, so that wide characters fit.
+ * If all slots are in use, the least recently used slot is reused.<br>
+ * There is one atlas for each font, cell size, scale of the display and text rendering hints, shared by all panes.
+ * So characters with combining marks are not drawn by an atlas, their cluster ids are only valid for one model.
+ * LCD text antialiasing can't be drawn into a transparent image, it is replaced by grayscale antialiasing.
+ * Atlases must only be used in the event dispatch thread.
+ */
+public final class GlyphAtlas {
+
+    /**
+     * Number of slots of an atlas.
+     */
+    public static final int CAPACITY = 2048;
+
+    private static final int SLOTS_PER_ROW = 64;
+
+    private static final Map<List<Object>, GlyphAtlas> atlases = new HashMap<>();
+
+    private final Font font;
+    private final Font bold;
+    private final int cellWidth;
+    private final int cellHeight;
+    private final int ascent;
+    private final double scale;
+    private final Object antialiasing;
+    private final Object fractionalMetrics;
+    // Size of a slot in pixels of the image.
+    private final int slotWidth;
+    private final int slotHeight;
+    private final BufferedImage image;
+    // Key and last use of each slot.
+    private final long[] keys = new long[CAPACITY];
+    private final long[] used = new long[CAPACITY];
+    private final byte[] cells = new byte[CAPACITY];
+    private long clock = 0;
+    private int size = 0;
+    // Open addressing hash of slot+1, 0 for free entries.
+    private final int[] table = new int[CAPACITY * 2];
+
+    private GlyphAtlas(Font font, int cellWidth, int cellHeight, int ascent, double scale, Object antialiasing, Object fractionalMetrics) {
+        this.font = font;
+        this.bold = font.deriveFont(Font.BOLD);
+        this.cellWidth = cellWidth;
+        this.cellHeight = cellHeight;
+        this.ascent = ascent;
+        this.scale = scale;
+        this.antialiasing = antialiasing;
+        this.fractionalMetrics = fractionalMetrics;
+        slotWidth = (int) Math.ceil(2 * cellWidth * scale);
+        slotHeight = (int) Math.ceil(cellHeight * scale);
+        image = new BufferedImage(SLOTS_PER_ROW * slotWidth, (CAPACITY / SLOTS_PER_ROW) * slotHeight, BufferedImage.TYPE_INT_ARGB);
+    }
+
+    /**
+     * Gets the atlas to paint characters with a font into a graphics context.
+     *
+     * @param g          The graphics context, the transform and text rendering hints are used.
+     * @param font       The normal font, bold characters use the bold variant.
+     * @param cellWidth  The width of a cell.
+     * @param cellHeight The height of a cell.
+     * @param ascent     The ascent of the font.
+     * @return The atlas or null if the transform of the graphics context is not a scale and translation.
+     */
+    public static GlyphAtlas get(Graphics2D g, Font font, int cellWidth, int cellHeight, int ascent) {
+        final AffineTransform transform = g.getTransform();
+        if ((transform.getType() & ~(AffineTransform.TYPE_TRANSLATION | AffineTransform.TYPE_UNIFORM_SCALE)) != 0)
+            return null;
+        final double scale = transform.getScaleX();
+        final Object hint = g.getRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING);
+        final Object antialiasing = hint == null || hint == RenderingHints.VALUE_TEXT_ANTIALIAS_OFF
+                || hint == RenderingHints.VALUE_TEXT_ANTIALIAS_DEFAULT ? hint : RenderingHints.VALUE_TEXT_ANTIALIAS_ON;
+        final Object fractionalMetrics = g.getRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS);
+        return atlases.computeIfAbsent(Arrays.asList(font, cellWidth, cellHeight, ascent, scale, antialiasing, fractionalMetrics),
+                k -> new GlyphAtlas(font, cellWidth, cellHeight, ascent, scale, antialiasing, fractionalMetrics));
+    }
+
+    /**
+     * Draws a character.
+     *
+     * @param g     The graphics context.
+     * @param cp    The code point, not a {@link com.bw.sshTerm.model.Graphemes cluster}.
+     * @param bold  True to draw it bold.
+     * @param color The color.
+     * @param x     The left of the cell.
+     * @param y     The top of the cell.
+     */
+    public void draw(Graphics2D g, int cp, boolean bold, Color color, int x, int y) {
+        final long key = ((long) color.getRGB() << 32) | (bold ? 0x80000000L : 0) | cp;
+        final int mask = table.length - 1;
+        int i = hash(key) & mask;
+        int slot = -1;
+        int entry;
+        while ((entry = table[i]) != 0) {
+            if (keys[entry - 1] == key) {
+                slot = entry - 1;
+                break;
+            }
+            i = (i + 1) & mask;
+        }
+        if (slot < 0) {
+            slot = allocate();
+            keys[slot] = key;
+            insert(slot);
+            rasterize(slot, cp, bold, color);
+        }
+        used[slot] = ++clock;
+        final int width = cells[slot] * cellWidth;
+        final int sx = (slot % SLOTS_PER_ROW) * slotWidth;
+        final int sy = (slot / SLOTS_PER_ROW) * slotHeight;
+        g.drawImage(image, x, y, x + width, y + cellHeight,
+                sx, sy, sx + (int) Math.ceil(width * scale), sy + slotHeight, null);
+    }
+
+    private static int hash(long key) {
+        final long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32);
+    }
+
+    /**
+     * Gets a free slot or the least recently used one.
+     */
+    private int allocate() {
+        if (size < CAPACITY)
+            return size++;
+        int slot = 0;
+        for (int s = 1; s < CAPACITY; ++s) {
+            if (used[s] < used[slot])
+                slot = s;
+        }
+        remove(slot);
+        return slot;
+    }
+
+    private void insert(int slot) {
+        final int mask = table.length - 1;
+        int i = hash(keys[slot]) & mask;
+        while (table[i] != 0)
+            i = (i + 1) & mask;
+        table[i] = slot + 1;
+    }
+
+    private void remove(int slot) {
+        final int mask = table.length - 1;
+        int i = hash(keys[slot]) & mask;
+        while (table[i] != slot + 1)
+            i = (i + 1) & mask;
+        // Entries after the removed one are moved back if they are not at their home index anymore.
+        table[i] = 0;
+        for (int j = (i + 1) & mask; table[j] != 0; j = (j + 1) & mask) {
+            final int home = hash(keys[table[j] - 1]) & mask;
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                table[i] = table[j];
+                table[j] = 0;
+                i = j;
+            }
+        }
+    }
+
+    private void rasterize(int slot, int cp, boolean bold, Color color) {
+        final String text = new String(Character.toChars(cp));
+        cells[slot] = (byte) Math.max(1, CharWidth.of(cp));
+        final Graphics2D g = image.createGraphics();
+        try {
+            g.translate((slot % SLOTS_PER_ROW) * slotWidth, (slot / SLOTS_PER_ROW) * slotHeight);
+            g.setComposite(AlphaComposite.Clear);
+            g.fillRect(0, 0, slotWidth, slotHeight);
+            g.setComposite(AlphaComposite.SrcOver);
+            g.clipRect(0, 0, slotWidth, slotHeight);
+            g.scale(scale, scale);
+            if (antialiasing != null)
+                g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, antialiasing);
+            if (fractionalMetrics != null)
+                g.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, fractionalMetrics);
+            g.setFont(bold ? this.bold : font);
+            g.setColor(color);
+            g.drawString(text, 0, ascent);
+        } finally {
+            g.dispose();
+        }
+    }
+}
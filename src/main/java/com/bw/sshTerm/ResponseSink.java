@@ -0,0 +1,84 @@
+/**
+ * Copyright 2025, Bernd Wengenroth.
+ * This is free and unencumbered software released into the public domain.
+ * Check LICENSE for details.
+ */
+package com.bw.sshTerm;
+
+import java.util.Arrays;
+
+/**
+ * Collects answers to the terminal server (e.g. for device attribute or status requests)
+ * in a reusable buffer. The answers are sent together by {@link #flush(ShellChannel, TraceRecorder)}, usually once per read batch.
+ */
+public final class ResponseSink {
+
+    private byte[] buffer = new byte[64];
+    private int length = 0;
+
+    /**
+     * Adds bytes to the answer.
+     */
+    public void write(byte[] data) {
+        ensureSpace(data.length);
+        System.arraycopy(data, 0, buffer, length, data.length);
+        length += data.length;
+    }
+
+    /**
+     * Adds ASCII characters to the answer.
+     */
+    public void write(CharSequence ascii) {
+        final int n = ascii.length();
+        ensureSpace(n);
+        for (int i = 0; i < n; ++i)
+            buffer[length++] = (byte) ascii.charAt(i);
+    }
+
+    /**
+     * Adds a number as decimal ASCII digits to the answer.
+     */
+    public void writeNumber(int value) {
+        if (value < 0) {
+            ensureSpace(1);
+            buffer[length++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (int v = value; v >= 10; v /= 10)
+            ++digits;
+        ensureSpace(digits);
+        for (int i = length + digits - 1; i >= length; --i) {
+            buffer[i] = (byte) ('0' + (value % 10));
+            value /= 10;
+        }
+        length += digits;
+    }
+
+    /**
+     * Gets the number of collected bytes.
+     */
+    public int size() {
+        return length;
+    }
+
+    /**
+     * Sends the collected answers and clears the buffer.
+     *
+     * @param channel The channel to send to. If null, the answers are discarded.
+     * @param trace   The trace to record the answers to.
+     */
+    public void flush(ShellChannel channel, TraceRecorder trace) {
+        if (length > 0) {
+            trace.recordBytes(TraceRecorder.ANSWER, buffer, 0, length);
+            if (channel != null)
+                channel.write(buffer, 0, length);
+            length = 0;
+        }
+    }
+
+    private void ensureSpace(int n) {
+        if (length + n > buffer.length)
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + n));
+    }
+}
@@ -7,14 +7,22 @@
 package com.bw.sshTerm;
 
 import com.bw.sshTerm.jsch.JschShellChannel;
+import com.bw.sshTerm.model.ScrollbackSearch;
+import com.bw.sshTerm.model.ScrollbackSpill;
+import com.bw.sshTerm.model.TerminalModel;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 /**
  * Demonstrates usage of the ssh shell.
@@ -41,6 +49,21 @@ public class SSHTerm extends JPanel {
      */
     private ShellChannel channel;
 
+    /**
+     * File to dump the trace to, null if tracing is disabled.
+     */
+    private final String traceFile;
+
+    /**
+     * Recorder of the session, null if recording is disabled.
+     */
+    private SessionRecorder recorder;
+
+    /**
+     * File for old scrollback lines, null if old lines are dropped.
+     */
+    private ScrollbackSpill spill;
+
     /**
      * Create a new terminal. To start a session use {@link #connect}.
      */
@@ -52,7 +75,53 @@ public class SSHTerm extends JPanel {
         add(BorderLayout.CENTER, pane);
         add(BorderLayout.EAST, scroller);
         pane.setScrollbar(scroller);
+        pane.getModel().setScrollbackLimit(arguments.scrollback);
+        if (arguments.spill != null) {
+            try {
+                spill = new ScrollbackSpill(Paths.get(arguments.spill), true);
+                pane.getModel().setScrollbackSpill(spill);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
 
+        traceFile = arguments.trace;
+        if (traceFile != null)
+            ctrl.getTrace().setEnabled(true);
+
+        // Ctrl+Shift+F searches the scrollback-buffer. The pane consumes all keys, so the key is caught before.
+        KeyboardFocusManager.getCurrentKeyboardFocusManager().addKeyEventDispatcher(e -> {
+            if (e.getID() == KeyEvent.KEY_PRESSED && e.getKeyCode() == KeyEvent.VK_F && e.getComponent() == pane
+                    && (e.getModifiersEx() & (InputEvent.CTRL_DOWN_MASK | InputEvent.SHIFT_DOWN_MASK))
+                    == (InputEvent.CTRL_DOWN_MASK | InputEvent.SHIFT_DOWN_MASK)) {
+                searchScrollback();
+                return true;
+            }
+            return false;
+        });
+    }
+
+    /**
+     * Asks for a text and highlights all hits in the scrollback-buffer.
+     * The newest hit is shown.
+     */
+    public void searchScrollback() {
+        final String text = JOptionPane.showInputDialog(this, "Search", "Search", JOptionPane.QUESTION_MESSAGE);
+        if (text == null || text.isEmpty()) {
+            pane.setSearchHits(null);
+            return;
+        }
+        ScrollbackSearch.search(pane.getModel(), text, true, 10000).whenComplete((hits, error) ->
+                SwingUtilities.invokeLater(() -> {
+                    if (error != null) {
+                        error.printStackTrace();
+                        return;
+                    }
+                    pane.setSearchHits(hits);
+                    if (!hits.isEmpty())
+                        pane.showSearchHit(hits.get(hits.size() - 1));
+                    pane.requestFocusInWindow();
+                }));
     }
 
     /**
@@ -90,21 +159,56 @@ public class SSHTerm extends JPanel {
 
         frame.setVisible(true);
         try {
-            // Calling with null as user or password will trigger input dialogs,
-            term.connect(arguments.login, arguments.password, arguments.host, arguments.port);
-
+            if (arguments.replay != null) {
+                term.replay(Paths.get(arguments.replay), !arguments.fast);
+            } else {
+                if (arguments.record != null)
+                    term.record(Paths.get(arguments.record));
+                // Calling with null as user or password will trigger input dialogs,
+                term.connect(arguments.login, arguments.password, arguments.host, arguments.port);
+            }
         } catch (Exception ex) {
             ex.printStackTrace();
         }
     }
 
+    /**
+     * Records the output of the next session started by {@link #connect}.
+     *
+     * @param file The file to write to.
+     * @throws IOException If the file can't be created.
+     */
+    public void record(Path file) throws IOException {
+        recorder = new SessionRecorder(file);
+    }
+
+    /**
+     * Replays a recorded session instead of connecting to a server.
+     *
+     * @param file     The file with the recording.
+     * @param realTime If true, the original timing is reproduced. If false, the recording is replayed as fast as possible.
+     * @throws IOException If the file can't be read.
+     */
+    public void replay(Path file, boolean realTime) throws IOException {
+        SessionPlayer player = new SessionPlayer(file, realTime);
+        channel = player;
+        ctrl.install(player, pane);
+        pane.setConnected(true, null);
+        player.connect(null, null, null, 0, ctrl);
+        pane.requestFocusInWindow();
+        revalidate();
+    }
+
     /**
      * Starts a session. The channel needs to be in unconnected state.
      */
     public void connect(String user, String password, String host, int port) {
         try {
-            if (channel == null)
-                channel = new JschShellChannel();
+            if (channel == null) {
+                JschShellChannel jschChannel = new JschShellChannel();
+                jschChannel.setRecorder(recorder);
+                channel = jschChannel;
+            }
             channel.connect(user, password, host, port, ctrl);
             pane.requestFocusInWindow();
             ctrl.install(channel, pane);
@@ -126,6 +230,30 @@ public class SSHTerm extends JPanel {
             this.channel = null;
             pane.setConnected(false, "Disconnected");
         }
+        if (recorder != null) {
+            try {
+                recorder.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            recorder = null;
+        }
+        if (spill != null) {
+            pane.getModel().setScrollbackSpill(null);
+            try {
+                spill.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            spill = null;
+        }
+        if (traceFile != null) {
+            try {
+                ctrl.getTrace().dump(Paths.get(traceFile));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
     }
 
     /**
@@ -141,6 +269,12 @@ public class SSHTerm extends JPanel {
         public String password = null;
         public String host = "127.0.0.1";
         public int port = 22;
+        public String trace = null;
+        public String record = null;
+        public String replay = null;
+        public boolean fast = false;
+        public int scrollback = TerminalModel.DEFAULT_SCROLLBACK_LIMIT;
+        public String spill = null;
         int nextArgIndex;
 
 
@@ -154,6 +288,11 @@ public class SSHTerm extends JPanel {
                     case "--login", "-l" -> login = getArgValue();
                     case "--secret", "-s" -> password = getArgValue();
                     case "--host", "-h" -> host = getArgValue();
+                    case "--trace", "-t" -> trace = getArgValue();
+                    case "--record", "-r" -> record = getArgValue();
+                    case "--replay", "-y" -> replay = getArgValue();
+                    case "--fast" -> fast = true;
+                    case "--spill", "-k" -> spill = getArgValue();
                     case "--port", "-p" -> {
                         try {
                             port = Integer.parseInt(getArgValue());
@@ -162,6 +301,14 @@ public class SSHTerm extends JPanel {
                             System.exit(-2);
                         }
                     }
+                    case "--scrollback", "-b" -> {
+                        try {
+                            scrollback = Integer.parseInt(getArgValue());
+                        } catch (NumberFormatException ne) {
+                            System.err.println("Scrollback argument must be some number.");
+                            System.exit(-2);
+                        }
+                    }
                     case "--help", "-?" -> {
                         usage(System.out);
                         System.exit(0);
@@ -180,6 +327,12 @@ public class SSHTerm extends JPanel {
                             \t--host, -h      SSH Server, default 127.0.0.1
                             \t--port, -p      SSH Port, default 22
                             \t--font, -f      Font description, default 'Monospaced-PLAIN-14'
+                            \t--trace, -t     Trace the session and write the trace to this file on exit
+                            \t--record, -r    Record the output of the server to this file
+                            \t--replay, -y    Replay a recorded file instead of connecting to a server
+                            \t--fast          Replay as fast as possible instead of in real time
+                            \t--scrollback, -b Maximal number of lines in the scrollback-buffer, default 10000
+                            \t--spill, -k     Move older scrollback lines to this file, kept and restored on next start
                             \t--help, -?      Print help and exit
                             
                             Example:
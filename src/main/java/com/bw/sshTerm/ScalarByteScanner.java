@@ -0,0 +1,30 @@
+/**
+ * Copyright 2025, Bernd Wengenroth.
+ * This is free and unencumbered software released into the public domain.
+ * Check LICENSE for details.
+ */
+package com.bw.sshTerm;
+
+/**
+ * Scanner that checks byte by byte.
+ */
+final class ScalarByteScanner implements ByteScanner {
+
+    @Override
+    public int findControl(byte[] buffer, int start, int end) {
+        int i = start;
+        while (i < end) {
+            byte b = buffer[i];
+            // Bytes are signed, bytes >= 0x80 are negative.
+            if ((b >= 0 && b < 0x20) || b == 0x7F)
+                break;
+            ++i;
+        }
+        return i;
+    }
+
+    @Override
+    public String getName() {
+        return "scalar";
+    }
+}
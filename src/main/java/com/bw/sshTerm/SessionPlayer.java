@@ -0,0 +1,148 @@
+/**
+ * Copyright 2025, Bernd Wengenroth.
+ * This is free and unencumbered software released into the public domain.
+ * Check LICENSE for details.
+ */
+package com.bw.sshTerm;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Replays a recording of {@link SessionRecorder} into a {@link TerminalControl}, either in real time
+ * or as fast as possible.<p>
+ * The player can be used as {@link ShellChannel}: {@link #connect} starts the replay in a background thread.
+ * Input and answers to the terminal server are discarded.
+ * Resize records are only applied if the control is not installed to a pane, otherwise the pane defines the size.
+ */
+public final class SessionPlayer implements ShellChannel {
+
+    private final byte[] recording;
+    private final boolean realTime;
+    private volatile boolean stopped = false;
+    private byte[] buffer = new byte[1024];
+    private int position;
+
+    /**
+     * Creates a player.
+     *
+     * @param recording The content of a recording.
+     * @param realTime  If true, the original timing is reproduced. If false, the recording is replayed as fast as possible.
+     * @throws IOException If the recording has no valid header.
+     */
+    public SessionPlayer(byte[] recording, boolean realTime) throws IOException {
+        if (recording.length < SessionRecorder.MAGIC.length + 1 ||
+                !Arrays.equals(recording, 0, SessionRecorder.MAGIC.length, SessionRecorder.MAGIC, 0, SessionRecorder.MAGIC.length))
+            throw new IOException("Not a session recording");
+        if (recording[SessionRecorder.MAGIC.length] != SessionRecorder.VERSION)
+            throw new IOException("Unsupported version of session recording " + recording[SessionRecorder.MAGIC.length]);
+        this.recording = recording;
+        this.realTime = realTime;
+    }
+
+    /**
+     * Creates a player for a recorded file.
+     *
+     * @see #SessionPlayer(byte[], boolean)
+     */
+    public SessionPlayer(Path file, boolean realTime) throws IOException {
+        this(Files.readAllBytes(file), realTime);
+    }
+
+    /**
+     * Replays the whole recording in the calling thread.
+     *
+     * @param ctrl The control to feed. Needs to be attached to a model.
+     * @return The number of replayed output bytes.
+     * @throws IOException If the recording is truncated.
+     */
+    public long play(TerminalControl ctrl) throws IOException {
+        position = SessionRecorder.MAGIC.length + 1;
+        long bytes = 0;
+        long micros = 0;
+        final long start = System.nanoTime();
+        while (position < recording.length && !stopped) {
+            micros += readNumber();
+            if (realTime) {
+                long wait = micros * 1000 - (System.nanoTime() - start);
+                if (wait > 0) {
+                    try {
+                        Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return bytes;
+                    }
+                }
+            }
+            long tag = readNumber();
+            if (tag == SessionRecorder.TAG_RESIZE) {
+                int columns = (int) readNumber();
+                int rows = (int) readNumber();
+                if (ctrl.getPane() == null)
+                    ctrl.getModel().setSize(columns, rows);
+            } else {
+                int length = (int) (tag >>> 1);
+                if (length > recording.length - position)
+                    throw new IOException("Session recording is truncated");
+                // Copy, as controls expect the data at the start of the buffer, like from a read.
+                if (buffer.length < length)
+                    buffer = new byte[length];
+                System.arraycopy(recording, position, buffer, 0, length);
+                position += length;
+                ctrl.handleShellOutput(buffer, length);
+                bytes += length;
+            }
+        }
+        return bytes;
+    }
+
+    private long readNumber() throws IOException {
+        long value = 0;
+        int shift = 0;
+        while (position < recording.length) {
+            int b = recording[position++];
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0)
+                return value;
+            shift += 7;
+        }
+        throw new IOException("Session recording is truncated");
+    }
+
+    /**
+     * Discards the data, there is no terminal server.
+     */
+    @Override
+    public void write(byte[] x, int offset, int length) {
+    }
+
+    @Override
+    public void setPtySize(int termWidth, int termHeight, int charWidth, int charHeight) {
+    }
+
+    /**
+     * Starts the replay in a background thread. The login data is ignored.
+     */
+    @Override
+    public void connect(String user, String password, String host, int port, TerminalControl terminalControl) {
+        Thread rt = new Thread(() -> {
+            try {
+                play(terminalControl);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+        rt.setDaemon(true);
+        rt.start();
+    }
+
+    /**
+     * Stops the replay.
+     */
+    @Override
+    public void disconnect() {
+        stopped = true;
+    }
+}
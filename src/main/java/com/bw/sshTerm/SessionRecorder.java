@@ -0,0 +1,103 @@
+/**
+ * Copyright 2025, Bernd Wengenroth.
+ * This is free and unencumbered software released into the public domain.
+ * Check LICENSE for details.
+ */
+package com.bw.sshTerm;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Records the raw output of a terminal server with timestamps, to be replayed by {@link SessionPlayer}.<p>
+ * Format: The header "JSTR" and a version byte, followed by records. All numbers are unsigned
+ * variable length integers (7 bits per byte, lowest bits first, highest bit set if more bytes follow).
+ * Each record starts with the time in microseconds since the previous record and a tag:
+ * <ul>
+ * <li>Output: tag = length &lt;&lt; 1, followed by length bytes.</li>
+ * <li>Resize: tag = 1, followed by columns and rows.</li>
+ * </ul>
+ */
+public final class SessionRecorder implements Closeable {
+
+    static final byte[] MAGIC = {'J', 'S', 'T', 'R'};
+    static final int VERSION = 1;
+    static final int TAG_RESIZE = 1;
+
+    private final OutputStream out;
+    private long lastTime;
+
+    /**
+     * Creates a recorder that writes to a file.
+     *
+     * @param file The file, overwritten if it exists.
+     * @throws IOException If the file can't be written.
+     */
+    public SessionRecorder(Path file) throws IOException {
+        this(Files.newOutputStream(file));
+    }
+
+    /**
+     * Creates a recorder that writes to a stream. The stream is closed by {@link #close()}.
+     */
+    public SessionRecorder(OutputStream out) throws IOException {
+        this.out = new BufferedOutputStream(out, 1 << 16);
+        this.out.write(MAGIC);
+        this.out.write(VERSION);
+        lastTime = System.nanoTime();
+    }
+
+    /**
+     * Records output of the terminal server.
+     *
+     * @param buffer The buffer.
+     * @param offset Offset of the first byte.
+     * @param length Number of bytes.
+     */
+    public synchronized void recordOutput(byte[] buffer, int offset, int length) throws IOException {
+        writeTime();
+        writeNumber((long) length << 1);
+        out.write(buffer, offset, length);
+    }
+
+    /**
+     * Records a change of the terminal size.
+     */
+    public synchronized void recordResize(int columns, int rows) throws IOException {
+        writeTime();
+        writeNumber(TAG_RESIZE);
+        writeNumber(columns);
+        writeNumber(rows);
+    }
+
+    /**
+     * Writes all buffered records.
+     */
+    public synchronized void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+
+    private void writeTime() throws IOException {
+        long now = System.nanoTime();
+        writeNumber((now - lastTime) / 1000);
+        // Keep the remainder, so the rounding errors don't sum up.
+        lastTime = now - (now - lastTime) % 1000;
+    }
+
+    private void writeNumber(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+}
@@ -10,7 +10,18 @@ public interface ShellChannel {
     /**
      * Writes data to the terminal server.
      */
-    void write(byte[] x);
+    default void write(byte[] x) {
+        write(x, 0, x.length);
+    }
+
+    /**
+     * Writes a part of a buffer to the terminal server.
+     *
+     * @param x      The buffer.
+     * @param offset Offset of the first byte.
+     * @param length Number of bytes to write.
+     */
+    void write(byte[] x, int offset, int length);
 
     /**
      * Sets a new terminal size.
@@ -6,10 +6,11 @@
 
 package com.bw.sshTerm;
 
+import com.bw.sshTerm.model.TerminalModel;
+
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
-import java.io.ByteArrayOutputStream;
 import java.nio.charset.StandardCharsets;
 
 /**
@@ -17,9 +18,20 @@ import java.nio.charset.StandardCharsets;
  */
 public abstract class TerminalControl {
 
-    static final boolean debug = true;
+    /**
+     * Trace of this session, disabled by default.
+     */
+    protected final TraceRecorder trace = new TraceRecorder();
+    /**
+     * Answers to the terminal server, sent once per handled buffer.
+     */
+    protected final ResponseSink responses = new ResponseSink();
     protected ShellChannel term;
+    protected TerminalModel model;
     protected TerminalPane pane;
+    protected ByteScanner scanner = ByteScanner.create();
+    protected final Utf8Decoder utf8Decoder = new Utf8Decoder();
+    private int[] codePoints = new int[1025];
     protected KeyListener keyListener = new KeyAdapter() {
 
         @Override
@@ -27,13 +39,14 @@ public abstract class TerminalControl {
             // TODO: We need to know if the sequences are supported by the terminal...
             try {
                 int modifiers = e.getModifiersEx();
+                trace.record(TraceRecorder.KEY, e.getKeyCode(), e.getKeyChar(), modifiers);
                 byte[] x = getCtrlCodes((modifiers & KeyEvent.CTRL_DOWN_MASK) != 0 && (modifiers & KeyEvent.ALT_DOWN_MASK) == 0, e.getKeyCode(), e.getKeyChar());
                 if (x != null)
                     term.write(x);
                 else {
                     switch (e.getKeyCode()) {
                         case KeyEvent.VK_V:
-                            String clipboardText = pane.getClipboardContents();
+                            String clipboardText = TerminalPane.getClipboardContents();
                             // TODO: Escape if needed
                             term.write(clipboardText.getBytes(StandardCharsets.US_ASCII));
                             break;
@@ -57,25 +70,6 @@ public abstract class TerminalControl {
             e.consume();
         }
     };
-    private boolean inChars = false;
-
-    protected void log(String message) {
-        if (inChars) {
-            System.out.print("\n");
-            inChars = false;
-        }
-        System.out.print(message);
-    }
-
-    protected void logChar(char c) {
-        inChars = true;
-        if (c < ' ' || c > 127) {
-            System.out.print( c + "[" + Integer.toHexString(c) + "]");
-        } else {
-            System.out.print(c);
-        }
-
-    }
 
     /**
      * Get control codes for specific keys.
@@ -90,12 +84,11 @@ public abstract class TerminalControl {
     public abstract String getPtyType();
 
     /**
-     * Handle char and return any answer to the terminal server.
+     * Handle char. Any answer to the terminal server is added to {@link #responses}.
      *
      * @param c The byte to handle.
-     * @return the answer to send or null.
      */
-    public abstract byte[] handleChar(byte c);
+    public abstract void handleChar(byte c);
 
     /**
      * Installs the control to a pane and connects to a terminal-channel.
@@ -104,12 +97,11 @@ public abstract class TerminalControl {
      * @param term The remote shell channel.
      */
     public void install(ShellChannel term, TerminalPane pane) {
-        this.term = term;
+        attach(term, pane.getModel());
         pane.addKeyListener(keyListener);
         pane.setFocusTraversalKeysEnabled(false);
         this.pane = pane;
         pane.addPropertyChangeListener(TerminalPane.PROPERTY_TERM_SIZE, evt -> {
-            System.out.println("Term Size Changed: " + evt);
             int[] d = (int[]) evt.getNewValue();
             term.setPtySize(d[0], d[1], d[2], d[3]);
         });
@@ -117,28 +109,120 @@ public abstract class TerminalControl {
         term.setPtySize(d[0], d[1], d[2], d[3]);
     }
 
+    /**
+     * Attaches the control to a model without any view, e.g. for automation or benchmarks.
+     * {@link #install(ShellChannel, TerminalPane)} calls this with the model of the pane.
+     *
+     * @param term  The remote shell channel. Can be null, answers to the terminal server are discarded in this case.
+     * @param model The model to drive.
+     */
+    public void attach(ShellChannel term, TerminalModel model) {
+        this.term = term;
+        this.model = model;
+        model.setTrace(trace);
+    }
+
+    /**
+     * Checks if the control is in a state where text is simply written to the screen.
+     * If true, {@link #handleShellOutput} passes whole runs of text to {@link #handleText} instead
+     * of calling {@link #handleChar(byte)} for each byte.
+     *
+     * @return true if text can be handled in bulk.
+     */
+    protected boolean isPrintableRunAllowed() {
+        return false;
+    }
+
+    /**
+     * Handles a run of text (all bytes except C0 controls and DEL).
+     * The text is decoded as UTF-8 and written to the pane.
+     *
+     * @param buffer The buffer.
+     * @param start  Index of the first byte.
+     * @param end    End index (exclusive).
+     * @return The index of the first byte not handled. Less than end, if a C1 control was found.
+     */
+    protected int handleText(byte[] buffer, int start, int end) {
+        if (codePoints.length <= (end - start))
+            codePoints = new int[end - start + 1];
+        int n = utf8Decoder.decode(buffer, start, end, codePoints);
+        trace.record(TraceRecorder.TEXT, n, 0, 0);
+        if (n > 0 && Utf8Decoder.isC1Control(codePoints[n - 1])) {
+            model.setChars(codePoints, 0, n - 1);
+            handleC1Control(codePoints[n - 1]);
+        } else {
+            model.setChars(codePoints, 0, n);
+        }
+        return utf8Decoder.getPosition();
+    }
+
+    /**
+     * Handles a C1 control (0x80-0x9F) that was received as UTF-8 character.<br>
+     * This implementation ignores it.
+     *
+     * @param c The control.
+     */
+    protected void handleC1Control(int c) {
+    }
+
     /**
      * Handles output from the terminal server.
+     * All answers collected while handling the buffer are sent together at the end.
      *
      * @param buffer    The input buffer
      * @param bytesRead Number of bytes to handle in the buffer.
-     * @return answer to send to terminal server or null.
      */
-    public byte[] handleShellOutput(byte[] buffer, int bytesRead) {
-        ByteArrayOutputStream bs = new ByteArrayOutputStream(100);
-        for (int i = 0; i < bytesRead; ++i) {
-            byte[] answer = handleChar(buffer[i]);
-            if (answer != null)
-                bs.write(answer, 0, answer.length);
+    public void handleShellOutput(byte[] buffer, int bytesRead) {
+        trace.recordBytes(TraceRecorder.INPUT, buffer, 0, bytesRead);
+        model.startUpdate();
+        try {
+            int i = 0;
+            while (i < bytesRead) {
+                int runEnd = isPrintableRunAllowed() ? scanner.findControl(buffer, i, bytesRead) : i;
+                if (runEnd > i) {
+                    i = handleText(buffer, i, runEnd);
+                } else {
+                    handleChar(buffer[i++]);
+                }
+            }
+        } finally {
+            model.finishUpdate();
+            responses.flush(term, trace);
         }
-        if (bs.size() > 0)
-            return bs.toByteArray();
-        else
-            return null;
     }
 
     /**
-     * Gets the terminal pane.
+     * Gets the scanner that is used to find runs of printable characters.
+     */
+    public ByteScanner getByteScanner() {
+        return scanner;
+    }
+
+    /**
+     * Sets the scanner that is used to find runs of printable characters.
+     *
+     * @param scanner The scanner, see {@link ByteScanner#create(String)}.
+     */
+    public void setByteScanner(ByteScanner scanner) {
+        this.scanner = scanner;
+    }
+
+    /**
+     * Gets the trace recorder of this session. Use {@link TraceRecorder#setEnabled(boolean)} to start tracing.
+     */
+    public TraceRecorder getTrace() {
+        return trace;
+    }
+
+    /**
+     * Gets the model, null if not attached.
+     */
+    public TerminalModel getModel() {
+        return model;
+    }
+
+    /**
+     * Gets the terminal pane, null if not installed to a pane.
      */
     public TerminalPane getPane() {
         return pane;
@@ -5,6 +5,14 @@
  */
 package com.bw.sshTerm;
 
+import com.bw.sshTerm.model.AttributeTable;
+import com.bw.sshTerm.model.Graphemes;
+import com.bw.sshTerm.model.ScreenSnapshot;
+import com.bw.sshTerm.model.Line;
+import com.bw.sshTerm.model.SearchHit;
+import com.bw.sshTerm.model.TerminalModel;
+import com.bw.sshTerm.model.TerminalModelListener;
+
 import javax.swing.*;
 import javax.swing.event.ChangeListener;
 import java.awt.*;
@@ -15,12 +23,23 @@ import java.awt.event.FocusEvent;
 import java.awt.event.FocusListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
-import java.util.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 
 /**
  * A panel to show a terminal.<p>
+ * The panel is a view of a {@link TerminalModel}. All content, the caret position and the title are taken from the model.
+ * The screen and the shown rows of the scrollback-buffer are painted from the latest {@link ScreenSnapshot} of the model,
+ * painting never waits for the lock of the model. The painted lines of the screen are kept in a back buffer, see {@link #setBackBufferEnabled}.<br>
  * The panel itself has no scrollbar. A vertical scrollbar can be bound to scroll across the scrollback-buffer by {@link #setScrollbar}.
  */
 public class TerminalPane extends JComponent {
@@ -36,34 +55,77 @@ public class TerminalPane extends JComponent {
     public final static String PROPERTY_TERM_SIZE = "termSize";
 
     protected final Caret caret = new Caret();
-    private final Map<Integer, Screen> screens = new HashMap<>();
-    public boolean showCursor = true;
-    public Color background;
-    public Color foreground;
-    public int charStyle;
+    protected final TerminalModel model;
     protected boolean connected;
     protected int charWidth;
     protected int charHeight;
-    protected int termWidth;
-    protected int termHeight;
     protected boolean caretEnabled = true;
 
     protected String connectMessage = "Connecting...";
     protected int ascent;
     Rectangle repaintArea = null;
-    private final List<XC[]> lines = new ArrayList<>();
-    private Screen activeScreenBuffer = new Screen();
-    private int activeScreen = 0;
-    private String title = null;
+    // Shown for rows of the scrollback-buffer that are not yet published.
+    private static final Line EMPTY_LINE = new Line(1);
+    private final List<Line> lines = new ArrayList<>();
+    private final Map<Integer, Color> colors = new HashMap<>();
     private boolean repaintPending = false;
-    private final ChangeListener scrollbarChangeListerer = e -> {
-        if (activeScreenBuffer != null) {
-            triggerRepaint();
+    // Rows of the screen that were changed and not yet repainted and the snapshot they were compared with, guarded by dirtyRows.
+    private final BitSet dirtyRows = new BitSet();
+    private ScreenSnapshot comparedSnapshot;
+    private final ChangeListener scrollbarChangeListerer = e -> triggerRepaint();
+    private final TerminalModelListener modelListener = new TerminalModelListener() {
+        @Override
+        public void contentChanged(TerminalModel model) {
+            triggerRepaintRows();
+        }
+
+        @Override
+        public void caretMoved(TerminalModel model) {
+            triggerRepaintCursor();
+        }
+
+        @Override
+        public void scrollbackChanged(TerminalModel model) {
+            configureScrollbar();
+        }
+
+        @Override
+        public void screenSwitched(TerminalModel model) {
+            if (scrollbar != null)
+                scrollbar.setEnabled(model.getActiveScreen() == 0);
+        }
+
+        @Override
+        public void titleChanged(TerminalModel model) {
+            SwingUtilities.invokeLater(() -> {
+                if (SwingUtilities.getWindowAncestor(TerminalPane.this) instanceof Frame f) {
+                    f.setTitle(model.getTitle());
+                }
+            });
         }
     };
     private JScrollBar scrollbar;
     private int baseY;
+    // Search hits to highlight, ordered by position.
+    private List<SearchHit> searchHits = List.of();
+    // Absolute number and first column of the line of each painted row, see SearchHit.
+    private long[] rowLines = new long[0];
+    private int[] rowColumns = new int[0];
+    private final Color searchHitColor = new Color(255, 200, 0, 96);
+    // Characters of a run of cells, see paintComponent.
+    private char[] text = new char[256];
+    // Characters (BMP) whose advance in the font is the width of a cell, computed on demand.
+    private Font advanceFont;
+    private final BitSet advanceChecked = new BitSet();
+    private final BitSet cellAdvance = new BitSet();
     private Map<RenderingHints.Key, Object> hints;
+    private boolean glyphAtlasEnabled = false;
+    // Image of the lines of the screen right of the left page margin and the line shown in each row of it.
+    // A volatile image if the pane is shown. The rows are valid for the font and colors of the state.
+    private boolean backBufferEnabled = true;
+    private Image backBuffer;
+    private Line[] backBufferLines = new Line[0];
+    private List<Object> backBufferState;
 
 
     public TerminalPane() {
@@ -71,13 +133,25 @@ public class TerminalPane extends JComponent {
     }
 
     /**
-     * Initialize the terminal pane.
+     * Initialize the terminal pane with a new model.
      *
      * @param fontDescription The font description, as described in {@link Font#decode(String)}
      */
     public TerminalPane(String fontDescription) {
+        this(fontDescription, new TerminalModel());
+    }
+
+    /**
+     * Initialize the terminal pane.
+     *
+     * @param fontDescription The font description, as described in {@link Font#decode(String)}
+     * @param model           The model to show.
+     */
+    public TerminalPane(String fontDescription, TerminalModel model) {
 
         super();
+        this.model = model;
+        model.addListener(modelListener);
         enableEvents(AWTEvent.KEY_EVENT_MASK | AWTEvent.INPUT_METHOD_EVENT_MASK);
 
         setLayout(null);
@@ -123,131 +197,60 @@ public class TerminalPane extends JComponent {
         return "";
     }
 
+    /**
+     * Gets the model that is shown by this pane.
+     */
+    public TerminalModel getModel() {
+        return model;
+    }
+
     public void addRenderingHint(RenderingHints.Key key, Object value) {
         if (hints == null)
             hints = new HashMap<>();
         hints.put(key, value);
+        backBufferState = null;
     }
 
     /**
-     * Get the id of the active screen.
-     *
-     * @return The id of the active screen.
-     */
-    public int getActiveScreen() {
-        return activeScreen;
-    }
-
-    /**
-     * Switch active screen. A new screen is created if needed.
-     *
-     * @param id The id of the active screen. Can be any integer.
+     * Sets if characters are painted from a shared {@link GlyphAtlas} instead of being drawn as text.
+     * Default is false.
      */
-    public void switchScreen(int id, boolean restoreCaret) {
-        if (activeScreen != id) {
-            activeScreen = id;
-            activeScreenBuffer.lastCaretX = caret.getCaretX();
-            activeScreenBuffer.lastCaretY = caret.getCaretY();
-
-            activeScreenBuffer = screens.get(id);
-            if (activeScreenBuffer == null) {
-                activeScreenBuffer = new Screen();
-                screens.put(id, activeScreenBuffer);
-            }
-            if (restoreCaret) {
-                caret.setCaret(activeScreenBuffer.lastCaretX, activeScreenBuffer.lastCaretY);
-            }
-            System.out.println("Switched to screen " + id);
-            activeScreenBuffer.repaint = true;
-
-            if (scrollbar != null)
-                scrollbar.setEnabled(activeScreen == 0);
-            configureScrollbar();
+    public void setGlyphAtlasEnabled(boolean enabled) {
+        if (glyphAtlasEnabled != enabled) {
+            glyphAtlasEnabled = enabled;
             triggerRepaint();
         }
     }
 
-    @Override
-    public Dimension getPreferredSize() {
-        updateTerminalSpecs();
-        return new Dimension(charWidth * termWidth, charHeight * Math.max(activeScreenBuffer.term.size(), termHeight));
-    }
-
-    /**
-     * Moved the caret relative. Scrolls if the margin is reached.
-     *
-     * @param xd The delta in x-direction.
-     * @param yd The delta in y-direction.
-     */
-    public void moveCaret(int xd, int yd) {
-        caret.setCaretX(getCaretX() + xd);
-        caret.setCaretY(getCaretY() + yd);
-        while (caret.getCaretY() > activeScreenBuffer.marginBottom) {
-            activeScreenBuffer.scrollDown();
-            caret.setCaretY(caret.getCaretY() - 1);
-        }
-        while (caret.getCaretY() < activeScreenBuffer.marginTop) {
-            activeScreenBuffer.scrollUp();
-            caret.setCaretY(caret.getCaretY() + 1);
-        }
-        triggerRepaintCursor();
+    public boolean isGlyphAtlasEnabled() {
+        return glyphAtlasEnabled;
     }
 
     /**
-     * Sets the caret. Scrolls if the margin reached.
-     *
-     * @param x The x-ordinate.
-     * @param y The y-ordinate.
+     * Sets if the screen is painted from an offscreen image that keeps the painted lines.
+     * If the screen scrolls, the lines that are still shown are copied inside the image and only the
+     * new lines are painted. Default is true.
      */
-    public void setCaretAbsolute(int x, int y) {
-        if (activeScreenBuffer.marginBottom == 0) activeScreenBuffer.marginBottom = termHeight - 1;
-        if (x < 0) x = 0;
-        if (y < 0) y = 0;
-        while (y > activeScreenBuffer.marginBottom) {
-            y--;
-            activeScreenBuffer.scrollDown();
-        }
-        while (y < activeScreenBuffer.marginTop) {
-            y++;
-            activeScreenBuffer.scrollUp();
+    public void setBackBufferEnabled(boolean enabled) {
+        if (backBufferEnabled != enabled) {
+            backBufferEnabled = enabled;
+            if (backBuffer != null)
+                backBuffer.flush();
+            backBuffer = null;
+            backBufferState = null;
+            triggerRepaint();
         }
-        caret.setCaret(x, y);
-        triggerRepaintCursor();
-    }
-
-    /**
-     * Get the x-ordinate of the caret.
-     */
-    public int getCaretX() {
-        return caret.getCaretX();
-    }
-
-    /**
-     * Get the y-ordinate of the caret.
-     */
-    public int getCaretY() {
-        return caret.getCaretY();
     }
 
-    /**
-     * Set char
-     *
-     * @param x The column in terminal. [0 - termWidth[
-     * @param y The row in terminal. [0 - termHeight[
-     * @param b The character to set
-     */
-    public void setCharAt(int x, int y, char b) {
-        activeScreenBuffer.setCharAt(x, y, b);
-        triggerRepaint();
+    public boolean isBackBufferEnabled() {
+        return backBufferEnabled;
     }
 
-    /**
-     * Set char at a current caret (doesn't move the caret)
-     *
-     * @param b The character to set
-     */
-    public void setChar(char b) {
-        setCharAt(caret.getCaretX(), caret.getCaretY(), b);
+    @Override
+    public Dimension getPreferredSize() {
+        updateTerminalSpecs();
+        final ScreenSnapshot snapshot = model.getSnapshot();
+        return new Dimension(charWidth * snapshot.columns, charHeight * Math.max(snapshot.getLineCount(), snapshot.rows));
     }
 
     @Override
@@ -257,43 +260,58 @@ public class TerminalPane extends JComponent {
         if (hints != null)
             g2.setRenderingHints(hints);
 
-        caret.caretIsCleared();
+        // Partial repaints clear the cursor only if they contain it.
+        final Rectangle clip = g.getClipBounds();
+        if (clip == null || clip.contains(caret.getRepaintArea()))
+            caret.caretIsCleared();
         repaintPending = false;
-        int x = getLeftPageMargin();
         int y = ascent;
         int by = 0;
-        char[] cc = {0};
-        final Font normal = getFont();
-        Font currentFont = normal;
-        Font bold = null;
-        int currentStyle = 0;
-        boolean underlined = false;
+        g2.setFont(getFont());
+        // The ids of the cells of the painted snapshot must stay valid while painting.
+        ScreenSnapshot acquired = null;
         try {
             if (connected) {
                 lines.clear();
-                synchronized (activeScreenBuffer) {
-                    if (activeScreen == 0 && scrollbar != null) {
-                        int sv = scrollbar.getValue();
-                        if (sv < activeScreenBuffer.topScrollBuffer.size()) {
-                            lines.addAll(activeScreenBuffer.topScrollBuffer.subList(sv, activeScreenBuffer.topScrollBuffer.size() - 1));
-                            baseY = charHeight * lines.size();
-                        }
-                    } else {
-                        baseY = 0;
+                final ScreenSnapshot snapshot = acquired = model.acquireSnapshot();
+                final int columns = snapshot.columns;
+                final int rows = snapshot.rows;
+                if (rowLines.length < rows * 2) {
+                    rowLines = new long[rows * 2];
+                    rowColumns = new int[rows * 2];
+                }
+                baseY = 0;
+                if (snapshot.activeScreen == 0 && scrollbar != null && scrollbar.getValue() < snapshot.scrollbackRows) {
+                    // Only the rows that fit into the view, published by the model with the snapshot. Rows that are
+                    // not yet published are empty, the pane is repainted with the next snapshot.
+                    final int sv = scrollbar.getValue();
+                    final int rowCount = snapshot.scrollbackRows;
+                    model.setScrollbackView(sv, rows);
+                    for (int row = sv; row < rowCount && row < sv + rows; ++row) {
+                        final Line line = snapshot.getScrollbackRow(row);
+                        rowLines[lines.size()] = snapshot.getScrollbackLineNumber(row);
+                        rowColumns[lines.size()] = snapshot.getScrollbackColumn(row);
+                        lines.add(line == null ? EMPTY_LINE : line);
                     }
-                    lines.addAll(activeScreenBuffer.term);
+                    baseY = charHeight * (rowCount - sv);
+                } else {
+                    model.setScrollbackView(0, 0);
+                }
+                // Only the screen is shown if no rows of the scrollback-buffer were added.
+                final boolean screenOnly = lines.isEmpty();
+                for (int ty = 0; ty < snapshot.getLineCount() && lines.size() < rowLines.length; ++ty) {
+                    rowLines[lines.size()] = snapshot.firstLineNumber + ty;
+                    rowColumns[lines.size()] = 0;
+                    lines.add(snapshot.getLine(ty));
                 }
 
-                final Color background = getBackground();
-                final Color foreground = getForeground();
-
-                Color currentColor = Color.RED;
                 g2.setPaint(Color.RED);
 
                 Rectangle r2 = g2.getClip().getBounds();
                 int startLine = 0;
                 while ((y + charHeight) < r2.getY()) {
                     y += charHeight;
+                    by += charHeight;
                     ++startLine;
                 }
 
@@ -307,56 +325,8 @@ public class TerminalPane extends JComponent {
                     yp += charHeight;
                 }
 
-                for (int i = startLine; i <= lastLine; ++i) {
-                    XC[] line = lines.get(i);
-                    if (line == null) {
-                        break;
-                    }
-                    int cx = x;
-                    for (XC c : line) {
-                        if (c == null)
-                            break;
-
-                        Color BG = c.background == null ? background : c.background;
-                        if (BG != background) {
-                            if (BG != currentColor) {
-                                g2.setColor(BG);
-                                currentColor = BG;
-                            }
-                            g2.fillRect(cx, by, charWidth, charHeight);
-                        }
-                        if (c.c != 0) {
-                            cc[0] = c.c;
-                            Color FB = c.color == null ? foreground : c.color;
-                            if (FB != currentColor) {
-                                g2.setColor(FB);
-                                currentColor = FB;
-                            }
-                            if (currentStyle != c.style) {
-                                currentStyle = c.style;
-                                if ((currentStyle & CharStyle.BOLD) != 0) {
-                                    if (bold == null)
-                                        bold = currentFont.deriveFont(Font.BOLD);
-                                    if (currentFont != bold) {
-                                        currentFont = bold;
-                                        g2.setFont(currentFont);
-                                    }
-                                } else if (currentFont != normal) {
-                                    currentFont = normal;
-                                    g2.setFont(currentFont);
-                                }
-                                underlined = (currentStyle & CharStyle.UNDERLINED) != 0;
-                            }
-                            g2.drawChars(cc, 0, 1, cx, y);
-                            if (underlined) {
-                                g2.drawLine(cx, y + 1, cx + charWidth - 1, y + 1);
-                            }
-                        }
-                        cx += charWidth;
-                    }
-                    y += charHeight;
-                    by += charHeight;
-                }
+                if (!(screenOnly && paintBackBuffer(g2)))
+                    paintLines(g2, startLine, lastLine + 1, getLeftPageMargin(), by);
                 caret.drawCursor(g2);
             } else {
                 Dimension d = getSize();
@@ -366,23 +336,334 @@ public class TerminalPane extends JComponent {
                 g2.drawString(connectMessage, (d.width - w) / 2, (d.height / 2) - fm.getAscent());
             }
         } finally {
+            if (acquired != null)
+                model.releaseSnapshot(acquired);
             g2.dispose();
         }
     }
 
+    /**
+     * Paints the lines of the screen from the back buffer. Lines that were moved by scrolling are copied inside the
+     * back buffer, consecutive lines that moved by the same distance at once. Only new and changed lines are painted.
+     *
+     * @param g2 The graphics context.
+     * @return false if the back buffer can't be used for the graphics context.
+     */
+    private boolean paintBackBuffer(Graphics2D g2) {
+        final Color background = getBackground();
+        final AffineTransform transform = g2.getTransform();
+        final double scale = transform.getScaleX();
+        final GraphicsConfiguration gc = getGraphicsConfiguration();
+        final int count = lines.size();
+        final int width = getWidth() - getLeftPageMargin();
+        final int height = count * charHeight;
+        // Lines can only be copied if the rows are whole pixels. If not shown, the image is not scaled.
+        if (!backBufferEnabled || background == null || width <= 0 || height <= 0
+                || scale != Math.rint(scale) || (gc == null && scale != 1)
+                || (transform.getType() & ~(AffineTransform.TYPE_TRANSLATION | AffineTransform.TYPE_UNIFORM_SCALE)) != 0)
+            return false;
+        final List<Object> state = Arrays.asList(getFont(), getForeground(), background, charWidth, charHeight, glyphAtlasEnabled);
+        boolean valid = state.equals(backBufferState);
+        if (backBuffer == null || backBuffer.getWidth(null) != width || backBuffer.getHeight(null) != height
+                || (gc == null) != (backBuffer instanceof BufferedImage)) {
+            if (backBuffer != null)
+                backBuffer.flush();
+            backBuffer = gc == null ? new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB)
+                    : gc.createCompatibleVolatileImage(width, height);
+            valid = false;
+        }
+        if (backBuffer instanceof VolatileImage volatileImage) {
+            // The contents of a volatile image may be lost, e.g. if the display mode changes.
+            final int status = volatileImage.validate(gc);
+            if (status == VolatileImage.IMAGE_INCOMPATIBLE) {
+                volatileImage.flush();
+                backBuffer = gc.createCompatibleVolatileImage(width, height);
+                valid = false;
+            } else if (status == VolatileImage.IMAGE_RESTORED) {
+                valid = false;
+            }
+        }
+        if (!valid)
+            backBufferLines = new Line[count];
+        backBufferState = state;
+
+        final Graphics2D bg = (Graphics2D) backBuffer.getGraphics();
+        try {
+            if (hints != null)
+                bg.setRenderingHints(hints);
+            final Line[] painted = backBufferLines.clone();
+            final Map<Line, Integer> paintedRows = new IdentityHashMap<>();
+            for (int y = 0; y < count; ++y) {
+                if (painted[y] != null)
+                    paintedRows.put(painted[y], y);
+            }
+            // Rows that were overwritten by copies, they can't be the source of other copies.
+            final BitSet copied = new BitSet();
+            for (int y = 0; y < count; ) {
+                final Integer source = lines.get(y) == painted[y] ? null : paintedRows.get(lines.get(y));
+                if (source == null) {
+                    ++y;
+                    continue;
+                }
+                int n = 1;
+                while (y + n < count && source + n < count && lines.get(y + n) != painted[y + n]
+                        && lines.get(y + n) == painted[source + n])
+                    ++n;
+                if (copied.get(source, source + n).isEmpty()) {
+                    bg.copyArea(0, source * charHeight, width, n * charHeight, 0, (y - source) * charHeight);
+                    copied.set(y, y + n);
+                    for (int i = y; i < y + n; ++i)
+                        backBufferLines[i] = lines.get(i);
+                }
+                y += n;
+            }
+            for (int from = 0; from < count; ) {
+                if (lines.get(from) == backBufferLines[from]) {
+                    ++from;
+                    continue;
+                }
+                int to = from + 1;
+                while (to < count && lines.get(to) != backBufferLines[to])
+                    ++to;
+                bg.setColor(background);
+                bg.fillRect(0, from * charHeight, width, (to - from) * charHeight);
+                paintLines(bg, from, to, 0, from * charHeight);
+                for (int i = from; i < to; ++i)
+                    backBufferLines[i] = lines.get(i);
+                from = to;
+            }
+        } finally {
+            bg.dispose();
+        }
+        if (backBuffer instanceof VolatileImage volatileImage && volatileImage.contentsLost()) {
+            backBufferLines = new Line[count];
+            return false;
+        }
+        g2.drawImage(backBuffer, getLeftPageMargin(), 0, null);
+        return true;
+    }
+
+    /**
+     * Paints the shown lines.
+     *
+     * @param g2   The graphics context.
+     * @param from The first line.
+     * @param to   The line behind the last line.
+     * @param x    The left of the first column.
+     * @param by   The top of the first line.
+     */
+    private void paintLines(Graphics2D g2, int from, int to, int x, int by) {
+        int y = by + ascent;
+        char[] cc = {0, 0};
+        final Font normal = getFont();
+        Font currentFont = normal;
+        g2.setFont(normal);
+        Font bold = null;
+        int currentStyle = 0;
+        boolean underlined = false;
+
+        final Color background = getBackground();
+        final Color foreground = getForeground();
+
+        final AttributeTable attributes = model.getAttributeTable();
+        final Graphemes graphemes = model.getGraphemes();
+        final GlyphAtlas atlas = glyphAtlasEnabled ? GlyphAtlas.get(g2, normal, charWidth, charHeight, ascent) : null;
+        int lastAttr = 0;
+        Color FB = foreground;
+        Color BG = background;
+        int style = 0;
+
+        Color currentColor = Color.RED;
+        g2.setPaint(Color.RED);
+
+        final List<SearchHit> hits = searchHits;
+
+        for (int i = from; i < to; ++i) {
+            Line line = lines.get(i);
+            if (line == null) {
+                break;
+            }
+            final int length = line.getLength();
+            for (int h = firstSearchHit(hits, rowLines[i]); h < hits.size() && hits.get(h).line == rowLines[i]; ++h) {
+                final SearchHit hit = hits.get(h);
+                final int column = hit.column - rowColumns[i];
+                if (column < length && column + hit.length > 0) {
+                    g2.setColor(searchHitColor);
+                    g2.fillRect(x + column * charWidth, by, hit.length * charWidth, charHeight);
+                    currentColor = searchHitColor;
+                }
+            }
+            if (text.length < length)
+                text = new char[length];
+            int col = 0;
+            while (col < length) {
+                final int attr = Line.attributes(line.getCell(col));
+                if (attr != lastAttr) {
+                    // Resolve the attributes only if they differ from the previous run.
+                    lastAttr = attr;
+                    int fg = attributes.getForeground(attr);
+                    int bg = attributes.getBackground(attr);
+                    FB = fg == TerminalModel.DEFAULT_COLOR ? foreground : getColor(fg);
+                    BG = bg == TerminalModel.DEFAULT_COLOR ? background : getColor(bg);
+                    style = attributes.getStyle(attr);
+                    if ((style & CharStyle.INVERSE) != 0) {
+                        Color t = FB;
+                        FB = BG;
+                        BG = t;
+                    }
+                }
+                // The run of cells with the same attributes gets one background rectangle and one underline.
+                int end = col + 1;
+                while (end < length && Line.attributes(line.getCell(end)) == attr)
+                    ++end;
+                if (BG != background) {
+                    if (BG != currentColor) {
+                        g2.setColor(BG);
+                        currentColor = BG;
+                    }
+                    g2.fillRect(x + col * charWidth, by, (end - col) * charWidth, charHeight);
+                }
+                if (FB != currentColor) {
+                    g2.setColor(FB);
+                    currentColor = FB;
+                }
+                if (currentStyle != style) {
+                    currentStyle = style;
+                    if ((currentStyle & CharStyle.BOLD) != 0) {
+                        if (bold == null)
+                            bold = normal.deriveFont(Font.BOLD);
+                        if (currentFont != bold) {
+                            currentFont = bold;
+                            g2.setFont(currentFont);
+                        }
+                    } else if (currentFont != normal) {
+                        currentFont = normal;
+                        g2.setFont(currentFont);
+                    }
+                    underlined = (currentStyle & CharStyle.UNDERLINED) != 0;
+                }
+                if (atlas != null) {
+                    final boolean isBold = (currentStyle & CharStyle.BOLD) != 0;
+                    for (int tc = col; tc < end; ++tc) {
+                        final int c = Line.codePoint(line.getCell(tc));
+                        // The atlas is shared by all panes, cluster ids belong to the model and are drawn as text.
+                        if (Graphemes.isCluster(c))
+                            g2.drawString(graphemes.toString(c), x + tc * charWidth, y);
+                        else if (c != 0 && c != ' ' && c != Line.WIDE_TAIL && FB != null)
+                            atlas.draw(g2, c, isBold, FB, x + tc * charWidth, by);
+                    }
+                    if (underlined)
+                        g2.drawLine(x + col * charWidth, y + 1, x + end * charWidth - 1, y + 1);
+                    col = end;
+                    continue;
+                }
+                // Characters with the advance of a cell are drawn as text in one call, empty cells as spaces.
+                // Other characters are drawn at their cells.
+                int textStart = col;
+                int textLength = 0;
+                int textUsed = 0;
+                for (int tc = col; tc < end; ++tc) {
+                    final int c = Line.codePoint(line.getCell(tc));
+                    if (c == 0) {
+                        text[textLength++] = ' ';
+                    } else if (c < Character.MIN_SUPPLEMENTARY_CODE_POINT && c != Line.WIDE_TAIL && hasCellAdvance(c)) {
+                        text[textLength++] = (char) c;
+                        textUsed = textLength;
+                    } else {
+                        if (textUsed > 0)
+                            g2.drawChars(text, 0, textUsed, x + textStart * charWidth, y);
+                        if (Graphemes.isCluster(c)) {
+                            g2.drawString(graphemes.toString(c), x + tc * charWidth, y);
+                        } else if (c != Line.WIDE_TAIL) {
+                            int ccLength = Character.toChars(c, cc, 0);
+                            g2.drawChars(cc, 0, ccLength, x + tc * charWidth, y);
+                        }
+                        textStart = tc + 1;
+                        textLength = 0;
+                        textUsed = 0;
+                    }
+                }
+                if (textUsed > 0)
+                    g2.drawChars(text, 0, textUsed, x + textStart * charWidth, y);
+                if (underlined)
+                    g2.drawLine(x + col * charWidth, y + 1, x + end * charWidth - 1, y + 1);
+                col = end;
+            }
+            y += charHeight;
+            by += charHeight;
+        }
+    }
+
+    /**
+     * Checks if the advance of a character in the font is the width of a cell, so that it can be drawn as part of a run.
+     */
+    private boolean hasCellAdvance(int c) {
+        if (advanceFont != getFont()) {
+            advanceFont = getFont();
+            advanceChecked.clear();
+            cellAdvance.clear();
+        }
+        if (!advanceChecked.get(c)) {
+            advanceChecked.set(c);
+            if (getFontMetrics(advanceFont).charWidth((char) c) == charWidth)
+                cellAdvance.set(c);
+        }
+        return cellAdvance.get(c);
+    }
+
+    private static int firstSearchHit(List<SearchHit> hits, long line) {
+        int low = 0;
+        int high = hits.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (hits.get(mid).line < line)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * Sets the search hits to highlight, e.g. the result of {@link com.bw.sshTerm.model.ScrollbackSearch}.
+     *
+     * @param hits The hits, ordered by position. Null or empty to remove the highlights.
+     */
+    public void setSearchHits(List<SearchHit> hits) {
+        searchHits = hits == null ? List.of() : hits;
+        backBufferState = null;
+        triggerRepaint();
+    }
+
+    /**
+     * Scrolls the scrollback-buffer so that a search hit is visible.
+     *
+     * @param hit The hit.
+     */
+    public void showSearchHit(SearchHit hit) {
+        if (scrollbar == null || model.getActiveScreen() != 0)
+            return;
+        model.findScrollbackRow(hit.line, hit.column).thenAccept(row -> SwingUtilities.invokeLater(() -> {
+            if (scrollbar != null) {
+                // Show the hit in the middle of the view. Lines of the screen are shown without scrollback.
+                final ScreenSnapshot snapshot = model.getSnapshot();
+                scrollbar.setValue(Math.max(0, Math.min(row - snapshot.rows / 2, snapshot.scrollbackRows)));
+            }
+        }));
+    }
+
     public int[] getTermSizes() {
-        return new int[]{termWidth, termHeight, charWidth, charHeight};
+        return new int[]{model.getColumns(), model.getRows(), charWidth, charHeight};
     }
 
     protected void updateTerminalSpecs() {
         FontMetrics metrics = getFontMetrics(getFont());
-        int[] terminalSpec = new int[]{termWidth, termHeight, charWidth, charHeight};
+        int[] terminalSpec = getTermSizes();
 
         int newCharWidth = metrics.charWidth('W'); // Breite eines Zeichens
         int newCharHeight = metrics.getHeight();   // Höhe eines Zeichens
 
         Dimension d = getSize();
-        System.out.println("SIZE " + d);
 
         int newTermWitdh = d.width / newCharWidth;
         int newTermHeight = d.height / newCharHeight;
@@ -394,95 +675,20 @@ public class TerminalPane extends JComponent {
 
         if (charHeight != newCharHeight ||
                 charWidth != newCharWidth ||
-                termWidth != newTermWitdh ||
-                termHeight != newTermHeight) {
+                model.getColumns() != newTermWitdh ||
+                model.getRows() != newTermHeight) {
 
             charHeight = newCharHeight;
             charWidth = newCharWidth;
             ascent = metrics.getAscent();
-            termWidth = newTermWitdh;
-
-            if (activeScreenBuffer.marginBottom == (termHeight - 1)) {
-                activeScreenBuffer.setMargins(activeScreenBuffer.marginTop, newTermHeight - 1);
-            }
-            termHeight = newTermHeight;
-            activeScreenBuffer.ensureSpace();
+            model.setSize(newTermWitdh, newTermHeight);
             configureScrollbar();
 
-            System.out.printf("\nNew Terminal Dimension: %d x %d. char %d x %d\n", termWidth, termHeight, charWidth, charHeight);
-
-            int[] newTerminalSpec = new int[]{termWidth, termHeight, charWidth, charHeight};
+            int[] newTerminalSpec = getTermSizes();
             firePropertyChange(PROPERTY_TERM_SIZE, terminalSpec, newTerminalSpec);
         }
     }
 
-    public void clear() {
-        activeScreenBuffer.clear();
-        caret.setCaret(0, 0);
-        triggerRepaint();
-    }
-
-    public void deleteChar() {
-        XC[] line = activeScreenBuffer.term.get(getCaretY());
-        for (int x = getCaretX(); x < (line.length - 1); ++x) {
-            line[x] = line[x + 1];
-        }
-        line[line.length - 1] = null;
-        triggerRepaint();
-    }
-
-    public void insert(char c) {
-        activeScreenBuffer.insert(getCaretX(), getCaretY(), c);
-    }
-
-    public void setTitle(String text) {
-        if (!Objects.equals(text, this.title)) {
-            this.title = text;
-            SwingUtilities.invokeLater(() -> {
-                if (SwingUtilities.getWindowAncestor(this) instanceof Frame f) {
-                    f.setTitle(this.title);
-                }
-            });
-        }
-    }
-
-    public void setMargins(int top, int bottom) {
-        activeScreenBuffer.setMargins(top, bottom);
-    }
-
-    public Color getCharForeground() {
-        return foreground == null ? getForeground() : foreground;
-    }
-
-    public void setCharForeground(Color fg) {
-        foreground = fg;
-    }
-
-    public Color getCharBackground() {
-        return background == null ? getBackground() : background;
-    }
-
-    public void setCharBackground(Color bg) {
-        background = bg;
-    }
-
-    /**
-     * Set char style by combination of values from {@link CharStyle}.
-     *
-     * @param style The style, combination of values from {@link CharStyle}.
-     */
-    public void setCharStyle(int style) {
-        charStyle = style;
-    }
-
-    public int getCharStyle() {
-        return charStyle;
-    }
-
-    public void clearCharStyle(int i) {
-        charStyle = (charStyle & ~i);
-    }
-
     /**
      * Binds the scrollback-buffer to a scrollbar.
      * If scrollback-buffer is enabled, the panel will show the area according to the position of the scrollbar.
@@ -497,20 +703,21 @@ public class TerminalPane extends JComponent {
             this.scrollbar = scrollbar;
             if (scrollbar != null) {
                 scrollbar.getModel().addChangeListener(scrollbarChangeListerer);
-                scrollbar.setEnabled(activeScreen == 0);
+                scrollbar.setEnabled(model.getActiveScreen() == 0);
                 configureScrollbar();
             }
         }
     }
 
     protected void configureScrollbar() {
-        if (activeScreen == 0 && scrollbar != null) {
+        final ScreenSnapshot snapshot = model.getSnapshot();
+        if (snapshot.activeScreen == 0 && scrollbar != null) {
+            final int termHeight = snapshot.rows;
             scrollbar.setMinimum(0);
-            scrollbar.setValue(activeScreenBuffer.topScrollBuffer.size());
+            scrollbar.setValue(snapshot.scrollbackRows);
             scrollbar.setBlockIncrement(termHeight);
             scrollbar.setVisibleAmount(termHeight);
-            scrollbar.setMaximum(activeScreenBuffer.bottomScrollBuffer.size() + activeScreenBuffer.topScrollBuffer.size() + termHeight);
-            System.out.println("Scrollbar: " + scrollbar.getValue() + " [" + scrollbar.getMinimum() + "," + scrollbar.getMaximum() + "] va " + scrollbar.getVisibleAmount());
+            scrollbar.setMaximum(snapshot.bottomLines + snapshot.scrollbackRows + termHeight);
         }
 
     }
@@ -523,8 +730,11 @@ public class TerminalPane extends JComponent {
     }
 
     protected void updateCursor() {
-        System.out.println("update cursor");
-        Graphics2D g2 = (Graphics2D) getGraphics().create();
+        final Graphics g = getGraphics();
+        // Not shown (yet), e.g. if painted offscreen.
+        if (g == null)
+            return;
+        Graphics2D g2 = (Graphics2D) g.create();
         try {
             caret.resetBlinking();
             caret.drawCursor(g2);
@@ -546,32 +756,83 @@ public class TerminalPane extends JComponent {
             else
                 repaintArea = area;
         }
-        if (repaintArea != null || activeScreenBuffer.repaint) {
-            activeScreenBuffer.repaint = false;
-            if (!repaintPending) {
-                repaintPending = true;
-                SwingUtilities.invokeLater(() -> {
-                    repaintPending = false;
-                    Rectangle r = repaintArea;
-                    repaintArea = null;
-                    if (r == null)
-                        repaint();
-                    else
-                        repaint(r);
-                });
+        scheduleRepaint();
+    }
+
+    /**
+     * Repaints the rows of the screen that were changed in the model.
+     * The changed rows are found by comparing the latest snapshot with the previous one, unchanged rows share their lines.
+     */
+    protected void triggerRepaintRows() {
+        final ScreenSnapshot snapshot = model.getSnapshot();
+        final boolean changed;
+        final boolean scrollbackChanged;
+        synchronized (dirtyRows) {
+            // Rows of the scrollback-buffer that were requested by a scrolled back view.
+            scrollbackChanged = !snapshot.hasSameScrollbackRows(comparedSnapshot);
+            if (comparedSnapshot == null || comparedSnapshot.getLineCount() != snapshot.getLineCount()) {
+                dirtyRows.set(0, snapshot.getLineCount());
+            } else {
+                for (int y = 0; y < snapshot.getLineCount(); ++y)
+                    if (snapshot.getLine(y) != comparedSnapshot.getLine(y))
+                        dirtyRows.set(y);
             }
+            comparedSnapshot = snapshot;
+            changed = !dirtyRows.isEmpty();
+        }
+        if (scrollbackChanged)
+            triggerRepaint();
+        else if (changed)
+            scheduleRepaint();
+    }
+
+    private void scheduleRepaint() {
+        if (!repaintPending) {
+            repaintPending = true;
+            SwingUtilities.invokeLater(() -> {
+                repaintPending = false;
+                Rectangle r = repaintArea;
+                repaintArea = null;
+                synchronized (dirtyRows) {
+                    if (!dirtyRows.isEmpty()) {
+                        // The rows are shown below the visible part of the scrollback-buffer.
+                        final int first = dirtyRows.nextSetBit(0);
+                        final Rectangle rows = new Rectangle(0, baseY + first * charHeight, getWidth(), (dirtyRows.length() - first) * charHeight);
+                        dirtyRows.clear();
+                        if (r == null)
+                            r = rows;
+                        else
+                            r.add(rows);
+                    }
+                }
+                if (r != null) {
+                    // The paint clears the cursor, so the old and new cursor cells have to be included.
+                    r.add(caret.getRepaintArea());
+                    repaint(r);
+                }
+            });
         }
     }
 
     protected void triggerRepaintCursor() {
-        // Check if we need a full repaint.
-        triggerRepaint(repaintArea);
-        // If not, update cursor manually.
+        // A pending repaint draws the cursor. If not, the cursor is updated alone.
         if (!repaintPending) {
             SwingUtilities.invokeLater(this::updateCursor);
         }
     }
 
+    /**
+     * Gets the color for an ARGB value from the model. Colors are cached, the same value gives the same instance.
+     */
+    protected Color getColor(int argb) {
+        Color c = colors.get(argb);
+        if (c == null) {
+            c = new Color(argb, true);
+            colors.put(argb, c);
+        }
+        return c;
+    }
+
     public int getLeftPageMargin() {
         return charWidth * 4;
     }
@@ -582,148 +843,4 @@ public class TerminalPane extends JComponent {
     public int getBaseY() {
         return baseY;
     }
-
-    static final class XC {
-        Color color;
-        Color background;
-        int style;
-        char c;
-    }
-
-    class Screen {
-
-        /**
-         * Zero based upper margin in range [0, termHeight-1[
-         */
-        public int marginTop = 0;
-        public boolean repaint = false;
-        /**
-         * Zero based lower margin in range [1, termHeight[
-         */
-        public int marginBottom = 0;
-        public int lastCaretX;
-        public int lastCaretY;
-        public List<XC[]> topScrollBuffer = new ArrayList<>(100);
-        public List<XC[]> bottomScrollBuffer = new ArrayList<>(100);
-        public List<XC[]> term = new ArrayList<>(100);
-
-        public void insert(int x, int y, char c) {
-            XC[] line = term.get(y);
-            if (line.length <= x) {
-                line = Arrays.copyOf(line, x + 10);
-                term.set(y, line);
-            }
-            for (int xp = (line.length - 1); xp > x; --xp) {
-                line[xp] = line[xp - 1];
-            }
-            XC xc = line[x];
-            if (xc == null)
-                line[x] = xc = new XC();
-            xc.c = c;
-            xc.color = foreground;
-            xc.background = background;
-            xc.style = charStyle;
-            repaint = true;
-        }
-
-        public void setMargins(int top, int bottom) {
-            System.out.println("setMargins(" + marginTop + "," + marginBottom + ") -> (" + top + "," + bottom + ")");
-            while (marginTop > top) {
-                marginTop--;
-            }
-            while (marginTop < top) {
-                marginTop++;
-            }
-            while (marginBottom > bottom) {
-                marginBottom--;
-            }
-            while (marginBottom < bottom) {
-                marginBottom++;
-                while (term.size() < (marginBottom - marginTop))
-                    term.add(new XC[termWidth]);
-            }
-        }
-
-        protected void ensureSpace() {
-            while (term.size() > termHeight)
-                term.remove(term.size() - 1);
-            while (term.size() < termHeight) {
-                term.add(new XC[termWidth]);
-            }
-            configureScrollbar();
-        }
-
-        public void clear() {
-            topScrollBuffer.clear();
-            bottomScrollBuffer.clear();
-            term.clear();
-            setMargins(0, termHeight - 1);
-            ensureSpace();
-            configureScrollbar();
-            repaint = true;
-        }
-
-        public void scrollDown() {
-
-            topScrollBuffer.add(term.remove(marginTop));
-            if (bottomScrollBuffer.isEmpty())
-                term.add(marginBottom, new XC[termWidth]);
-            else
-                term.add(marginBottom, bottomScrollBuffer.remove(bottomScrollBuffer.size() - 1));
-            configureScrollbar();
-            repaint = true;
-        }
-
-        public void scrollUp() {
-            bottomScrollBuffer.add(term.remove(marginBottom));
-            XC[] top = topScrollBuffer.isEmpty() ? new XC[0] : topScrollBuffer.remove(topScrollBuffer.size() - 1);
-            term.add(marginTop, top);
-            configureScrollbar();
-            repaint = true;
-            System.out.println("After ScrollUp: [" + marginTop + "," + marginBottom + "] term:" + term.size());
-        }
-
-        /**
-         * Sets a character with current attributes at the zero based coordinates.<br>
-         * Scrolls, if the position is outside the margin.
-         */
-        public void setCharAt(int x, int y, char b) {
-            try {
-                // System.out.println("char (" + x + "," + y + ")=" + (b < ' ' ? "Ox" + Integer.toHexString(b) : "" + b));
-                if (y >= 0) {
-                    while (y > marginBottom) {
-                        scrollDown();
-                        --y;
-                    }
-                    while (term.size() <= y) {
-                        term.add(new XC[termWidth]);
-                    }
-                    XC[] l = term.get(y);
-                    if (l.length <= x) {
-                        l = Arrays.copyOf(l, x + 10);
-                        term.set(y, l);
-                    }
-                    XC xc = l[x];
-                    if (xc == null) {
-                        xc = new XC();
-                        l[x] = xc;
-                    }
-                    // Simplify by instance-compare.
-                    if (xc.c != b || xc.color != foreground || xc.background != background) {
-                        xc.c = b;
-                        xc.color = foreground;
-                        xc.background = background;
-                        xc.style = charStyle;
-                        repaint = true;
-                    }
-                    --x;
-                    while (x >= 0 && l[x] == null) {
-                        l[x--] = new XC();
-                    }
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        }
-    }
 }
@@ -0,0 +1,292 @@
+/**
+ * Copyright 2025, Bernd Wengenroth.
+ * This is free and unencumbered software released into the public domain.
+ * Check LICENSE for details.
+ */
+package com.bw.sshTerm;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Records structured trace events of a session into a preallocated ring buffer.<p>
+ * Tracing is disabled by default and can be switched on and off at runtime.
+ * If disabled, recording costs only the check of one flag. If enabled, events are written as
+ * binary records (4 longs per event) into a ring buffer, raw bytes (input and answers) into a second one.
+ * Nothing is allocated per event. If the buffers are full, the oldest events are overwritten.<p>
+ * The content can be dumped as text on demand, e.g. to diagnose mis-rendered sequences.
+ */
+public final class TraceRecorder {
+
+    /**
+     * Raw output of the terminal server. a: length.
+     */
+    public static final int INPUT = 1;
+    /**
+     * Text written to the screen. a: number of characters.
+     */
+    public static final int TEXT = 2;
+    /**
+     * C0 control executed. a: the control.
+     */
+    public static final int EXECUTE = 3;
+    /**
+     * Escape sequence dispatched. a: intermediates, b: final byte.
+     */
+    public static final int ESC = 4;
+    /**
+     * Control sequence dispatched. a: private marker &lt;&lt; 24 | intermediates &lt;&lt; 8 | final byte,
+     * b: number of parameters, c: the first 4 parameters, 16 bit each.
+     */
+    public static final int CSI = 5;
+    /**
+     * Operating system command dispatched. a: first parameter, b: text length.
+     */
+    public static final int OSC = 6;
+    /**
+     * Device control string started. a: final byte.
+     */
+    public static final int DCS = 7;
+    /**
+     * Key pressed. a: key code, b: key char, c: modifiers.
+     */
+    public static final int KEY = 8;
+    /**
+     * Answer sent to terminal server. a: length.
+     */
+    public static final int ANSWER = 9;
+    /**
+     * Lines scrolled. a: lines (negative for scroll up), b: top margin, c: bottom margin.
+     */
+    public static final int SCROLL = 10;
+    /**
+     * Margins set. a: top, b: bottom.
+     */
+    public static final int MARGINS = 11;
+    /**
+     * Terminal resized. a: columns, b: rows.
+     */
+    public static final int RESIZE = 12;
+    /**
+     * Screen switched. a: id of the new screen.
+     */
+    public static final int SCREEN = 13;
+
+    private static final String[] TYPE_NAMES = {
+            "?", "INPUT", "TEXT", "EXECUTE", "ESC", "CSI", "OSC", "DCS", "KEY", "ANSWER", "SCROLL", "MARGINS", "RESIZE", "SCREEN"
+    };
+
+    private static final int LONGS_PER_EVENT = 4;
+
+    private final int eventCapacity;
+    private final int byteCapacity;
+    private volatile boolean enabled = false;
+    private long[] events;
+    private byte[] bytes;
+    private long eventCount;
+    private long byteCount;
+    private long startTime;
+
+    /**
+     * Creates a recorder with default capacity (64k events, 1 MiB raw bytes).
+     */
+    public TraceRecorder() {
+        this(1 << 16, 1 << 20);
+    }
+
+    /**
+     * Creates a recorder. The buffers are allocated on first enabling.
+     *
+     * @param eventCapacity Number of events to keep.
+     * @param byteCapacity  Number of raw bytes to keep.
+     */
+    public TraceRecorder(int eventCapacity, int byteCapacity) {
+        this.eventCapacity = eventCapacity;
+        this.byteCapacity = byteCapacity;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Switches tracing on or off. Buffers are allocated if tracing is enabled the first time.
+     * The content is kept if tracing is switched off.
+     */
+    public synchronized void setEnabled(boolean enabled) {
+        if (enabled && events == null) {
+            events = new long[eventCapacity * LONGS_PER_EVENT];
+            bytes = new byte[byteCapacity];
+            startTime = System.nanoTime();
+        }
+        this.enabled = enabled;
+    }
+
+    /**
+     * Removes all recorded events.
+     */
+    public synchronized void clear() {
+        eventCount = 0;
+        byteCount = 0;
+    }
+
+    /**
+     * Records an event if tracing is enabled.
+     *
+     * @param type The type, e.g. {@link #CSI}.
+     */
+    public void record(int type, int a, long b, long c) {
+        if (enabled)
+            append(type, a, b, c);
+    }
+
+    /**
+     * Records an event with raw bytes if tracing is enabled.
+     *
+     * @param type   The type, {@link #INPUT} or {@link #ANSWER}.
+     * @param data   The buffer with the bytes.
+     * @param offset Offset of the first byte.
+     * @param length Number of bytes.
+     */
+    public void recordBytes(int type, byte[] data, int offset, int length) {
+        if (enabled)
+            appendBytes(type, data, offset, length);
+    }
+
+    private synchronized void append(int type, int a, long b, long c) {
+        if (events == null)
+            return;
+        int i = (int) (eventCount++ % eventCapacity) * LONGS_PER_EVENT;
+        events[i] = System.nanoTime();
+        events[i + 1] = ((long) type << 32) | (a & 0xFFFFFFFFL);
+        events[i + 2] = b;
+        events[i + 3] = c;
+    }
+
+    private synchronized void appendBytes(int type, byte[] data, int offset, int length) {
+        if (bytes == null)
+            return;
+        final int total = length;
+        // Only the tail fits if more bytes are given than the capacity.
+        if (length > byteCapacity) {
+            offset += length - byteCapacity;
+            length = byteCapacity;
+        }
+        final long start = byteCount;
+        for (int i = offset; i < offset + length; ++i) {
+            bytes[(int) (byteCount++ % byteCapacity)] = data[i];
+        }
+        append(type, total, start, byteCount);
+    }
+
+    /**
+     * Dumps all recorded events as text to a file.
+     *
+     * @param file The file, overwritten if it exists.
+     * @throws IOException If the file can't be written.
+     */
+    public void dump(Path file) throws IOException {
+        try (BufferedWriter w = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            dump(w);
+        }
+    }
+
+    /**
+     * Dumps all recorded events as text, one line per event.
+     */
+    public synchronized void dump(Writer w) throws IOException {
+        if (events == null)
+            return;
+        long first = Math.max(0, eventCount - eventCapacity);
+        StringBuilder sb = new StringBuilder(200);
+        for (long e = first; e < eventCount; ++e) {
+            int i = (int) (e % eventCapacity) * LONGS_PER_EVENT;
+            int type = (int) (events[i + 1] >>> 32);
+            int a = (int) events[i + 1];
+            long b = events[i + 2];
+            long c = events[i + 3];
+
+            sb.setLength(0);
+            sb.append(String.format("%12.3f ", (events[i] - startTime) / 1000000d));
+            sb.append(type < TYPE_NAMES.length ? TYPE_NAMES[type] : String.valueOf(type)).append(' ');
+            switch (type) {
+                case INPUT, ANSWER -> appendBytes(sb, b, c);
+                case EXECUTE -> appendControl(sb, a);
+                case ESC -> {
+                    appendIntermediates(sb, a);
+                    sb.append((char) b);
+                }
+                case CSI -> {
+                    int marker = a >>> 24;
+                    if (marker != 0)
+                        sb.append((char) marker);
+                    for (int p = 0; p < b; ++p) {
+                        if (p > 0)
+                            sb.append(';');
+                        if (p >= 4) {
+                            sb.append("...");
+                            break;
+                        }
+                        int v = (int) ((c >>> (p * 16)) & 0xFFFF);
+                        if (v != 0xFFFF)
+                            sb.append(v);
+                    }
+                    appendIntermediates(sb, (a >>> 8) & 0xFFFF);
+                    sb.append((char) (a & 0xFF));
+                }
+                case OSC -> sb.append(a).append(" text length ").append(b);
+                case DCS -> sb.append((char) a);
+                case KEY -> sb.append("code ").append(a).append(" char ").append(b).append(" modifiers 0x").append(Long.toHexString(c));
+                default -> sb.append(a).append(' ').append(b).append(' ').append(c);
+            }
+            sb.append('\n');
+            w.write(sb.toString());
+        }
+    }
+
+    private void appendBytes(StringBuilder sb, long start, long end) {
+        sb.append(end - start).append(" \"");
+        if (start < byteCount - byteCapacity) {
+            sb.append("(overwritten)");
+        } else {
+            for (long p = start; p < end; ++p) {
+                int v = bytes[(int) (p % byteCapacity)] & 0xFF;
+                if (v == 0x1B)
+                    sb.append("\\e");
+                else if (v == '\\')
+                    sb.append("\\\\");
+                else if (v < 0x20 || v >= 0x7F)
+                    sb.append(String.format("\\x%02x", v));
+                else
+                    sb.append((char) v);
+            }
+        }
+        sb.append('"');
+    }
+
+    private static void appendControl(StringBuilder sb, int c) {
+        sb.append(String.format("0x%02x", c));
+    }
+
+    private static void appendIntermediates(StringBuilder sb, int intermediates) {
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            int i = (intermediates >>> shift) & 0xFF;
+            if (i != 0)
+                sb.append((char) i);
+        }
+    }
+
+    /**
+     * Packs the first 4 parameters into 16 bit each, as needed for {@link #CSI} events.
+     */
+    public static long packParameters(ControlSequenceParameters params) {
+        long packed = 0;
+        for (int i = 0; i < 4; ++i)
+            packed |= ((long) (params.getInt(i, -1) & 0xFFFF)) << (i * 16);
+        return packed;
+    }
+}
@@ -0,0 +1,147 @@
+/**
+ * Copyright 2025, Bernd Wengenroth.
+ * This is free and unencumbered software released into the public domain.
+ * Check LICENSE for details.
+ */
+package com.bw.sshTerm;
+
+/**
+ * Decodes UTF-8 to unicode code points.<p>
+ * Whole buffers are decoded in one pass. Incomplete sequences at the end of a buffer are kept
+ * and continued with the next buffer. Invalid sequences (illegal bytes, overlong encodings, surrogates)
+ * are replaced by {@link #REPLACEMENT_CHARACTER}.
+ */
+public final class Utf8Decoder {
+
+    /**
+     * Code point that replaces invalid input.
+     */
+    public static final int REPLACEMENT_CHARACTER = 0xFFFD;
+
+    /**
+     * Minimal code point for sequences of 2, 3 and 4 bytes. Used to detect overlong encodings.
+     */
+    private static final int[] MIN_CODE_POINT = {0, 0, 0x80, 0x800, 0x10000};
+
+    private static final int INCOMPLETE = -1;
+    private static final int INTERRUPTED = -2;
+
+    private int codePoint = 0;
+    private int bytesLeft = 0;
+    private int sequenceLength = 0;
+    private int position = 0;
+
+    /**
+     * Checks if an incomplete sequence is pending.
+     */
+    public boolean isPending() {
+        return bytesLeft > 0;
+    }
+
+    /**
+     * Discards any pending incomplete sequence.
+     */
+    public void reset() {
+        bytesLeft = 0;
+    }
+
+    /**
+     * Gets the index behind the last byte that was consumed by {@link #decode}.
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    /**
+     * Checks if a code point is a C1 control.
+     */
+    public static boolean isC1Control(int codePoint) {
+        return codePoint >= 0x80 && codePoint <= 0x9F;
+    }
+
+    /**
+     * Decodes bytes.<br>
+     * Decoding stops behind a C1 control (see {@link #isC1Control(int)}), as it needs to be handled
+     * before the following bytes. Use {@link #getPosition()} to get the index of the first byte not consumed.
+     *
+     * @param src  The source buffer.
+     * @param from Index of the first byte.
+     * @param to   End index (exclusive).
+     * @param dst  The destination for the code points, starting at index 0. Needs space for at least (to-from+1) code points.
+     * @return The number of code points written to dst.
+     */
+    public int decode(byte[] src, int from, int to, int[] dst) {
+        int n = 0;
+        int i = from;
+        while (i < to) {
+            if (bytesLeft == 0) {
+                // Fast path for ASCII.
+                byte b;
+                while (i < to && (b = src[i]) >= 0) {
+                    dst[n++] = b;
+                    ++i;
+                }
+                if (i >= to)
+                    break;
+            }
+            int cp = decodeByte(src[i]);
+            if (cp == INTERRUPTED) {
+                // The byte is decoded again as start of a new sequence.
+                dst[n++] = REPLACEMENT_CHARACTER;
+            } else {
+                ++i;
+                if (cp >= 0) {
+                    dst[n++] = cp;
+                    if (isC1Control(cp))
+                        break;
+                }
+            }
+        }
+        position = i;
+        return n;
+    }
+
+    /**
+     * Decodes a single byte.
+     *
+     * @param b The byte.
+     * @return The code point if a sequence was completed, {@link #INCOMPLETE} if more bytes are needed
+     * or {@link #INTERRUPTED} if a pending sequence was interrupted by this byte. In the last case the
+     * byte was not consumed.
+     */
+    private int decodeByte(byte b) {
+        if ((b & 0b11000000) == 0b10000000) {
+            // Continuation byte
+            if (bytesLeft == 0)
+                return REPLACEMENT_CHARACTER;
+            codePoint = (codePoint << 6) | (b & 0x3F);
+            if (--bytesLeft > 0)
+                return INCOMPLETE;
+            if (codePoint < MIN_CODE_POINT[sequenceLength] ||
+                    codePoint > Character.MAX_CODE_POINT ||
+                    (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE))
+                return REPLACEMENT_CHARACTER;
+            return codePoint;
+        }
+        if (bytesLeft > 0) {
+            bytesLeft = 0;
+            return INTERRUPTED;
+        }
+        if (b >= 0) {
+            return b;
+        } else if ((b & 0b11100000) == 0b11000000) {
+            codePoint = b & 0x1F;
+            bytesLeft = 1;
+        } else if ((b & 0b11110000) == 0b11100000) {
+            codePoint = b & 0x0F;
+            bytesLeft = 2;
+        } else if ((b & 0b11111000) == 0b11110000) {
+            codePoint = b & 0x07;
+            bytesLeft = 3;
+        } else {
+            return REPLACEMENT_CHARACTER;
+        }
+        sequenceLength = bytesLeft + 1;
+        return INCOMPLETE;
+    }
+}
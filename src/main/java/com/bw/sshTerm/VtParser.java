@@ -0,0 +1,348 @@
+/**
+ * Copyright 2025, Bernd Wengenroth.
+ * This is free and unencumbered software released into the public domain.
+ * Check LICENSE for details.
+ */
+package com.bw.sshTerm;
+
+/**
+ * Table driven parser for control sequences, following the state diagram of the DEC ANSI parser
+ * (see <a href="https://vt100.net/emu/dec_ansi_parser">vt100.net</a>).<p>
+ * The transition and action for each state and input byte are precomputed into one table,
+ * so each byte costs one table lookup and (mostly) one handler call.<p>
+ * Differences to the original diagram:
+ * <ul>
+ * <li>Bytes 0x80-0xFF are data (UTF-8) and not C1 controls. In ground state they are printed, so the handler can decode them.
+ *     Decoded C1 controls can be fed by {@link #advanceC1(int)}.</li>
+ * <li>':' is accepted as separator for sub-parameters.</li>
+ * <li>BEL terminates OSC strings, as xterm does.</li>
+ * </ul>
+ */
+public final class VtParser {
+
+    /**
+     * Receiver of the parsed actions.
+     */
+    public interface Handler {
+
+        /**
+         * Prints a byte. Called in ground state for 0x20-0x7E and for all bytes >= 0x80 (UTF-8 sequences).
+         */
+        void print(byte c);
+
+        /**
+         * Executes a C0 control.
+         */
+        void execute(int c);
+
+        /**
+         * Dispatches an escape sequence.
+         *
+         * @param intermediates Collected intermediate bytes (0x20-0x2F), first byte in the highest used byte. 0 if none.
+         * @param c             The final byte.
+         */
+        void escDispatch(int intermediates, int c);
+
+        /**
+         * Dispatches a control sequence (CSI).
+         *
+         * @param privateMarker The private marker ('&lt;', '=', '&gt;' or '?') or 0.
+         * @param intermediates Collected intermediate bytes (0x20-0x2F), first byte in the highest used byte. 0 if none.
+         * @param c             The final byte.
+         * @param params        The parameters.
+         */
+        void csiDispatch(int privateMarker, int intermediates, int c, ControlSequenceParameters params);
+
+        /**
+         * Dispatches an operating system command (OSC).
+         *
+         * @param terminator The terminator, {@link VtParser#BEL} or {@link VtParser#ST}.
+         * @param params     The parameters. The first numeric parameter and the text after the first ';'.
+         */
+        void oscDispatch(int terminator, ControlSequenceParameters params);
+
+        /**
+         * Starts a device control string (DCS).
+         */
+        void hook(int privateMarker, int intermediates, int c, ControlSequenceParameters params);
+
+        /**
+         * Passes a byte of a device control string.
+         */
+        void put(byte c);
+
+        /**
+         * Ends a device control string.
+         */
+        void unhook();
+    }
+
+    /**
+     * The terminator of an OSC string by BEL.
+     */
+    public static final int BEL = 0x07;
+
+    /**
+     * The terminator of an OSC string by ST, also passed for ESC \.
+     */
+    public static final int ST = 0x9C;
+
+    // States
+    static final int GROUND = 0;
+    static final int ESCAPE = 1;
+    static final int ESCAPE_INTERMEDIATE = 2;
+    static final int CSI_ENTRY = 3;
+    static final int CSI_PARAM = 4;
+    static final int CSI_INTERMEDIATE = 5;
+    static final int CSI_IGNORE = 6;
+    static final int DCS_ENTRY = 7;
+    static final int DCS_PARAM = 8;
+    static final int DCS_INTERMEDIATE = 9;
+    static final int DCS_PASSTHROUGH = 10;
+    static final int DCS_IGNORE = 11;
+    static final int OSC_STRING = 12;
+    static final int SOS_PM_APC_STRING = 13;
+    private static final int STATE_COUNT = 14;
+
+    // Actions
+    private static final int NONE = 0;
+    private static final int PRINT = 1;
+    private static final int EXECUTE = 2;
+    private static final int COLLECT = 3;
+    private static final int PARAM = 4;
+    private static final int ESC_DISPATCH = 5;
+    private static final int CSI_DISPATCH = 6;
+    private static final int PUT = 7;
+    private static final int OSC_PUT = 8;
+
+    /**
+     * The transition table. Indexed by (state &lt;&lt; 8 | byte). Contains (action &lt;&lt; 4 | next state).
+     */
+    private static final byte[] TABLE = new byte[STATE_COUNT << 8];
+
+    static {
+        for (int state = 0; state < STATE_COUNT; ++state) {
+            // Default: ignore and stay.
+            set(state, 0x00, 0xFF, NONE, state);
+
+            switch (state) {
+                case GROUND -> {
+                    setC0(state, EXECUTE, state);
+                    set(state, 0x20, 0x7E, PRINT, state);
+                    set(state, 0x80, 0xFF, PRINT, state);
+                }
+                case ESCAPE -> {
+                    setC0(state, EXECUTE, state);
+                    set(state, 0x20, 0x2F, COLLECT, ESCAPE_INTERMEDIATE);
+                    set(state, 0x30, 0x7E, ESC_DISPATCH, GROUND);
+                    set(state, 'P', 'P', NONE, DCS_ENTRY);
+                    set(state, 'X', 'X', NONE, SOS_PM_APC_STRING);
+                    set(state, '[', '[', NONE, CSI_ENTRY);
+                    set(state, ']', ']', NONE, OSC_STRING);
+                    set(state, '^', '_', NONE, SOS_PM_APC_STRING);
+                    // Not a valid sequence, don't lose the text.
+                    set(state, 0x80, 0xFF, PRINT, GROUND);
+                }
+                case ESCAPE_INTERMEDIATE -> {
+                    setC0(state, EXECUTE, state);
+                    set(state, 0x20, 0x2F, COLLECT, state);
+                    set(state, 0x30, 0x7E, ESC_DISPATCH, GROUND);
+                    set(state, 0x80, 0xFF, PRINT, GROUND);
+                }
+                case CSI_ENTRY -> {
+                    setC0(state, EXECUTE, state);
+                    set(state, 0x20, 0x2F, COLLECT, CSI_INTERMEDIATE);
+                    set(state, 0x30, 0x3B, PARAM, CSI_PARAM);
+                    set(state, 0x3C, 0x3F, COLLECT, CSI_PARAM);
+                    set(state, 0x40, 0x7E, CSI_DISPATCH, GROUND);
+                    set(state, 0x80, 0xFF, NONE, CSI_IGNORE);
+                }
+                case CSI_PARAM -> {
+                    setC0(state, EXECUTE, state);
+                    set(state, 0x20, 0x2F, COLLECT, CSI_INTERMEDIATE);
+                    set(state, 0x30, 0x3B, PARAM, state);
+                    set(state, 0x3C, 0x3F, NONE, CSI_IGNORE);
+                    set(state, 0x40, 0x7E, CSI_DISPATCH, GROUND);
+                    set(state, 0x80, 0xFF, NONE, CSI_IGNORE);
+                }
+                case CSI_INTERMEDIATE -> {
+                    setC0(state, EXECUTE, state);
+                    set(state, 0x20, 0x2F, COLLECT, state);
+                    set(state, 0x30, 0x3F, NONE, CSI_IGNORE);
+                    set(state, 0x40, 0x7E, CSI_DISPATCH, GROUND);
+                    set(state, 0x80, 0xFF, NONE, CSI_IGNORE);
+                }
+                case CSI_IGNORE -> {
+                    setC0(state, EXECUTE, state);
+                    set(state, 0x40, 0x7E, NONE, GROUND);
+                }
+                case DCS_ENTRY -> {
+                    set(state, 0x20, 0x2F, COLLECT, DCS_INTERMEDIATE);
+                    set(state, 0x30, 0x3B, PARAM, DCS_PARAM);
+                    set(state, 0x3C, 0x3F, COLLECT, DCS_PARAM);
+                    set(state, 0x40, 0x7E, NONE, DCS_PASSTHROUGH);
+                    set(state, 0x80, 0xFF, NONE, DCS_IGNORE);
+                }
+                case DCS_PARAM -> {
+                    set(state, 0x20, 0x2F, COLLECT, DCS_INTERMEDIATE);
+                    set(state, 0x30, 0x3B, PARAM, state);
+                    set(state, 0x3C, 0x3F, NONE, DCS_IGNORE);
+                    set(state, 0x40, 0x7E, NONE, DCS_PASSTHROUGH);
+                    set(state, 0x80, 0xFF, NONE, DCS_IGNORE);
+                }
+                case DCS_INTERMEDIATE -> {
+                    set(state, 0x20, 0x2F, COLLECT, state);
+                    set(state, 0x30, 0x3F, NONE, DCS_IGNORE);
+                    set(state, 0x40, 0x7E, NONE, DCS_PASSTHROUGH);
+                    set(state, 0x80, 0xFF, NONE, DCS_IGNORE);
+                }
+                case DCS_PASSTHROUGH -> {
+                    setC0(state, PUT, state);
+                    set(state, 0x20, 0x7E, PUT, state);
+                    set(state, 0x80, 0xFF, PUT, state);
+                }
+                case OSC_STRING -> {
+                    set(state, 0x07, 0x07, NONE, GROUND);
+                    set(state, 0x20, 0x7E, OSC_PUT, state);
+                    set(state, 0x80, 0xFF, OSC_PUT, state);
+                }
+                default -> {
+                    // DCS_IGNORE, SOS_PM_APC_STRING: Ignore everything.
+                }
+            }
+            // Transitions from "anywhere"
+            set(state, 0x18, 0x18, EXECUTE, GROUND);
+            set(state, 0x1A, 0x1A, EXECUTE, GROUND);
+            set(state, 0x1B, 0x1B, NONE, ESCAPE);
+        }
+    }
+
+    private final Handler handler;
+    private final ControlSequenceParameters parameters = new ControlSequenceParameters();
+    private int state = GROUND;
+    private int privateMarker;
+    private int intermediates;
+    private boolean oscText;
+
+    /**
+     * Creates a new parser.
+     *
+     * @param handler The handler that shall receive the actions.
+     */
+    public VtParser(Handler handler) {
+        this.handler = handler;
+    }
+
+    private static void set(int state, int from, int to, int action, int next) {
+        final byte t = (byte) ((action << 4) | next);
+        for (int c = from; c <= to; ++c)
+            TABLE[(state << 8) | c] = t;
+    }
+
+    private static void setC0(int state, int action, int next) {
+        set(state, 0x00, 0x17, action, next);
+        set(state, 0x19, 0x19, action, next);
+        set(state, 0x1C, 0x1F, action, next);
+    }
+
+    /**
+     * Checks if the parser is in ground state, where printable bytes are passed to {@link Handler#print(byte)}.
+     */
+    public boolean isGround() {
+        return state == GROUND;
+    }
+
+    /**
+     * Handles one byte.
+     *
+     * @param b The byte.
+     */
+    public void advance(byte b) {
+        final int c = b & 0xFF;
+        final int t = TABLE[(state << 8) | c] & 0xFF;
+        final int next = t & 0x0F;
+        final boolean changed = next != state || c == 0x1B;
+
+        if (changed) {
+            // Exit actions
+            if (state == OSC_STRING) {
+                if (c == BEL)
+                    handler.oscDispatch(BEL, parameters);
+                else if (c == 0x1B)
+                    handler.oscDispatch(ST, parameters);
+            } else if (state == DCS_PASSTHROUGH) {
+                handler.unhook();
+            }
+            // Set the new state before the handler is called, the handler may feed decoded C1 controls.
+            state = next;
+        }
+
+        switch (t >> 4) {
+            case PRINT -> handler.print(b);
+            case EXECUTE -> handler.execute(c);
+            case COLLECT -> {
+                if (c >= 0x3C && c <= 0x3F)
+                    privateMarker = c;
+                else
+                    intermediates = (intermediates << 8) | c;
+            }
+            case PARAM -> {
+                if (c <= '9')
+                    parameters.addDigit(c - '0');
+                else if (c == ';')
+                    parameters.nextParameter();
+                else
+                    parameters.nextSubParameter();
+            }
+            case ESC_DISPATCH -> handler.escDispatch(intermediates, c);
+            case CSI_DISPATCH -> handler.csiDispatch(privateMarker, intermediates, c, parameters);
+            case PUT -> handler.put(b);
+            case OSC_PUT -> oscPut(b);
+            default -> {
+            }
+        }
+
+        if (changed) {
+            // Entry actions, ESC re-enters the escape state.
+            switch (next) {
+                case ESCAPE, CSI_ENTRY, DCS_ENTRY, OSC_STRING -> clear();
+                case DCS_PASSTHROUGH -> handler.hook(privateMarker, intermediates, c, parameters);
+                default -> {
+                }
+            }
+        }
+    }
+
+    /**
+     * Handles a C1 control (0x80-0x9F) that was received as decoded character.
+     * Handled as the equivalent 7-bit sequence ESC Fe.
+     *
+     * @param c The control.
+     */
+    public void advanceC1(int c) {
+        advance((byte) 0x1B);
+        advance((byte) (c - 0x40));
+    }
+
+    private void clear() {
+        parameters.reset();
+        privateMarker = 0;
+        intermediates = 0;
+        oscText = false;
+    }
+
+    /**
+     * Collects OSC data. The first numeric parameter is collected as parameter, all after the first ';' as text.
+     */
+    private void oscPut(byte b) {
+        if (oscText) {
+            parameters.addText(b);
+        } else if (b >= '0' && b <= '9') {
+            parameters.addDigit(b - '0');
+        } else {
+            oscText = true;
+            if (b != ';')
+                parameters.addText(b);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.bw.sshTerm;
 
-import java.awt.*;
+import com.bw.sshTerm.model.TerminalModel;
+
 import java.awt.event.KeyEvent;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
@@ -8,22 +9,47 @@ import java.nio.charset.StandardCharsets;
 /**
  * A Terminal controller that supports xterm control sequences.
  */
-public class Xterm extends TerminalControl {
+public class Xterm extends TerminalControl implements VtParser.Handler {
 
     public static final Charset asciiCharset = StandardCharsets.US_ASCII;
-    int uft8Codepoint = 0;
-    private State state = State.normal;
-    private int utf8BytesLeft = 0;
-    private Type type = null;
-    private StringBuilder arguments = new StringBuilder();
+
+    /**
+     * ARGB values of the 256 indexed colors: The 8 basic ANSI colors, their bright versions,
+     * a 6x6x6 color cube and 24 gray levels.
+     */
+    protected static final int[] PALETTE = new int[256];
+
+    /**
+     * Marker for invalid color arguments. All valid colors are opaque.
+     */
+    private static final int NO_COLOR = 1;
+
+    static {
+        int[] basic = {
+                0x000000, 0xFF0000, 0x00FF00, 0xFFFF00, 0x0000FF, 0xFF00FF, 0x00FFFF, 0xFFFFFF,
+                0x7F7F7F, 0xFF0000, 0x00FF00, 0xFFFF00, 0x5C5CFF, 0xFF00FF, 0x00FFFF, 0xFFFFFF
+        };
+        for (int i = 0; i < 16; ++i)
+            PALETTE[i] = 0xFF000000 | basic[i];
+        int[] levels = {0, 95, 135, 175, 215, 255};
+        for (int i = 0; i < 216; ++i)
+            PALETTE[16 + i] = 0xFF000000 | (levels[i / 36] << 16) | (levels[(i / 6) % 6] << 8) | levels[i % 6];
+        for (int i = 0; i < 24; ++i) {
+            int g = 8 + i * 10;
+            PALETTE[232 + i] = 0xFF000000 | (g << 16) | (g << 8) | g;
+        }
+    }
+
+    private final VtParser parser = new VtParser(this);
+    private final byte[] printByte = new byte[1];
+    private final int[] printCodePoints = new int[2];
+    private final int[] singleChar = new int[1];
     private int infix = 0;
     private boolean bracketedPasteMode = false;
 
     public byte[] getCtrlCodes(boolean ctrlDown, int keyCode, char keyChar) {
         byte[] data = null;
         if (ctrlDown) {
-            if (debug)
-                log("Ctrl Code " + keyCode + "(0x" + Integer.toHexString(keyCode) + ") char " + keyChar + " (" + ((int) keyChar) + ")\n");
             data =
                     switch (keyCode) {
                         case KeyEvent.VK_A -> new byte[]{1}; // Start of Heading (SOH)
@@ -64,8 +90,6 @@ public class Xterm extends TerminalControl {
                         };
                     };
         } else {
-            if (debug)
-                log("Code " + keyCode + "(0x" + Integer.toHexString(keyCode) + ") char " + keyChar + " (" + ((int) keyChar) + ")\n");
             String s =
                     switch (keyCode) {
                         case KeyEvent.VK_UP -> "\033[A";
@@ -94,295 +118,280 @@ public class Xterm extends TerminalControl {
         return "xterm";
     }
 
-    protected void addChar(char c) {
-        if (pane.getCaretX() >= pane.termWidth) {
-            pane.setCaretAbsolute(0, pane.getCaretY() + 1);
-            pane.setChar(c);
-        } else {
-            pane.setChar(c);
-            pane.moveCaret(1, 0);
-        }
+    @Override
+    protected boolean isPrintableRunAllowed() {
+        return parser.isGround();
     }
 
     @Override
-    public byte[] handleChar(byte c) {
-        byte[] answer = null;
-        switch (state) {
-            case normal -> {
-                switch (c) {
-                    case -1, 7 -> {
-                    }
-                    case 27 -> {
-                        state = State.esc;
-                        arguments.setLength(0);
-                    }
-                    case 13 -> pane.setCaretAbsolute(0, pane.getCaretY());
-                    case 8 -> {
-                        if (debug) log("BS ");
-                        pane.moveCaret(-1, 0);
-                    }
-                    case 10 -> pane.setCaretAbsolute(0, pane.getCaretY() + 1);
-                    default -> {
-                        if (debug) logChar((char) c);
-                        if ((c & 0b10000000) == 0) {
-                            // 1-Byte ASCII
-                            addChar((char) c);
-                            uft8Codepoint = 0;
-                            utf8BytesLeft = 0;
-                        } else if ((c & 0b11000000) == 0b10000000) {
-                            // Part of Utf8 sequence
-                            uft8Codepoint <<= 6;
-                            uft8Codepoint |= 0x3F & c;
-                            if ((--utf8BytesLeft) == 0) {
-                                if (Character.isBmpCodePoint(uft8Codepoint)) {
-                                    if (debug) log("utf8 char " + ((char) uft8Codepoint) + "\n");
-                                    addChar((char) uft8Codepoint);
-                                } else {
-                                    log("Characters outside BMP range are not supported: 0x" + Integer.toHexString(uft8Codepoint) + "\n");
-                                    addChar('?');
-                                }
-                            }
-                        } else if ((c & 0b11100000) == 0b11000000) {
-                            // 2-Byte utf8
-                            uft8Codepoint = 0x1F & c;
-                            utf8BytesLeft = 1;
-                        } else if ((c & 0b11110000) == 0b11100000) {
-                            // 3-Byte utf8
-                            uft8Codepoint = 0x0F & c;
-                            utf8BytesLeft = 2;
-                        } else if ((c & 0b11111000) == 0b11110000) {
-                            // 4-Byte utf8
-                            uft8Codepoint = 0x07 & c;
-                            utf8BytesLeft = 3;
-                        } else {
-                            uft8Codepoint = 0;
-                            utf8BytesLeft = 0;
-                            log("Illegal utf8 start byte 0x" + Integer.toHexString(0x00FF & c));
-                        }
-                    }
-                }
-            }
-            case esc -> {
-                switch ((char) c) {
-                    case '[' -> {
-                        type = Type.csi;
-                        state = State.typeIndicator;
-                        infix = 0;
-                    }
-                    case ']' -> {
-                        type = Type.osc;
-                        state = State.typeIndicator;
-                        infix = 0;
-                    }
-                    case '^' -> {
-                        type = Type.pm;
-                        state = State.typeIndicator;
-                        infix = 0;
-                    }
-                    case '7', '8', '=', '>', 'D', 'E', 'F', 'H', 'M', 'c', 'l', 'm', 'n', 'o', '|', '}', '~' -> {
-                        handleEscCommand(c, (byte) 0);
-                        state = State.normal;
-                        infix = 0;
-                    }
-                    case ' ', '#', '%', '(', ')', '*', '+' -> {
-                        infix = c;
-                        state = State.escSingleChar;
-                        type = Type.escSingleChar;
-                    }
-                    default -> {
-                        state = State.normal;
-                        addChar('\033');
-                        addChar((char) c);
-                    }
-                }
+    protected void handleC1Control(int c) {
+        parser.advanceC1(c);
+    }
+
+    protected void addChar(int c) {
+        // Wraps, takes two cells for wide characters or combines with the previous character.
+        singleChar[0] = c;
+        model.setChars(singleChar, 0, 1);
+    }
+
+    @Override
+    public void handleChar(byte c) {
+        parser.advance(c);
+    }
+
+    @Override
+    public void print(byte c) {
+        printByte[0] = c;
+        int n = utf8Decoder.decode(printByte, 0, 1, printCodePoints);
+        for (int i = 0; i < n; ++i) {
+            int cp = printCodePoints[i];
+            if (Utf8Decoder.isC1Control(cp)) {
+                parser.advanceC1(cp);
+            } else {
+                trace.record(TraceRecorder.TEXT, 1, 0, 0);
+                addChar(cp);
             }
-            case typeIndicator -> {
-                if ((c >= '0' && c <= '9') || c == ';') {
-                    state = State.arguments;
-                    arguments.append((char) c);
-                } else if (c == '?') {
-                    infix = c;
-                    state = State.arguments;
-                } else {
-                    answer = handleCommand(c);
-                    state = State.normal;
-                }
+        }
+    }
+
+    @Override
+    public void execute(int c) {
+        trace.record(TraceRecorder.EXECUTE, c, 0, 0);
+        switch (c) {
+            case 8 -> {
+                model.moveCaret(-1, 0);
             }
-            case escSingleChar -> {
-                // Esc with one single character. First char in infix
-                answer = handleCommand(c);
-                state = State.normal;
+            case 9 -> {
+                // HT: Move to next tab stop, tab stops are fixed to every 8th column.
+                int x = Math.min((model.getCaretX() / 8 + 1) * 8, model.getColumns() - 1);
+                model.setCaretAbsolute(Math.max(x, model.getCaretX()), model.getCaretY());
             }
-            case arguments -> {
-                if ((c >= '0' && c <= '9') || c == ';' ||
-                        (type == Type.osc && c >= 32 && c <= 126)) {
-                    arguments.append((char) c);
-                } else {
-                    answer = handleCommand(c);
-                    state = State.normal;
-                    type = null;
-                }
+            case 10, 11, 12 -> model.setCaretAbsolute(0, model.getCaretY() + 1);
+            case 13 -> model.setCaretAbsolute(0, model.getCaretY());
+            default -> {
+                // BEL, SO, SI, CAN, SUB and others: Nothing to do.
             }
         }
-        return answer;
+    }
+
+    @Override
+    public void escDispatch(int intermediates, int c) {
+        trace.record(TraceRecorder.ESC, intermediates, c, 0);
+        if (intermediates == 0)
+            handleEscCommand(c, 0);
+        else if (intermediates <= 0xFF)
+            handleEscCommand(intermediates, c);
+        // Multiple intermediates are not supported.
+    }
+
+    @Override
+    public void csiDispatch(int privateMarker, int intermediates, int c, ControlSequenceParameters params) {
+        if (trace.isEnabled())
+            trace.record(TraceRecorder.CSI, (privateMarker << 24) | ((intermediates & 0xFFFF) << 8) | c,
+                    params.size(), TraceRecorder.packParameters(params));
+        if (intermediates != 0) {
+            // Intermediates are not supported.
+            return;
+        }
+        infix = privateMarker;
+        handleCsiCommand(c, params);
+    }
+
+    @Override
+    public void oscDispatch(int terminator, ControlSequenceParameters params) {
+        trace.record(TraceRecorder.OSC, params.getInt(0, 0), params.getTextLength(), 0);
+        infix = 0;
+        handleOscCommand(terminator, params);
+    }
+
+    @Override
+    public void hook(int privateMarker, int intermediates, int c, ControlSequenceParameters params) {
+        // DCS are not supported.
+        trace.record(TraceRecorder.DCS, c, 0, 0);
+    }
+
+    @Override
+    public void put(byte c) {
+        // DCS are not supported.
+    }
+
+    @Override
+    public void unhook() {
+        // DCS are not supported.
     }
 
     protected void applySgrCode(int code) {
-        if (debug) log(" -> Sgr " + code);
         switch (code) {
             case 0 -> { // Normal (default)
-                pane.setCharBackground(null);
-                pane.setCharForeground(null);
-                pane.setCharStyle(0);
+                model.setBackground(TerminalModel.DEFAULT_COLOR);
+                model.setForeground(TerminalModel.DEFAULT_COLOR);
+                model.setStyle(0);
             }
             case 1 -> // Bold
-                    pane.setCharStyle(CharStyle.BOLD);
+                    model.setStyle(CharStyle.BOLD);
             case 4 -> // Underlined
-                    pane.setCharStyle(CharStyle.UNDERLINED);
+                    model.setStyle(CharStyle.UNDERLINED);
             case 5 -> // Blink (appears as Bold)
-                    pane.setCharStyle(CharStyle.BOLD);
-            case 7 -> { // Inverse
-                pane.setCharBackground(pane.getForeground());
-                pane.setCharForeground(pane.getBackground());
-            }
+                    model.setStyle(CharStyle.BOLD);
+            case 7 -> // Inverse
+                    model.setStyle(model.getStyle() | CharStyle.INVERSE);
             case 8 -> { // Invisible, i.e., hidden (VT300)
             }
             case 22 -> // Normal (neither bold nor faint)
-                    pane.setCharStyle(0);
+                    model.setStyle(0);
             case 24 -> // Not underlined
-                    pane.clearCharStyle(CharStyle.UNDERLINED);
+                    model.clearStyle(CharStyle.UNDERLINED);
             case 25 -> // Steady (not blinking)
-                    pane.clearCharStyle(CharStyle.BOLD);
-            case 27 -> { // Positive (not inverse)
-                Color bg = pane.getCharBackground();
-                pane.setCharBackground(pane.getCharForeground());
-                pane.setCharForeground(bg);
-            }
+                    model.clearStyle(CharStyle.BOLD);
+            case 27 -> // Positive (not inverse)
+                    model.clearStyle(CharStyle.INVERSE);
             case 28 -> { // Visible, i.e., not hidden (VT300)
             }
-            case 30 -> // Set foreground color to Black
-                    pane.setCharForeground(Color.BLACK);
-            case 31 -> // Set foreground color to Red
-                    pane.setCharForeground(Color.RED);
-            case 32 -> // Set foreground color to Green
-                    pane.setCharForeground(Color.GREEN);
-            case 33 -> // Set foreground color to Yellow
-                    pane.setCharForeground(Color.YELLOW);
-            case 34 -> // Set foreground color to Blue
-                    pane.setCharForeground(Color.BLUE);
-            case 35 -> // Set foreground color to Magenta
-                    pane.setCharForeground(Color.MAGENTA);
-            case 36 -> // Set foreground color to Cyan
-                    pane.setCharForeground(Color.CYAN);
-            case 37 -> // Set foreground color to White
-                    pane.setCharForeground(Color.WHITE);
+            case 30, 31, 32, 33, 34, 35, 36, 37 -> // Set foreground color (Black, Red, Green, Yellow, Blue, Magenta, Cyan, White)
+                    model.setForeground(PALETTE[code - 30]);
             case 39 -> // Set foreground color to default (original)
-                    pane.setCharForeground(null);
-            case 40 -> // Set background color to Black
-                    pane.setCharBackground(Color.BLACK);
-            case 41 -> // Set background color to Red
-                    pane.setCharBackground(Color.RED);
-            case 42 -> // Set background color to Green
-                    pane.setCharBackground(Color.GREEN);
-            case 43 -> // Set background color to Yellow
-                    pane.setCharBackground(Color.YELLOW);
-            case 44 -> // Set background color to Blue
-                    pane.setCharBackground(Color.BLUE);
-            case 45 -> // Set background color to Magenta
-                    pane.setCharBackground(Color.MAGENTA);
-            case 46 -> // Set background color to Cyan
-                    pane.setCharBackground(Color.CYAN);
-            case 47 -> // Set background color to White
-                    pane.setCharBackground(Color.WHITE);
+                    model.setForeground(TerminalModel.DEFAULT_COLOR);
+            case 40, 41, 42, 43, 44, 45, 46, 47 -> // Set background color (Black, Red, Green, Yellow, Blue, Magenta, Cyan, White)
+                    model.setBackground(PALETTE[code - 40]);
             case 49 -> // Set background color to default (original).
-                    pane.setCharBackground(null);
+                    model.setBackground(TerminalModel.DEFAULT_COLOR);
+            case 90, 91, 92, 93, 94, 95, 96, 97 -> // Set foreground color to bright version
+                    model.setForeground(PALETTE[code - 90 + 8]);
+            case 100, 101, 102, 103, 104, 105, 106, 107 -> // Set background color to bright version
+                    model.setBackground(PALETTE[code - 100 + 8]);
+        }
+    }
+
+    /**
+     * Applies the SGR code at index i, including its arguments.
+     *
+     * @return The index of the next SGR code.
+     */
+    protected int applySgr(ControlSequenceParameters params, int i) {
+        final int code = params.getInt(i, 0);
+        int next = i + 1;
+        if (code == 38 || code == 48) {
+            // Extended colors, with sub-parameters ("38:5:n", "38:2::r:g:b", "38:2:r:g:b")
+            // or as separate parameters ("38;5;n", "38;2;r;g;b").
+            int argb = NO_COLOR;
+            final int mode = params.getInt(next, 0);
+            if (params.isSubParameter(next)) {
+                int n = 0;
+                while (params.isSubParameter(next + n))
+                    ++n;
+                if (mode == 5 && n >= 2)
+                    argb = getIndexedColor(params.getInt(next + 1, 0));
+                else if (mode == 2 && n >= 4)
+                    // With 5 or more sub-parameters the first one after the mode is the color space id.
+                    argb = getRgbColor(params, next + (n >= 5 ? 2 : 1));
+                next += n;
+            } else if (mode == 5) {
+                argb = getIndexedColor(params.getInt(next + 1, 0));
+                next += 2;
+            } else if (mode == 2) {
+                argb = getRgbColor(params, next + 1);
+                next += 4;
+            }
+            if (argb != NO_COLOR) {
+                if (code == 38)
+                    model.setForeground(argb);
+                else
+                    model.setBackground(argb);
+            }
+        } else {
+            applySgrCode(code);
         }
+        // Skip sub-parameters that are not supported, e.g. "4:3" (curly underline).
+        while (params.isSubParameter(next))
+            ++next;
+        return next;
+    }
+
+    private static int getIndexedColor(int index) {
+        return index < PALETTE.length ? PALETTE[index] : NO_COLOR;
     }
 
-    protected int getIntParameter(int n, int defaultVal, String[] params) {
-        return params.length > n && !params[n].isEmpty() ? Integer.parseInt(params[n]) : defaultVal;
+    private static int getRgbColor(ControlSequenceParameters params, int i) {
+        int r = Math.min(params.getInt(i, 0), 255);
+        int g = Math.min(params.getInt(i + 1, 0), 255);
+        int b = Math.min(params.getInt(i + 2, 0), 255);
+        return 0xFF000000 | (r << 16) | (g << 8) | b;
     }
 
-    protected String getTextParameter(int n, String defaultVal, String[] params) {
-        return params.length > n && !params[n].isEmpty() ? params[n] : defaultVal;
+    protected int getIntParameter(int n, int defaultVal, ControlSequenceParameters params) {
+        return params.getInt(n, defaultVal);
     }
 
-    protected byte[] handleCsiCommand(int c, String[] params) {
-        if (debug)
-            log("Command CSI " + (infix == 0 ? "" : "" + (char) infix) + (c >= 32 ? "'" + ((char) c) + "'" : String.valueOf(c)) + " {" + String.join(",", params) + "}");
-        byte[] response = null;
+    protected void handleCsiCommand(int c, ControlSequenceParameters params) {
         switch ((char) c) {
             case 'c' -> {
-                // Send Device Attributes (Primary DA).
-                int ps = getIntParameter(0, 0, params);
+                // Send Device Attributes (Primary DA). Secondary and tertiary DA (with private marker) are not supported.
+                int ps = infix == 0 ? getIntParameter(0, 0, params) : -1;
                 switch (ps) {
                     case 0 -> //   Request attributes from terminal.
                         //   -> CSI?1;2c = VT100 with Advanced Video Option
-                            response = "CSI?1;2c".getBytes(asciiCharset);
+                            responses.write("\033[?1;2c");
+                }
+            }
+            case 'n' -> {
+                // Device Status Report (DSR). DEC specific reports (with private marker) are not supported.
+                int ps = infix == 0 ? getIntParameter(0, 0, params) : -1;
+                switch (ps) {
+                    case 5 -> // Status Report -> CSI 0 n = OK
+                            responses.write("\033[0n");
+                    case 6 -> { // Report Cursor Position (CPR) -> CSI r ; c R
+                        responses.write("\033[");
+                        responses.writeNumber(model.getCaretY() + 1);
+                        responses.write(";");
+                        responses.writeNumber(model.getCaretX() + 1);
+                        responses.write("R");
+                    }
                 }
             }
             case 'd' -> { // VPA Move to the corresponding vertical position (line Ps) of the current column (default 1).
                 int ps = getIntParameter(0, 1, params) - 1;
-                if (debug) log(" -> Move caret to " + pane.getCaretX() + "," + ps);
-                pane.setCaretAbsolute(pane.getCaretX(), ps);
+                model.setCaretAbsolute(model.getCaretX(), ps);
             }
             case 'h' -> {
                 if (infix == '?') {
                     // DEC Private Mode Set (DECSET)
-                    for (String p : params) {
-                        int ps = Integer.parseInt(p);
+                    for (int i = 0; i < params.size(); ++i) {
+                        int ps = params.getInt(i, 0);
 
                         switch (ps) {
                             case 1 -> { //  Application Cursor Keys (DECCKM)
-                                if (debug) log(" -> Application Cursor Keys (NI)");
                             }
                             case 2 -> { //  Designate USASCII for character sets G0-G3 (DECANM), and set VT100 mode.
-                                if (debug)
-                                    log(" -> Designate USASCII for character sets G0-G3 (DECANM), and set VT100 mode (NI)");
                             }
                             case 3 -> { //  132 Column Mode (DECCOLM)
-                                if (debug) log(" -> 132 Column Mode (NI)");
                             }
                             case 4 -> { //  Smooth (Slow) Scroll (DECSCLM)
-                                if (debug) log(" -> Smooth (Slow) Scroll (NI)");
                             }
                             case 5 -> { //  Reverse Video (DECSCNM)
-                                if (debug) log(" -> Reverse Video (NI)");
                             }
                             case 6 -> { //  Origin Mode (DECOM)
-                                if (debug) log(" ->  Origin Mode (NI)");
                             }
                             case 7 -> { //  Wraparound Mode (DECAWM)
-                                if (debug) log(" ->  Wraparound Mode (NI)");
                             }
                             case 8 -> { //  Auto-repeat Keys (DECARM)
-                                if (debug) log(" -> Auto-repeat Keys (NI)");
                             }
                             case 9 -> { //  Send Mouse X & Y on button press. See the section Mouse Tracking.
-                                if (debug) log(" -> Send Mouse X & Y on button press (NI)");
                             }
                             case 10 -> { //  Show toolbar (rxvt)
-                                if (debug) log(" -> Show toolbar (NI)");
                             }
                             case 12 -> //  Start Blinking Cursor (att610)
                             {
-                                if (debug) log(" -> Start Blinking Cursor (NI)");
                             }
                             case 18 -> { //  Print form feed (DECPFF)
-                                if (debug) log(" ->  Print form feed (NI)");
                             }
                             case 19 -> { //  Set print extent to full screen (DECPEX)
-                                if (debug) log(" ->  Set print extent to full screen (NI)");
                             }
                             case 25 -> { //  Show Cursor (DECTCEM)
-                                if (debug) log(" -> Show Cursor");
-                                pane.showCursor = true;
+                                model.setCursorVisible(true);
                             }
                             case 30 -> { //  Show scrollbar (rxvt).
-                                if (debug) log(" -> Show Scrollbar (NI)");
                             }
                             case 35 -> { //  Enable font-shifting functions (rxvt).
-                                if (debug) log(" -> Enable font-shifting (NI)");
                             }
                             case 38 -> { //  Enter Tektronix Mode (DECTEK)
                             }
@@ -401,7 +410,7 @@ public class Xterm extends TerminalControl {
                             }
                             case 47,
                                  1047 -> //  Use Alternate Screen Buffer (unless disabled by the titeInhibit resource)
-                                    pane.switchScreen(1, false);
+                                    model.switchScreen(1, false);
                             case 66 -> { //  Application keypad (DECNKM)
                             }
                             case 67 -> { //  Backarrow key sends backspace (DECBKM)
@@ -430,8 +439,8 @@ public class Xterm extends TerminalControl {
                                 // Save cursor as in DECSC and use Alternate Screen Buffer,
                                 // clearing it first (unless disabled by the titeInhibit resource).
                                 // This combines the effects of the 1047 and 1048 modes.
-                                pane.switchScreen(1, false);
-                                pane.clear();
+                                model.switchScreen(1, false);
+                                model.clear();
                             }
                             case 1051 -> { // Set Sun function-key mode.
                             }
@@ -444,7 +453,6 @@ public class Xterm extends TerminalControl {
                             case 1061 -> { // Set Sun/PC keyboard emulation of VT220 keyboard.
                             }
                             case 2004 -> { // Set bracketed paste mode.
-                                if (debug) log(" -> bracketedPasteMode on");
                                 bracketedPasteMode = true;
                             }
                         }
@@ -457,100 +465,77 @@ public class Xterm extends TerminalControl {
             case 'l' -> {
                 if (infix == '?') {
                     // DEC Private Mode Reset (DECRST)
-                    for (String p : params) {
-                        int ps = Integer.parseInt(p);
+                    for (int i = 0; i < params.size(); ++i) {
+                        int ps = params.getInt(i, 0);
                         switch (ps) {
                             case 1 -> // Normal Cursor Keys (DECCKM).
                             {
-                                if (debug) log(" -> Normal Cursor Keys (NI)");
                             }
                             case 2 -> { // Designate VT52 mode (DECANM).
-                                if (debug) log(" -> Designate VT52 mode (NI)");
                             }
                             case 3 -> { // 80 Column Mode (DECCOLM).
-                                if (debug) log(" -> 80 Column Mode (NI)");
                             }
                             case 6 -> { // Normal Cursor Mode (DECOM).
-                                if (debug) log(" -> Normal Cursor Mode (NI)");
                             }
                             case 7 -> { // No Wraparound Mode (DECAWM).
-                                if (debug) log(" -> No Wraparound Mode (NI)");
                             }
                             case 8 -> { // No Auto-repeat Keys (DECARM).
-                                if (debug) log(" -> No Auto-repeat Keys (NI)");
                             }
                             case 9 -> { // Don’t send Mouse X & Y on button press.
-                                if (debug) log(" -> Don’t send Mouse X & Y on button press (NI)");
                             }
                             case 12 -> // Stop Blinking Cursor.
                             {
-                                if (debug)
-                                    log(" -> Stop Blinking Cursor (NI)");
                             }
                             case 25 -> { // Hide Cursor (DECTCEM).
-                                if (debug) log(" -> Hide Cursor\n");
-                                pane.showCursor = false;
+                                model.setCursorVisible(false);
                             }
                             case 45 -> { // No reverse wrap-around.
-                                if (debug) log(" -> No reverse wrap-around (NI)");
                             }
                             case 47 -> // Use Normal Screen Buffer.
                             {
-                                if (debug) log(" -> Use Normal Screen Buffer");
-                                pane.switchScreen(0, false);
+                                model.switchScreen(0, false);
                             }
                             case 66 -> { // Numeric keypad (DECNKM).
-                                if (debug) log(" -> Numeric keypad (NI)");
                             }
                             case 1000 -> { // Don’t send Mouse reports.
-                                if (debug) log(" -> Don’t send Mouse reports (NI)");
                             }
                             case 1002 -> { // Don’t use Cell Motion Mouse Tracking.
-                                if (debug) log(" -> Don’t use Cell Motion Mouse Tracking (NI)");
                             }
                             case 1003 -> { // Don’t use All Motion Mouse Tracking.
-                                if (debug) log(" -> Don’t use All Motion Mouse Tracking (NI)");
                             }
                             case 1004 -> { // Don’t send FocusIn/FocusOut events.
-                                if (debug) log(" -> Don’t send FocusIn/FocusOut events (NI)");
                             }
                             case 1005 -> { // Disable UTF-8 Mouse Mode.
-                                if (debug) log(" -> Disable UTF-8 Mouse Mode (NI)");
                             }
                             case 1006 -> { // Disable SGR Mouse Mode.
-                                if (debug) log(" -> Disable SGR Mouse Mode (NI)");
                             }
                             case 1015 -> { // Disable urxvt Mouse Mode.
-                                if (debug) log(" -> Disable urxvt Mouse Mode (NI)");
                             }
                             case 1016 -> { // Disable SGR-Pixels Mouse Mode.
-                                if (debug) log(" -> Disable SGR-Pixels Mouse Mode (NI)");
                             }
                             case 1047 -> { // Use Normal Screen Buffer (clearing screen if in alt).
-                                if (debug) log(" -> Use Normal Screen Buffer (clearing screen if in alt)");
-                                if (pane.getActiveScreen() == 1) {
-                                    pane.switchScreen(0, false);
-                                    pane.clear();
+                                if (model.getActiveScreen() == 1) {
+                                    // The alternate screen is cleared, not the normal one.
+                                    model.eraseInDisplay(2);
+                                    model.switchScreen(0, false);
                                 }
                             }
                             case 1048 -> { // Restore cursor as in DECRC.
                             }
                             case 1049 -> { // Use Normal Screen Buffer and restore cursor.
-                                if (debug) log(" -> Use Normal Screen Buffer and restore cursor");
-                                if (pane.getActiveScreen() == 1) {
-                                    pane.switchScreen(0, true);
+                                if (model.getActiveScreen() == 1) {
+                                    model.switchScreen(0, true);
                                 }
                             }
                             case 2004 -> { // Reset bracketed paste mode.
-                                if (debug) log(" -> bracketedPasteMode off");
                                 bracketedPasteMode = false;
                             }
                         }
                     }
                 } else {
                     // Reset various terminal attributes.
-                    for (String p : params) {
-                        int ps = Integer.parseInt(p);
+                    for (int i = 0; i < params.size(); ++i) {
+                        int ps = params.getInt(i, 0);
                         switch (ps) {
                             case 2 -> // keyboard Action Mode (KAM).
                             {
@@ -571,20 +556,17 @@ public class Xterm extends TerminalControl {
             }
             case 'm'  // SGR - Select Graphic Rendition
                     -> {
-                if (debug) log(" -> Select character attributes");
-                if (params.length == 0) {
+                if (params.size() == 0) {
                     applySgrCode(0);
                 } else {
-                    for (String param : params) {
-                        int code = param.isEmpty() ? 0 : Integer.parseInt(param);
-                        applySgrCode(code);
-                    }
+                    int i = 0;
+                    while (i < params.size())
+                        i = applySgr(params, i);
                 }
             }
             case 'r' // DECSTBM
                     -> {
-                if (debug) log(" -> Set top and bottom margins");
-                pane.setMargins(getIntParameter(0, 1, params) - 1, getIntParameter(1, pane.termHeight, params) - 1);
+                model.setMargins(getIntParameter(0, 1, params) - 1, getIntParameter(1, model.getRows(), params) - 1);
                 // Set Scrolling Region
                 // Set top and bottom margins.
                 //   Ps1    Line number for the top margin.
@@ -593,8 +575,8 @@ public class Xterm extends TerminalControl {
                 //          The default value is current number of lines per screen.
             }
             case 't' -> { // Window manipulation
-                for (String param : params) {
-                    int code = param.isEmpty() ? 0 : Integer.parseInt(param);
+                for (int i = 0; i < params.size(); ++i) {
+                    int code = params.getInt(i, 0);
                     switch (code) {
                         case 1 -> { // De-iconify window.
                         }
@@ -633,12 +615,10 @@ public class Xterm extends TerminalControl {
                         case 22 -> //   Save window title on stack.
                         {
                             // Ps2 = 0, 1, 2    Save window title.
-                            if (debug) log(" -> Save window title on stack (NI)");
                         }
                         case 23 -> //     Restore window title from stack.
                         {
                             // Ps2 = 0, 1, 2    Restore window title.
-                            if (debug) log(" -> Restore window title from stack (NI)");
                         }
                         default -> {
                             // >= 2 4 → Resize to P s lines (DECSLPP)
@@ -649,22 +629,19 @@ public class Xterm extends TerminalControl {
             }
             case 'A' // CUU - Cursor Up
                     -> {
-                if (debug) log(" -> Cursor Up");
-                pane.setCaretAbsolute(pane.getCaretX(), pane.getCaretY() - 1);
+                model.setCaretAbsolute(model.getCaretX(), model.getCaretY() - 1);
             }
             case 'B' // CUD - Cursor Down
                     -> {
-                if (debug) log(" -> Cursor Down");
-                pane.setCaretAbsolute(pane.getCaretX(), pane.getCaretY() + 1);
+                model.setCaretAbsolute(model.getCaretX(), model.getCaretY() + 1);
             }
-            case 'C' -> pane.moveCaret(1, 0);  // CUF - Cursor Forward
-            case 'D' -> pane.moveCaret(-1, 0); // CUB - Cursor Backward
+            case 'C' -> model.moveCaret(1, 0);  // CUF - Cursor Forward
+            case 'D' -> model.moveCaret(-1, 0); // CUB - Cursor Backward
             case 'G' -> {
                 // Cursor Character Absolute [column] (default = [row,1]) (CHA)
                 // Moves cursor to the Ps-th column of the active line. The default value of Ps is 1.
                 int ps = getIntParameter(0, 1, params) - 1;
-                if (debug) log(" -> Move caret to " + ps + "," + pane.getCaretY());
-                pane.setCaretAbsolute(ps, pane.getCaretY());
+                model.setCaretAbsolute(ps, model.getCaretY());
             }
             case 'f', // HVP - Horizontal and Vertical Position (identisch zu CUP)
                  'H' -> // CUP - sCursor Position
@@ -672,68 +649,41 @@ public class Xterm extends TerminalControl {
                 // Moves cursor to the Ps1-th line and to the Ps2-th column. The default value of Ps1 and Ps2 is 1.
                 int row = getIntParameter(0, 1, params) - 1;
                 int col = getIntParameter(1, 1, params) - 1;
-                if (debug) log(" -> Move caret to " + col + "," + row);
-                pane.setCaretAbsolute(col, row);
-            }
-            case 'J'  // ED - Erase in Display
-                    -> {
-                int mode = getIntParameter(0, 0, params);
-                switch (mode) {
-                    case 0 -> // Erase Below (default)
-                    {
-                        if (debug) log(" -> Erase Below (NI)");
-                    }
-                    case 1 -> // Erase Above
-                    {
-                        if (debug) log(" -> Erase Above (NI)");
-                    }
-                    case 2 -> // Erase All
-                    {
-                        if (debug) log(" -> Erase All");
-                        pane.clear();
-                    }
-                    case 3 -> // Erase Saved Lines
-                    {
-                        if (debug) log(" -> Erase Saved Lines (NI)");
-                        // TODO: Currently no concept for "first visible line""
-                    }
-                    default -> {
-                    }
-                }
-
-            }
-            case 'K'  // EL - Erase in Line
-                    -> {
-                int mode = params.length > 0 && !params[0].isEmpty() ? Integer.parseInt(params[0]) : 0;
-                switch (mode) {
-                    case 0: // Erase to Right
-                        if (debug) log(" -> Erase to Right");
-                        for (int x = pane.termWidth - 1; x >= pane.getCaretX(); --x)
-                            pane.setCharAt(x, pane.getCaretY(), ' ');
-                        break;
-                    case 1: // Erase to Left
-                        if (debug) log(" -> Erase to Left (NI)");
-                        break;
-                    case 2: // Erase All
-                        if (debug) log(" -> Erase All (NI)");
-                        break;
-                }
+                model.setCaretAbsolute(col, row);
+            }
+            case 'J' -> // ED - Erase in Display, with private marker DECSED (no protected cells)
+                // 0: Below (default), 1: Above, 2: All, 3: Saved Lines
+                    model.eraseInDisplay(getIntParameter(0, 0, params));
+            case 'K' -> // EL - Erase in Line, with private marker DECSEL (no protected cells)
+                // 0: To Right (default), 1: To Left, 2: All
+                    model.eraseInLine(getIntParameter(0, 0, params));
+            case 'X' -> // ECH - Erase x Character(s) (default = 1)
+                    model.eraseChars(Math.max(1, getIntParameter(0, 1, params)));
+            case 'L' -> model.insertLines(Math.max(1, getIntParameter(0, 1, params))); // IL - Insert Line(s)
+            case 'M' -> model.deleteLines(Math.max(1, getIntParameter(0, 1, params))); // DL - Delete Line(s)
+            case 'S' -> {
+                // SU - Scroll Up. With private marker it's XTSMGRAPHICS (not supported).
+                if (infix == 0)
+                    model.scroll(Math.max(1, getIntParameter(0, 1, params)));
+            }
+            case 'T' -> {
+                // SD - Scroll Down. With more parameters it starts mouse tracking (not supported).
+                if (infix == 0 && params.size() <= 1)
+                    model.scroll(-Math.max(1, getIntParameter(0, 1, params)));
             }
             case 'P' // DCH - Delete x Character(s) (default = 1) (DCH)
                     -> {
                 int x = getIntParameter(0, 1, params);
-                if (debug) log(" -> Delete " + x + " Characters");
                 while (x > 0) {
-                    pane.deleteChar();
+                    model.deleteChar();
                     --x;
                 }
             }
             case '@' // ICH - Insert x (Blank) Character(s) (default = 1)
                     -> {
                 int x = getIntParameter(0, 1, params);
-                if (debug) log(" -> Insert " + x + " blank Characters");
                 while (x > 0) {
-                    pane.insert(' ');
+                    model.insert(' ');
                     --x;
                 }
 
@@ -741,37 +691,30 @@ public class Xterm extends TerminalControl {
             default -> {
             }
         }
-        if (debug) log("\n");
-        return response;
     }
 
-    protected byte[] handleOscCommand(int c, String[] params) {
-        if (debug)
-            log("Command OSC " + (infix == 0 ? "" : "" + (char) infix) + (c >= 32 ? "'" + ((char) c) + "'" : String.valueOf(c)) + " {" + String.join(",", params) + "}");
+    protected void handleOscCommand(int c, ControlSequenceParameters params) {
         switch (c) {
-            case 7, (byte) 0x9C -> // BELL or ST: Set Text Parameters
+            case VtParser.BEL, VtParser.ST -> // BELL or ST: Set Text Parameters
             {
                 int ps = getIntParameter(0, 0, params);
-                String pt = getTextParameter(1, "", params);
 
                 switch (ps) {
                     case 0 -> // Change Icon Name and Window Title to pt
                     {
-                        if (debug) log(" -> Change Icon Name and Window Title (NI)");
-                        pane.setTitle(pt);
+                        // Create a new string only if the title was changed.
+                        if (!params.textEquals(model.getTitle()))
+                            model.setTitle(params.getText());
                     }
                     case 1 -> { // Change Icon Name to pt
-                        if (debug) log(" -> Change Icon Name to pt (NI)");
 
                     }
                     case 2 -> { // Change Window Title to pt
-                        if (debug) log(" -> Change Window Title to pt (NI)");
 
                     }
                     case 3 -> {
                         // Set X property on top-level window.
                         // Pt should be in the form "prop=value", or just "prop" to delete the property
-                        if (debug) log(" -> Set X property on top-level window (NI)");
                     }
                     case 4 -> {
                         // pt=c;spec;... Change color number c to the color specified by spec.
@@ -780,19 +723,18 @@ public class Xterm extends TerminalControl {
                         // + their bright versions 8-15, and if supported,
                         // + the remainder of the 88-color or 256-color table.
                         // TODO: For "?" as spec, a response is needed
-                        if (debug) log(" -> Change color number (NI)");
+                        // Change color number (NI)
                     }
                     case 10, 11, 12, 13, 14, 15, 16, 17, 18 -> {
                         // Dynamic colors
-                        if (debug) log(" -> Dynamic colors (NI)");
                     }
                     case 46 -> {
                         // Change Log File to pr
-                        if (debug) log(" -> Change Log File to pr (disabled)");
+                        // Change Log File to pr (disabled)
                     }
                     case 50 -> {
                         // Set Font to pt - nope!
-                        if (debug) log(" -> Set Font to pt (disabled)");
+                        // Set Font to pt (disabled)
                     }
                     case 52 -> {
                         // Manipulate Selection Data (disabled)
@@ -800,37 +742,33 @@ public class Xterm extends TerminalControl {
                 }
             }
         }
-        if (debug) log("\n");
-        return null;
     }
 
     /**
      * Simple 2 char commands
      */
-    public byte[] handleEscCommand(int first, int second) {
-        if (debug) log("Command ESC" + ((char) first) + (second == 0 ? "" : " " + (char) second) + " -> ");
+    public void handleEscCommand(int first, int second) {
 
         switch (first) {
             case ' ' -> {
                 switch (second) {
                     case 'F' -> {
-                        if (debug)
-                            log("7-bit controls (S7C1T)\n");
+                        // 7-bit controls (S7C1T)
                     }
                     case 'H' -> {
-                        if (debug) log("8-bit controls (S8C1T)\n");
+                        // 8-bit controls (S8C1T)
                     }
                     case 'L' -> {
-                        if (debug) log("Set ANSI conformance level 1 (dpANS X3.134.1)\n");
+                        // Set ANSI conformance level 1 (dpANS X3.134.1)
                     }
                     case 'M' -> {
-                        if (debug) log("Set ANSI conformance level 2 (dpANS X3.134.1)\n");
+                        // Set ANSI conformance level 2 (dpANS X3.134.1)
                     }
                     case 'N' -> {
-                        if (debug) log("Set ANSI conformance level 3 (dpANS X3.134.1)\n");
+                        // Set ANSI conformance level 3 (dpANS X3.134.1)
                     }
                     default -> {
-                        if (debug) log("Unknown\n");
+                        // Unknown
                     }
                 }
 
@@ -838,41 +776,44 @@ public class Xterm extends TerminalControl {
             case '#' -> {
                 switch (second) {
                     case '3' -> {
-                        if (debug) log("DEC double-height line, top half (DECDHL) (NI)\n");
+                        // DEC double-height line, top half (DECDHL) (NI)
                     }
                     case '4' -> {
-                        if (debug) log("DEC double-height line, bottom half (DECDHL) (NI)\n");
+                        // DEC double-height line, bottom half (DECDHL) (NI)
                     }
                     case '5' -> {
-                        if (debug) log("DEC single-width line (DECSWL) (NI)\n");
+                        // DEC single-width line (DECSWL) (NI)
                     }
                     case '6' -> {
-                        if (debug) log("DEC double-width line (DECDWL) (NI)\n");
+                        // DEC double-width line (DECDWL) (NI)
                     }
                     case '8' -> {
-                        if (debug) log("DEC Screen Alignment Test (DECALN) (NI)\n");
+                        // DEC Screen Alignment Test (DECALN) (NI)
                     }
                     default -> {
-                        if (debug) log("Unknown  (NI)\n");
+                        // Unknown  (NI)
                     }
                 }
             }
             case '%' -> {
-                if (debug) log(" todo\n");
+                // TODO
             }
             case '(' -> {
-                if (debug) log("Designate G0 Character Set (ISO 2022) " + ((char) second) + " (NI)\n");
+                // Designate G0 Character Set (ISO 2022) (NI)
             }
             case ')' -> {
-                if (debug) log("Designate G1 Character Set (ISO 2022) " + ((char) second) + " (NI)\n");
+                // Designate G1 Character Set (ISO 2022) (NI)
             }
             case '*' -> {
-                if (debug) log("Designate G2 Character Set (ISO 2022) " + ((char) second) + " (NI)\n");
+                // Designate G2 Character Set (ISO 2022) (NI)
             }
             case '+' -> {
-                if (debug) log("Designate G3 Character Set (ISO 2022) " + ((char) second) + " (NI)\n");
+                // Designate G3 Character Set (ISO 2022) (NI)
             }
 
+            case '\\' -> // String Terminator (ST), end of OSC/DCS was already handled.
+            {
+            }
             case '7' -> // Save Cursor (DECSC)
             // things saved & restored here is defined by DEC:
             // https://vt100.net/docs/vt510-rm/DECSC.html
@@ -885,108 +826,66 @@ public class Xterm extends TerminalControl {
             // - Any single shift 2 (SS2) or single shift 3 (SS3) functions sent
             //
             {
-                if (debug) log("Save Cursor (NI)\n");
+                // Save Cursor (NI)
             }
             case '8' -> //Restore Cursor (DECRC)
             {
-                if (debug) log("Restore Cursor (NI)\n");
             }
             case '=' -> // Application Keypad (DECPAM)
             {
-                if (debug) log("Application Keypad (NI)\n");
             }
             case '>' -> {
-                if (debug) log("Normal Keypad (DECPNM) (NI)\n");
+                // Normal Keypad (DECPNM) (NI)
             }
             case 'D' -> {
                 // IND Index
-                if (debug) log("Move the cursor one line down scrolling if needed\n");
-                pane.moveCaret(0, 1);
+                // Move the cursor one line down scrolling if needed
+                model.moveCaret(0, 1);
             }
             case 'E' -> {
                 // NEL	Next Line
-                if (debug) log("Move the cursor to the beginning of the next row\n");
-                pane.setCaretAbsolute(0, pane.getCaretY() + 1);
+                // Move the cursor to the beginning of the next row
+                model.setCaretAbsolute(0, model.getCaretY() + 1);
             }
             case 'F' -> {
-                if (debug) log("Cursor to lower left corner of screen (disabled)\n");
+                // Cursor to lower left corner of screen (disabled)
             }
             case 'H' -> // HTS Horizontal Tabulation Set
             {
-                if (debug) log("Places a tab stop at the current cursor position (NI)\n");
+                // Places a tab stop at the current cursor position (NI)
             }
             case 'M' -> { // IR	Reverse Index
-                if (debug) log("Move the cursor one line up scrolling if needed\n");
-                pane.moveCaret(0, -1);
+                // Move the cursor one line up scrolling if needed
+                model.moveCaret(0, -1);
             }
             case 'c' -> {
-                if (debug) log("Full Reset (RIS) (NI)\n");
+                // Full Reset (RIS) (NI)
             }
             case 'l' -> {
-                if (debug) log("Locks memory above the cursor (HP terminals) (NI)\n");
+                // Locks memory above the cursor (HP terminals) (NI)
             }
             case 'm' -> {
-                if (debug) log("Memory Unlock (HP terminals) (NI)\n");
+                // Memory Unlock (HP terminals) (NI)
             }
             case 'n' -> {
-                if (debug) log("Invoke the G2 Character Set as GL (LS2) (NI)\n");
+                // Invoke the G2 Character Set as GL (LS2) (NI)
             }
             case 'o' -> {
-                if (debug) log("Invoke the G3 Character Set as GL (LS3) (NI)\n");
+                // Invoke the G3 Character Set as GL (LS3) (NI)
             }
             case '|' -> {
-                if (debug) log("Invoke the G3 Character Set as GR (LS3R) (NI)\n");
+                // Invoke the G3 Character Set as GR (LS3R) (NI)
             }
             case '}' -> {
-                if (debug) log("Invoke the G2 Character Set as GR (LS2R) (NI)\n");
+                // Invoke the G2 Character Set as GR (LS2R) (NI)
             }
             case '~' -> {
-                if (debug) log("Invoke the G1 Character Set as GR (LS1R)v");
+                // Invoke the G1 Character Set as GR (LS1R)
             }
             default -> {
-                if (debug) log("Unknown (NI)\n");
+                // Unknown (NI)
             }
         }
-        return null;
-    }
-
-    protected byte[] handleCommand(int c) {
-        String[] params = arguments.toString().split(";");
-
-        // Nope
-        return switch (type) {
-            case csi -> handleCsiCommand(c, params);
-            case osc -> handleOscCommand(c, params);
-            case pm ->
-                // Nope
-                    null;
-            case escSingleChar -> handleEscCommand(infix, c);
-        };
-    }
-
-    /**
-     * Type of control sequence.
-     */
-    protected enum Type {
-        // Control Sequence Intro
-        csi,
-        // Operating System Command
-        osc,
-        // Private Message (TODO: do we need this?)
-        pm,
-        escSingleChar
-    }
-
-    /**
-     * Parser State
-     */
-    protected enum State {
-        normal,
-        esc,
-        // type indicator
-        typeIndicator,
-        arguments,
-        escSingleChar
     }
 
 }
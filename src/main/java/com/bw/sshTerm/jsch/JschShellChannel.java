@@ -1,5 +1,6 @@
 package com.bw.sshTerm.jsch;
 
+import com.bw.sshTerm.SessionRecorder;
 import com.bw.sshTerm.ShellChannel;
 import com.bw.sshTerm.TerminalControl;
 import com.jcraft.jsch.ChannelShell;
@@ -21,13 +22,22 @@ public class JschShellChannel implements ShellChannel {
     private InputStream shellOutput;
     private TerminalControl ctrl;
     private JSch jsch;
+    private SessionRecorder recorder;
 
+    /**
+     * Sets a recorder for the output of the shell.
+     *
+     * @param recorder The recorder or null.
+     */
+    public void setRecorder(SessionRecorder recorder) {
+        this.recorder = recorder;
+    }
 
     @Override
-    public void write(byte[] data) {
+    public void write(byte[] data, int offset, int length) {
         if (channel != null) {
             try {
-                inputToShell.write(data);
+                inputToShell.write(data, offset, length);
                 inputToShell.flush();
             } catch (IOException ioe) {
                 ioe.printStackTrace();
@@ -82,9 +92,9 @@ public class JschShellChannel implements ShellChannel {
             byte[] buffer = new byte[1024];
             int bytesRead;
             while ((bytesRead = shellOutput.read(buffer)) != -1) {
-                byte[] answer = ctrl.handleShellOutput(buffer, bytesRead);
-                if (answer != null)
-                    write(answer);
+                if (recorder != null)
+                    recorder.recordOutput(buffer, 0, bytesRead);
+                ctrl.handleShellOutput(buffer, bytesRead);
             }
             System.out.println("Connection terminated");
         } catch (Exception ex) {
@@ -106,5 +116,12 @@ public class JschShellChannel implements ShellChannel {
     public void setPtySize(int termWidth, int termHeight, int charWidth, int charHeight) {
         if (channel != null)
             channel.setPtySize(termWidth, termHeight, charWidth, charHeight);
+        if (recorder != null) {
+            try {
+                recorder.recordResize(termWidth, termHeight);
+            } catch (IOException ioe) {
+                ioe.printStackTrace();
+            }
+        }
     }
 }
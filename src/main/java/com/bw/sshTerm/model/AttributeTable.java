@@ -0,0 +1,186 @@
+/**
+ * Copyright 2025, Bernd Wengenroth.
+ * This is free and unencumbered software released into the public domain.
+ * Check LICENSE for details.
+ */
+package com.bw.sshTerm.model;
+
+import java.util.Arrays;
+
+/**
+ * Table of character attributes (foreground, background and style).<p>
+ * Each distinct combination is stored once and identified by a small integer id, that is stored in the cells
+ * of a {@link Line}. Id 0 are the default attributes (default colors, no style).<p>
+ * The number of ids is limited. If all ids are in use (e.g. by output with lots of truecolor gradients),
+ * {@link #intern} fails and the owner has to {@link #reclaim} the ids that are no longer referenced by any cell.
+ */
+public final class AttributeTable {
+
+    /**
+     * Default maximal number of ids.
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private final int capacity;
+    private int[] foreground = new int[16];
+    private int[] background = new int[16];
+    private int[] style = new int[16];
+    // Number of ids ever handed out, including free ones.
+    private int size = 1;
+    // Stack of ids that were reclaimed and can be reused.
+    private int[] freeIds = new int[0];
+    private int freeCount = 0;
+    // Open addressing hash of id+1, 0 for free slots.
+    private int[] slots = new int[32];
+
+    /**
+     * Creates a table with {@link #DEFAULT_CAPACITY}.
+     */
+    public AttributeTable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a table.
+     *
+     * @param capacity The maximal number of ids.
+     */
+    public AttributeTable(int capacity) {
+        this.capacity = Math.max(capacity, 2);
+    }
+
+    /**
+     * Gets the id of an attribute combination. The combination is added if needed.
+     *
+     * @param fg    Foreground color, ARGB value or {@link TerminalModel#DEFAULT_COLOR}.
+     * @param bg    Background color, ARGB value or {@link TerminalModel#DEFAULT_COLOR}.
+     * @param style Combination of values from {@link com.bw.sshTerm.CharStyle}.
+     * @return The id or -1 if the table is full.
+     */
+    public synchronized int intern(int fg, int bg, int style) {
+        if (fg == TerminalModel.DEFAULT_COLOR && bg == TerminalModel.DEFAULT_COLOR && style == 0)
+            return 0;
+        final int mask = slots.length - 1;
+        int i = hash(fg, bg, style) & mask;
+        int id;
+        while ((id = slots[i]) != 0) {
+            --id;
+            if (foreground[id] == fg && background[id] == bg && this.style[id] == style)
+                return id;
+            i = (i + 1) & mask;
+        }
+        if (freeCount > 0) {
+            id = freeIds[--freeCount];
+        } else if (size < capacity) {
+            id = size++;
+            if (id == foreground.length) {
+                int newLength = Math.min(id * 2, capacity);
+                foreground = Arrays.copyOf(foreground, newLength);
+                background = Arrays.copyOf(background, newLength);
+                this.style = Arrays.copyOf(this.style, newLength);
+            }
+        } else {
+            return -1;
+        }
+        foreground[id] = fg;
+        background[id] = bg;
+        this.style[id] = style;
+        slots[i] = id + 1;
+        if (size * 2 > slots.length)
+            rehash(slots.length * 2);
+        return id;
+    }
+
+    /**
+     * Frees all ids that are not marked as used. Freed ids are reused by {@link #intern}.
+     *
+     * @param used Flags of used ids, indexed by id. At least {@link #size()} entries.
+     * @return The number of freed ids.
+     */
+    public synchronized int reclaim(boolean[] used) {
+        if (freeIds.length < size)
+            freeIds = new int[size];
+        // Collect all unused ids, the free list is rebuilt completely.
+        freeCount = 0;
+        for (int id = size - 1; id > 0; --id) {
+            if (!used[id])
+                freeIds[freeCount++] = id;
+        }
+        // Free ids must not be found anymore.
+        for (int f = 0; f < freeCount; ++f) {
+            int id = freeIds[f];
+            foreground[id] = TerminalModel.DEFAULT_COLOR;
+            background[id] = TerminalModel.DEFAULT_COLOR;
+            style[id] = -1;
+        }
+        rehash(slots.length);
+        return freeCount;
+    }
+
+    private static int hash(int fg, int bg, int style) {
+        int h = fg * 31 + bg;
+        h = h * 31 + style;
+        return h ^ (h >>> 16);
+    }
+
+    private void rehash(int length) {
+        slots = new int[length];
+        final int mask = slots.length - 1;
+        for (int id = 1; id < size; ++id) {
+            if (style[id] == -1)
+                continue;
+            int i = hash(foreground[id], background[id], style[id]) & mask;
+            while (slots[i] != 0)
+                i = (i + 1) & mask;
+            slots[i] = id + 1;
+        }
+    }
+
+    /**
+     * Gets the foreground color of an id.
+     *
+     * @return ARGB value or {@link TerminalModel#DEFAULT_COLOR}.
+     */
+    public int getForeground(int id) {
+        return foreground[id];
+    }
+
+    /**
+     * Gets the background color of an id.
+     *
+     * @return ARGB value or {@link TerminalModel#DEFAULT_COLOR}.
+     */
+    public int getBackground(int id) {
+        return background[id];
+    }
+
+    /**
+     * Gets the style of an id.
+     *
+     * @return Combination of values from {@link com.bw.sshTerm.CharStyle}.
+     */
+    public int getStyle(int id) {
+        return style[id];
+    }
+
+    /**
+     * Gets the number of ids handed out so far, including the free ones. All ids are lower than this value.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the number of ids in use.
+     */
+    public synchronized int used() {
+        return size - freeCount;
+    }
+
+    /**
+     * Gets the maximal number of ids.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+}
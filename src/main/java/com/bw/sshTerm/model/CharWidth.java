@@ -0,0 +1,105 @@
+/**
+ * Copyright 2025, Bernd Wengenroth.
+ * This is free and unencumbered software released into the public domain.
+ * Check LICENSE for details.
+ */
+package com.bw.sshTerm.model;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Number of cells a character takes on the screen.<p>
+ * Combining marks and other zero-width characters take no cell, they are attached to the previous character.
+ * Wide (East Asian Wide and Fullwidth) characters, e.g. CJK ideographs and most emoji, take two cells.
+ * All other characters take one cell.<br>
+ * The widths are kept in a two-stage table that is built once from the Unicode data of the JDK and the
+ * wide ranges of EastAsianWidth.txt: The first stage maps each block of 256 code points to a block of the second
+ * stage, equal blocks are shared. Each entry of the second stage takes 2 bits.
+ */
+public final class CharWidth {
+
+    // Ranges of East Asian Wide (W) and Fullwidth (F) characters, Unicode 15.
+    private static final int[] WIDE = {
+            0x1100, 0x115F, 0x231A, 0x231B, 0x2329, 0x232A, 0x23E9, 0x23EC, 0x23F0, 0x23F0, 0x23F3, 0x23F3,
+            0x25FD, 0x25FE, 0x2614, 0x2615, 0x2648, 0x2653, 0x267F, 0x267F, 0x2693, 0x2693, 0x26A1, 0x26A1,
+            0x26AA, 0x26AB, 0x26BD, 0x26BE, 0x26C4, 0x26C5, 0x26CE, 0x26CE, 0x26D4, 0x26D4, 0x26EA, 0x26EA,
+            0x26F2, 0x26F3, 0x26F5, 0x26F5, 0x26FA, 0x26FA, 0x26FD, 0x26FD, 0x2705, 0x2705, 0x270A, 0x270B,
+            0x2728, 0x2728, 0x274C, 0x274C, 0x274E, 0x274E, 0x2753, 0x2755, 0x2757, 0x2757, 0x2795, 0x2797,
+            0x27B0, 0x27B0, 0x27BF, 0x27BF, 0x2B1B, 0x2B1C, 0x2B50, 0x2B50, 0x2B55, 0x2B55, 0x2E80, 0x303E,
+            0x3041, 0x33FF, 0x3400, 0x4DBF, 0x4E00, 0x9FFF, 0xA000, 0xA4CF, 0xA960, 0xA97F, 0xAC00, 0xD7A3,
+            0xF900, 0xFAFF, 0xFE10, 0xFE19, 0xFE30, 0xFE6F, 0xFF00, 0xFF60, 0xFFE0, 0xFFE6,
+            0x16FE0, 0x16FE4, 0x16FF0, 0x16FF1, 0x17000, 0x187F7, 0x18800, 0x18CD5, 0x18D00, 0x18D08,
+            0x1AFF0, 0x1B2FB, 0x1F004, 0x1F004, 0x1F0CF, 0x1F0CF, 0x1F18E, 0x1F18E, 0x1F191, 0x1F19A,
+            0x1F200, 0x1F202, 0x1F210, 0x1F23B, 0x1F240, 0x1F248, 0x1F250, 0x1F251, 0x1F260, 0x1F265,
+            0x1F300, 0x1F320, 0x1F32D, 0x1F335, 0x1F337, 0x1F37C, 0x1F37E, 0x1F393, 0x1F3A0, 0x1F3CA,
+            0x1F3CF, 0x1F3D3, 0x1F3E0, 0x1F3F0, 0x1F3F4, 0x1F3F4, 0x1F3F8, 0x1F43E, 0x1F440, 0x1F440,
+            0x1F442, 0x1F4FC, 0x1F4FF, 0x1F53D, 0x1F54B, 0x1F54E, 0x1F550, 0x1F567, 0x1F57A, 0x1F57A,
+            0x1F595, 0x1F596, 0x1F5A4, 0x1F5A4, 0x1F5FB, 0x1F64F, 0x1F680, 0x1F6C5, 0x1F6CC, 0x1F6CC,
+            0x1F6D0, 0x1F6D2, 0x1F6D5, 0x1F6D7, 0x1F6DC, 0x1F6DF, 0x1F6EB, 0x1F6EC, 0x1F6F4, 0x1F6FC,
+            0x1F7E0, 0x1F7EB, 0x1F7F0, 0x1F7F0, 0x1F90C, 0x1F93A, 0x1F93C, 0x1F945, 0x1F947, 0x1F9FF,
+            0x1FA70, 0x1FA7C, 0x1FA80, 0x1FA88, 0x1FA90, 0x1FABD, 0x1FABF, 0x1FAC5, 0x1FACE, 0x1FADB,
+            0x1FAE0, 0x1FAE8, 0x1FAF0, 0x1FAF8, 0x20000, 0x2FFFD, 0x30000, 0x3FFFD
+    };
+
+    private static final char[] STAGE1;
+    private static final byte[] STAGE2;
+
+    static {
+        final char[] stage1 = new char[(Character.MAX_CODE_POINT + 1) >> 8];
+        final Map<ByteBuffer, Integer> blocks = new HashMap<>();
+        final ByteBuffer stage2 = ByteBuffer.allocate(stage1.length * 64);
+        int wide = 0;
+        for (int b = 0; b < stage1.length; ++b) {
+            final byte[] block = new byte[64];
+            for (int i = 0; i < 256; ++i) {
+                final int cp = (b << 8) | i;
+                while (wide < WIDE.length && WIDE[wide + 1] < cp)
+                    wide += 2;
+                final int width = compute(cp, wide < WIDE.length && WIDE[wide] <= cp);
+                block[i >> 2] |= (byte) (width << ((i & 3) << 1));
+            }
+            Integer index = blocks.get(ByteBuffer.wrap(block));
+            if (index == null) {
+                index = blocks.size();
+                blocks.put(ByteBuffer.wrap(block), index);
+                stage2.put(block);
+            }
+            stage1[b] = (char) (int) index;
+        }
+        STAGE1 = stage1;
+        STAGE2 = new byte[stage2.position()];
+        stage2.flip().get(STAGE2);
+    }
+
+    private CharWidth() {
+    }
+
+    private static int compute(int cp, boolean wide) {
+        // Hangul vowels and final consonants are combined with the leading consonant.
+        if ((cp >= 0x1160 && cp <= 0x11FF) || cp == 0x200B)
+            return 0;
+        switch (Character.getType(cp)) {
+            case Character.NON_SPACING_MARK, Character.ENCLOSING_MARK:
+                return 0;
+            case Character.FORMAT:
+                // The soft hyphen is shown.
+                return cp == 0x00AD ? 1 : 0;
+            default:
+                return wide ? 2 : 1;
+        }
+    }
+
+    /**
+     * Gets the number of cells of a character.
+     *
+     * @param cp The unicode code point.
+     * @return 0 for combining marks and other zero-width characters, 2 for wide characters, otherwise 1.
+     */
+    public static int of(int cp) {
+        if (cp < 0x300 || cp > Character.MAX_CODE_POINT)
+            return 1;
+        return (STAGE2[(STAGE1[cp >> 8] << 6) | ((cp & 0xFF) >> 2)] >> ((cp & 3) << 1)) & 3;
+    }
+}
@@ -0,0 +1,200 @@
+/**
+ * Copyright 2025, Bernd Wengenroth.
+ * This is free and unencumbered software released into the public domain.
+ * Check LICENSE for details.
+ */
+package com.bw.sshTerm.model;
+
+import java.util.Arrays;
+
+/**
+ * Table of characters with combining marks, stored in one cell of a {@link Line}.<p>
+ * A cell holds one code point. A character with marks (a grapheme cluster) is interned into this table
+ * and the cell holds its id instead, ids are above {@link Character#MAX_CODE_POINT}.
+ * Each cluster is identified by the character (code point or cluster) and the last mark, so a lookup doesn't allocate.<p>
+ * Each {@link TerminalModel} has its own table. The number of ids is limited. If all ids are in use,
+ * {@link #combine} fails and the owner has to {@link #reclaim} the ids that are no longer referenced by any cell.<br>
+ * Encoded scrollback lines store the code points of the cluster, not the id.
+ */
+public final class Graphemes {
+
+    /**
+     * The first id of a cluster.
+     */
+    public static final int FIRST = Character.MAX_CODE_POINT + 1;
+
+    /**
+     * Default maximal number of ids.
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private final int capacity;
+    // Character and last mark of each cluster, indexed by id - FIRST. The character is -1 for free ids.
+    private int[] bases = new int[16];
+    private int[] marks = new int[16];
+    private int[][] clusters = new int[16][];
+    private String[] texts = new String[16];
+    // Number of ids ever handed out, including free ones.
+    private int size = 0;
+    // Stack of ids that were reclaimed and can be reused.
+    private int[] freeIds = new int[0];
+    private int freeCount = 0;
+    // Open addressing hash of id - FIRST + 1, 0 for free slots.
+    private int[] slots = new int[32];
+
+    /**
+     * Creates a table with {@link #DEFAULT_CAPACITY}.
+     */
+    public Graphemes() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a table.
+     *
+     * @param capacity The maximal number of ids.
+     */
+    public Graphemes(int capacity) {
+        this.capacity = Math.max(capacity, 1);
+    }
+
+    /**
+     * Checks if a cell holds a cluster.
+     */
+    public static boolean isCluster(int cp) {
+        return cp >= FIRST;
+    }
+
+    /**
+     * Attaches a combining mark to a character. The cluster is added if needed.
+     *
+     * @param cp   The code point or cluster.
+     * @param mark The code point of the mark.
+     * @return The id of the cluster or -1 if the table is full.
+     */
+    public synchronized int combine(int cp, int mark) {
+        final int mask = slots.length - 1;
+        int i = hash(cp, mark) & mask;
+        int index;
+        while ((index = slots[i]) != 0) {
+            --index;
+            if (bases[index] == cp && marks[index] == mark)
+                return FIRST + index;
+            i = (i + 1) & mask;
+        }
+        if (freeCount > 0) {
+            index = freeIds[--freeCount];
+        } else if (size < capacity) {
+            index = size++;
+            if (index == bases.length) {
+                int newLength = Math.min(index * 2, capacity);
+                bases = Arrays.copyOf(bases, newLength);
+                marks = Arrays.copyOf(marks, newLength);
+                clusters = Arrays.copyOf(clusters, newLength);
+                texts = Arrays.copyOf(texts, newLength);
+            }
+        } else {
+            return -1;
+        }
+        final int[] base = isCluster(cp) ? clusters[cp - FIRST] : new int[]{cp};
+        final int[] cluster = Arrays.copyOf(base, base.length + 1);
+        cluster[base.length] = mark;
+        bases[index] = cp;
+        marks[index] = mark;
+        clusters[index] = cluster;
+        texts[index] = new String(cluster, 0, cluster.length);
+        slots[i] = index + 1;
+        if (size * 2 > slots.length)
+            rehash(slots.length * 2);
+        return FIRST + index;
+    }
+
+    /**
+     * Frees all ids that are not marked as used. Clusters that are the character of a used cluster are kept.
+     * Freed ids are reused by {@link #combine}.
+     *
+     * @param used Flags of used ids, indexed by id - {@link #FIRST}. At least {@link #size()} entries.
+     * @return The number of freed ids.
+     */
+    public synchronized int reclaim(boolean[] used) {
+        for (int index = 0; index < size; ++index) {
+            if (used[index]) {
+                for (int b = bases[index]; isCluster(b) && !used[b - FIRST]; b = bases[b - FIRST])
+                    used[b - FIRST] = true;
+            }
+        }
+        if (freeIds.length < size)
+            freeIds = new int[size];
+        // Collect all unused ids, the free list is rebuilt completely.
+        freeCount = 0;
+        for (int index = size - 1; index >= 0; --index) {
+            if (!used[index]) {
+                freeIds[freeCount++] = index;
+                // Free ids must not be found anymore.
+                bases[index] = -1;
+                clusters[index] = null;
+                texts[index] = null;
+            }
+        }
+        rehash(slots.length);
+        return freeCount;
+    }
+
+    private static int hash(int cp, int mark) {
+        final int h = cp * 31 + mark;
+        return h ^ (h >>> 16);
+    }
+
+    private void rehash(int length) {
+        slots = new int[length];
+        final int mask = slots.length - 1;
+        for (int index = 0; index < size; ++index) {
+            if (bases[index] == -1)
+                continue;
+            int i = hash(bases[index], marks[index]) & mask;
+            while (slots[i] != 0)
+                i = (i + 1) & mask;
+            slots[i] = index + 1;
+        }
+    }
+
+    /**
+     * Gets the code points of a cluster.
+     *
+     * @param cp The id of the cluster.
+     * @return The code points, the base character first. Must not be modified.
+     */
+    public synchronized int[] codePoints(int cp) {
+        return clusters[cp - FIRST];
+    }
+
+    /**
+     * Gets the text of a cluster.
+     *
+     * @param cp The id of the cluster.
+     */
+    public synchronized String toString(int cp) {
+        return texts[cp - FIRST];
+    }
+
+    /**
+     * Gets the number of ids handed out so far, including the free ones. All ids are lower than {@link #FIRST} plus this value.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Gets the number of ids in use.
+     */
+    public synchronized int used() {
+        return size - freeCount;
+    }
+
+    /**
+     * Gets the maximal number of ids.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,302 @@
+/**
+ * Copyright 2025, Bernd Wengenroth.
+ * This is free and unencumbered software released into the public domain.
+ * Check LICENSE for details.
+ */
+package com.bw.sshTerm.model;
+
+import java.util.Arrays;
+
+/**
+ * A line of the terminal.<p>
+ * The cells are packed into one long each: The unicode code point in the lower 32 bits and
+ * the id of the attributes (see {@link AttributeTable}) in the upper 32 bits.
+ * Cells behind {@link #getLength()} are empty. Empty cells have code point 0 and attribute id 0 (the default attributes).<br>
+ * A {@link CharWidth wide} character takes two cells, the second cell holds {@link #WIDE_TAIL}.
+ * Characters with combining marks are stored as {@link Graphemes cluster}.<br>
+ * A line that was filled up to the right border and continued in the next line is {@link #isWrapped() wrapped}.
+ * The wrapped lines and the line that ends them form one logical line that is reflowed if the width changes.<br>
+ * Writing characters doesn't allocate, as long as the line has enough capacity.
+ */
+public final class Line {
+
+    /**
+     * Code point of the second cell of a wide character, it is not shown.
+     * Neither a unicode code point nor a {@link Graphemes cluster} id, so it can't be received from the remote side.
+     */
+    public static final int WIDE_TAIL = -1;
+
+    private long[] cells;
+    private int length;
+    private boolean wrapped;
+
+    /**
+     * Creates an empty line.
+     *
+     * @param capacity The initial number of cells, usually the number of columns.
+     */
+    public Line(int capacity) {
+        cells = new long[Math.max(capacity, 1)];
+    }
+
+    /**
+     * Packs code point and attribute id into a cell.
+     */
+    public static long pack(int codePoint, int attributes) {
+        return ((long) attributes << 32) | (codePoint & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Gets the code point of a packed cell.
+     */
+    public static int codePoint(long cell) {
+        return (int) cell;
+    }
+
+    /**
+     * Gets the attribute id of a packed cell.
+     */
+    public static int attributes(long cell) {
+        return (int) (cell >>> 32);
+    }
+
+    /**
+     * Gets the number of used cells. All cells behind are empty.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Gets a packed cell.
+     *
+     * @param x The zero based column.
+     * @return The cell, 0 if x is outside the used cells.
+     */
+    public long getCell(int x) {
+        return x < length ? cells[x] : 0;
+    }
+
+    /**
+     * Checks if the line continues in the next line (soft wrap).
+     */
+    public boolean isWrapped() {
+        return wrapped;
+    }
+
+    public void setWrapped(boolean wrapped) {
+        this.wrapped = wrapped;
+    }
+
+    public int getCodePoint(int x) {
+        return codePoint(getCell(x));
+    }
+
+    public int getAttributes(int x) {
+        return attributes(getCell(x));
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (cells.length < capacity)
+            cells = Arrays.copyOf(cells, Math.max(capacity, cells.length + (cells.length >> 1)));
+    }
+
+    /**
+     * Sets a cell.
+     *
+     * @param x          The zero based column.
+     * @param codePoint  The unicode code point.
+     * @param attributes The attribute id.
+     * @return true if the cell was changed.
+     */
+    public boolean set(int x, int codePoint, int attributes) {
+        final long cell = pack(codePoint, attributes);
+        if (x < length) {
+            if (cells[x] == cell)
+                return false;
+        } else {
+            ensureCapacity(x + 1);
+            length = x + 1;
+        }
+        cells[x] = cell;
+        return true;
+    }
+
+    /**
+     * Sets a run of cells with the same attributes.
+     *
+     * @param x          The zero based column of the first cell.
+     * @param chars      The buffer with the code points.
+     * @param offset     Offset of the first code point in chars.
+     * @param count      Number of code points.
+     * @param attributes The attribute id.
+     */
+    public void set(int x, int[] chars, int offset, int count, int attributes) {
+        final int end = x + count;
+        ensureCapacity(end);
+        final long attr = (long) attributes << 32;
+        for (int xp = x; xp < end; ++xp)
+            cells[xp] = attr | (chars[offset++] & 0xFFFFFFFFL);
+        if (length < end)
+            length = end;
+    }
+
+    /**
+     * Prepares a range of cells to be overwritten: Wide characters that are only partly inside the range are
+     * replaced by empty cells.
+     *
+     * @param from The zero based column of the first cell.
+     * @param to   The column behind the last cell.
+     */
+    public void splitWide(int from, int to) {
+        if (from > 0 && from < length && codePoint(cells[from]) == WIDE_TAIL)
+            cells[from - 1] &= 0xFFFFFFFF00000000L;
+        if (to > 0 && to < length && codePoint(cells[to]) == WIDE_TAIL)
+            cells[to] &= 0xFFFFFFFF00000000L;
+    }
+
+    /**
+     * Erases a range of cells. Erased cells are empty, but keep the attributes, e.g. to show a background color.
+     * If the range reaches the end of the used cells and the attributes are the default, the line gets shorter.
+     *
+     * @param from       The zero based column of the first cell.
+     * @param to         The column behind the last cell.
+     * @param attributes The attribute id of the erased cells.
+     */
+    public void erase(int from, int to, int attributes) {
+        from = Math.max(from, 0);
+        if (from >= to)
+            return;
+        if (attributes == 0 && to >= length) {
+            if (from < length) {
+                Arrays.fill(cells, from, length, 0);
+                length = from;
+            }
+        } else {
+            ensureCapacity(to);
+            Arrays.fill(cells, from, to, pack(0, attributes));
+            if (length < to)
+                length = to;
+        }
+    }
+
+    /**
+     * Copies cells from another line.
+     *
+     * @param x      The zero based column of the first cell to set.
+     * @param source The line to copy from.
+     * @param from   The column of the first cell to copy.
+     * @param count  Maximal number of cells to copy. Only the used cells of the source are copied.
+     * @return The number of copied cells.
+     */
+    public int copy(int x, Line source, int from, int count) {
+        final int n = Math.max(0, Math.min(count, source.length - from));
+        if (n > 0) {
+            ensureCapacity(x + n);
+            System.arraycopy(source.cells, from, cells, x, n);
+            if (length < x + n)
+                length = x + n;
+        }
+        return n;
+    }
+
+    /**
+     * Gets the number of cells of a range that fit into a row without splitting a wide character.
+     *
+     * @param from  The column of the first cell.
+     * @param count Maximal number of cells.
+     * @return The number of cells, at most the used cells. One less than count if the last cell is the first half
+     * of a wide character.
+     */
+    public int fit(int from, int count) {
+        final int n = Math.max(0, Math.min(count, length - from));
+        if (n > 0 && from + n < length && codePoint(cells[from + n]) == WIDE_TAIL)
+            return n - 1;
+        return n;
+    }
+
+    /**
+     * Gets the columns of the wide characters.
+     *
+     * @return The columns of the first halves in ascending order, null if the line has no wide characters.
+     */
+    public int[] getWideColumns() {
+        int count = 0;
+        for (int x = 1; x < length; ++x) {
+            if (codePoint(cells[x]) == WIDE_TAIL)
+                ++count;
+        }
+        if (count == 0)
+            return null;
+        final int[] columns = new int[count];
+        count = 0;
+        for (int x = 1; x < length; ++x) {
+            if (codePoint(cells[x]) == WIDE_TAIL)
+                columns[count++] = x - 1;
+        }
+        return columns;
+    }
+
+    /**
+     * Inserts a cell. The following cells are moved right, the cell at the end of the capacity is dropped.
+     *
+     * @param x          The zero based column.
+     * @param codePoint  The unicode code point.
+     * @param attributes The attribute id.
+     */
+    public void insert(int x, int codePoint, int attributes) {
+        ensureCapacity(x + 1);
+        if (x < length) {
+            int n = Math.min(length, cells.length - 1) - x;
+            System.arraycopy(cells, x, cells, x + 1, n);
+            length = x + 1 + n;
+        } else {
+            length = x + 1;
+        }
+        cells[x] = pack(codePoint, attributes);
+    }
+
+    /**
+     * Deletes a cell. The following cells are moved left.
+     *
+     * @param x The zero based column.
+     */
+    public void delete(int x) {
+        if (x < length) {
+            System.arraycopy(cells, x + 1, cells, x, length - x - 1);
+            cells[--length] = 0;
+        }
+    }
+
+    /**
+     * Marks the attribute ids used by this line.
+     *
+     * @param used Flags of used ids, indexed by id.
+     */
+    public void markAttributes(boolean[] used) {
+        for (int x = 0; x < length; ++x)
+            used[(int) (cells[x] >>> 32)] = true;
+    }
+
+    /**
+     * Marks the {@link Graphemes cluster} ids used by this line.
+     *
+     * @param used Flags of used ids, indexed by id - {@link Graphemes#FIRST}.
+     */
+    public void markClusters(boolean[] used) {
+        for (int x = 0; x < length; ++x) {
+            final int cp = codePoint(cells[x]);
+            if (Graphemes.isCluster(cp))
+                used[cp - Graphemes.FIRST] = true;
+        }
+    }
+
+    /**
+     * Removes all cells.
+     */
+    public void clear() {
+        Arrays.fill(cells, 0, length, 0);
+        length = 0;
+        wrapped = false;
+    }
+}
@@ -0,0 +1,362 @@
+/**
+ * Copyright 2025, Bernd Wengenroth.
+ * This is free and unencumbered software released into the public domain.
+ * Check LICENSE for details.
+ */
+package com.bw.sshTerm.model;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compact encoding of a block of lines.<p>
+ * The block starts with the number of lines and a dictionary of the resolved attributes (foreground, background, style)
+ * used by the block. Each line is stored as the number of cells (shifted left by one, the lowest bit is the
+ * {@link Line#isWrapped() wrap flag}), UTF-8 text and run-length encoded attribute spans that refer to the dictionary. All numbers are unsigned varints, colors are stored as 4 bytes.<br>
+ * As the colors are resolved, encoded lines don't hold ids of the {@link AttributeTable}.
+ * For the same reason clusters of {@link Graphemes} are stored as their code points, the combining marks follow the
+ * character of the cell. The second cell of a wide character ({@link Line#WIDE_TAIL}) is stored as byte 0xFF,
+ * which is not used by UTF-8.
+ */
+final class LineCodec {
+
+    // Stored for the second cell of a wide character.
+    private static final byte WIDE_TAIL_BYTE = (byte) 0xFF;
+
+    private LineCodec() {
+    }
+
+    /**
+     * Encodes lines.
+     *
+     * @param lines      The lines.
+     * @param count      Number of lines to encode.
+     * @param attributes The table to resolve the attribute ids of the cells.
+     * @param graphemes  The table to resolve the cluster ids of the cells.
+     * @param deflate    If true, the encoded block is compressed.
+     */
+    static byte[] encode(Line[] lines, int count, AttributeTable attributes, Graphemes graphemes, boolean deflate) {
+        final Map<Integer, Integer> dictionary = new HashMap<>();
+        final Bytes body = new Bytes(count * 32);
+        final Bytes spans = new Bytes(64);
+        final Bytes text = new Bytes(128);
+
+        for (int li = 0; li < count; ++li) {
+            final Line line = lines[li];
+            final int length = line.getLength();
+            text.reset();
+            spans.reset();
+            int spanCount = 0;
+            int spanStart = 0;
+            int spanAttr = -1;
+            for (int x = 0; x < length; ++x) {
+                final long cell = line.getCell(x);
+                final int cp = Line.codePoint(cell);
+                if (Graphemes.isCluster(cp)) {
+                    for (int c : graphemes.codePoints(cp))
+                        writeUtf8(text, c);
+                } else if (cp == Line.WIDE_TAIL) {
+                    text.write(WIDE_TAIL_BYTE);
+                } else {
+                    writeUtf8(text, cp);
+                }
+                final int attr = Line.attributes(cell);
+                if (attr != spanAttr) {
+                    if (x > 0) {
+                        writeVarint(spans, x - spanStart);
+                        writeVarint(spans, dictionaryIndex(dictionary, spanAttr));
+                        ++spanCount;
+                    }
+                    spanAttr = attr;
+                    spanStart = x;
+                }
+            }
+            if (length > 0) {
+                writeVarint(spans, length - spanStart);
+                writeVarint(spans, dictionaryIndex(dictionary, spanAttr));
+                ++spanCount;
+            }
+            writeVarint(body, (length << 1) | (line.isWrapped() ? 1 : 0));
+            writeVarint(body, text.size());
+            body.append(text);
+            writeVarint(body, spanCount);
+            body.append(spans);
+        }
+
+        final int[] dictIds = new int[dictionary.size()];
+        for (Map.Entry<Integer, Integer> e : dictionary.entrySet())
+            dictIds[e.getValue()] = e.getKey();
+
+        final Bytes out = new Bytes(body.size() + 16 + dictionary.size() * 9);
+        writeVarint(out, count);
+        writeVarint(out, dictionary.size());
+        for (int i = 0; i < dictionary.size(); ++i) {
+            final int id = dictIds[i];
+            writeInt(out, attributes.getForeground(id));
+            writeInt(out, attributes.getBackground(id));
+            writeVarint(out, attributes.getStyle(id));
+        }
+        out.append(body);
+        return deflate ? deflate(out.toByteArray()) : out.toByteArray();
+    }
+
+    /**
+     * Decodes a block of lines. The attributes and clusters are interned into the tables.
+     *
+     * @param data       The encoded block.
+     * @param inflate    True if the block is compressed.
+     * @param attributes The table to get the attribute ids from.
+     * @param graphemes  The table to get the cluster ids from.
+     */
+    static Line[] decode(byte[] data, boolean inflate, AttributeTable attributes, Graphemes graphemes) {
+        final Reader r = new Reader(inflate ? inflate(data) : data);
+        final int count = r.varint();
+        final int[] ids = new int[r.varint()];
+        for (int i = 0; i < ids.length; ++i) {
+            int fg = r.int32();
+            int bg = r.int32();
+            int style = r.varint();
+            // If the table is full, the colors are lost.
+            ids[i] = Math.max(0, attributes.intern(fg, bg, style));
+        }
+        final Line[] lines = new Line[count];
+        for (int li = 0; li < count; ++li) {
+            final int cells = r.varint();
+            final Line line = new Line(cells >>> 1);
+            line.setWrapped((cells & 1) != 0);
+            int textEnd = r.varint();
+            textEnd += r.pos;
+            int x = 0;
+            final int textStart = r.pos;
+            r.pos = textEnd;
+            int spanCount = r.varint();
+            int textPos = textStart;
+            while (spanCount-- > 0) {
+                final int run = r.varint();
+                final int attr = ids[r.varint()];
+                for (int i = 0; i < run; ++i) {
+                    int cp = readUtf8(r.data, textPos);
+                    textPos += utf8Length(r.data[textPos]);
+                    // Combining marks belong to the cell.
+                    while (textPos < textEnd) {
+                        final int mark = readUtf8(r.data, textPos);
+                        if (CharWidth.of(mark) != 0)
+                            break;
+                        // If the table is full, the mark is lost.
+                        final int cluster = graphemes.combine(cp, mark);
+                        if (cluster >= 0)
+                            cp = cluster;
+                        textPos += utf8Length(r.data[textPos]);
+                    }
+                    line.set(x++, cp, attr);
+                }
+            }
+            lines[li] = line;
+        }
+        return lines;
+    }
+
+    /**
+     * Decodes only the text of a block of lines. Empty cells are returned as spaces.
+     *
+     * @param data    The encoded block.
+     * @param inflate True if the block is compressed.
+     * @param wrapped Receives the indices of the wrapped lines.
+     */
+    static String[] decodeText(byte[] data, boolean inflate, BitSet wrapped) {
+        final Reader r = new Reader(inflate ? inflate(data) : data);
+        final int count = r.varint();
+        final int dictionarySize = r.varint();
+        for (int i = 0; i < dictionarySize; ++i) {
+            r.pos += 8;
+            r.varint();
+        }
+        final String[] texts = new String[count];
+        for (int li = 0; li < count; ++li) {
+            if ((r.varint() & 1) != 0)
+                wrapped.set(li);
+            final int textLength = r.varint();
+            texts[li] = decodeUtf8(r.data, r.pos, textLength).replace('\0', ' ');
+            r.pos += textLength;
+            int spanCount = r.varint();
+            while (spanCount-- > 0) {
+                r.varint();
+                r.varint();
+            }
+        }
+        return texts;
+    }
+
+    private static int dictionaryIndex(Map<Integer, Integer> dictionary, int attr) {
+        Integer idx = dictionary.get(attr);
+        if (idx == null) {
+            idx = dictionary.size();
+            dictionary.put(attr, idx);
+        }
+        return idx;
+    }
+
+    /**
+     * Decodes the text of a line, the second cells of wide characters are skipped.
+     */
+    private static String decodeUtf8(byte[] data, int pos, int length) {
+        int tails = 0;
+        for (int i = pos; i < pos + length; ++i) {
+            if (data[i] == WIDE_TAIL_BYTE)
+                ++tails;
+        }
+        if (tails == 0)
+            return new String(data, pos, length, StandardCharsets.UTF_8);
+        final byte[] text = new byte[length - tails];
+        int n = 0;
+        for (int i = pos; i < pos + length; ++i) {
+            if (data[i] != WIDE_TAIL_BYTE)
+                text[n++] = data[i];
+        }
+        return new String(text, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a code point, written by writeUtf8 and therefore well-formed, or the second cell of a wide character.
+     */
+    private static int readUtf8(byte[] data, int pos) {
+        if (data[pos] == WIDE_TAIL_BYTE)
+            return Line.WIDE_TAIL;
+        int cp = data[pos];
+        if (cp < 0) {
+            int n = utf8Length(data[pos]) - 1;
+            cp &= (0x3F >> n);
+            while (n-- > 0)
+                cp = (cp << 6) | (data[++pos] & 0x3F);
+        }
+        return cp;
+    }
+
+    private static int utf8Length(byte lead) {
+        return lead >= 0 || lead == WIDE_TAIL_BYTE ? 1 : (lead & 0xE0) == 0xC0 ? 2 : (lead & 0xF0) == 0xE0 ? 3 : 4;
+    }
+
+    private static void writeUtf8(ByteArrayOutputStream out, int cp) {
+        if (cp < 0 || cp > Character.MAX_CODE_POINT)
+            cp = 0xFFFD;
+        if (cp < 0x80) {
+            out.write(cp);
+        } else if (cp < 0x800) {
+            out.write(0xC0 | (cp >> 6));
+            out.write(0x80 | (cp & 0x3F));
+        } else if (cp < 0x10000) {
+            out.write(0xE0 | (cp >> 12));
+            out.write(0x80 | ((cp >> 6) & 0x3F));
+            out.write(0x80 | (cp & 0x3F));
+        } else {
+            out.write(0xF0 | (cp >> 18));
+            out.write(0x80 | ((cp >> 12) & 0x3F));
+            out.write(0x80 | ((cp >> 6) & 0x3F));
+            out.write(0x80 | (cp & 0x3F));
+        }
+    }
+
+    static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    private static byte[] deflate(byte[] data) {
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            byte[] buffer = new byte[Math.max(64, data.length / 2)];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == buffer.length)
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+            // The size of the plain block is needed to inflate it.
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(length + 5);
+            writeVarint(out, data.length);
+            out.write(buffer, 0, length);
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] data) {
+        final Reader r = new Reader(data);
+        final byte[] plain = new byte[r.varint()];
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, r.pos, data.length - r.pos);
+            int length = 0;
+            while (length < plain.length && !inflater.finished())
+                length += inflater.inflate(plain, length, plain.length - length);
+            return plain;
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupted scrollback block", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Byte buffer that can be appended to another without copy.
+     */
+    private static final class Bytes extends ByteArrayOutputStream {
+        Bytes(int size) {
+            super(size);
+        }
+
+        void append(Bytes other) {
+            write(other.buf, 0, other.count);
+        }
+    }
+
+    /**
+     * Reads numbers from an encoded block.
+     */
+    static final class Reader {
+        final byte[] data;
+        int pos;
+
+        Reader(byte[] data) {
+            this.data = data;
+        }
+
+        int varint() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[pos++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+
+        int int32() {
+            int value = ((data[pos] & 0xFF) << 24) | ((data[pos + 1] & 0xFF) << 16) | ((data[pos + 2] & 0xFF) << 8) | (data[pos + 3] & 0xFF);
+            pos += 4;
+            return value;
+        }
+    }
+}
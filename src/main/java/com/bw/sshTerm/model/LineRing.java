@@ -0,0 +1,257 @@
+/**
+ * Copyright 2025, Bernd Wengenroth.
+ * This is free and unencumbered software released into the public domain.
+ * Check LICENSE for details.
+ */
+package com.bw.sshTerm.model;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * A list of lines in a circular array.<p>
+ * Adding and removing lines at both ends is O(1). If a limit is set, adding a line to a full ring evicts the first line.<br>
+ * {@link #scrollUp(int, int, Line)} and {@link #scrollDown(int, int, Line)} move a region of lines by rotating
+ * the ring, only the lines outside the region have to be moved back. {@link #rotate(int, int, int)} moves a region
+ * by several lines in one step.
+ */
+public final class LineRing extends AbstractList<Line> implements RandomAccess {
+
+    private Line[] lines;
+    private int head = 0;
+    private int size = 0;
+    private int limit;
+
+    /**
+     * Creates a ring without limit.
+     */
+    public LineRing() {
+        this(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates a ring.
+     *
+     * @param limit Maximal number of lines.
+     */
+    public LineRing(int limit) {
+        this.limit = Math.max(limit, 1);
+        lines = new Line[Math.min(this.limit, 64)];
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Sets the maximal number of lines. If the ring contains more lines, the first lines are dropped.
+     */
+    public void setLimit(int limit) {
+        this.limit = Math.max(limit, 1);
+        while (size > this.limit)
+            removeFirst();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Line get(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException(index);
+        return lines[slot(index)];
+    }
+
+    @Override
+    public Line set(int index, Line line) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException(index);
+        final int s = slot(index);
+        Line old = lines[s];
+        lines[s] = line;
+        return old;
+    }
+
+    @Override
+    public boolean add(Line line) {
+        addLast(line);
+        return true;
+    }
+
+    /**
+     * Appends a line.
+     *
+     * @return The evicted first line if the limit was reached, otherwise null.
+     */
+    public Line addLast(Line line) {
+        Line evicted = null;
+        if (size >= limit)
+            evicted = removeFirst();
+        grow();
+        lines[slot(size)] = line;
+        ++size;
+        ++modCount;
+        return evicted;
+    }
+
+    /**
+     * Removes the first line.
+     *
+     * @return The removed line or null if the ring is empty.
+     */
+    public Line removeFirst() {
+        if (size == 0)
+            return null;
+        Line line = lines[head];
+        lines[head] = null;
+        head = (head + 1) % lines.length;
+        --size;
+        ++modCount;
+        return line;
+    }
+
+    /**
+     * Removes the last line.
+     *
+     * @return The removed line or null if the ring is empty.
+     */
+    public Line removeLast() {
+        if (size == 0)
+            return null;
+        final int s = slot(size - 1);
+        Line line = lines[s];
+        lines[s] = null;
+        --size;
+        ++modCount;
+        return line;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(lines, null);
+        head = 0;
+        size = 0;
+        ++modCount;
+    }
+
+    /**
+     * Removes the line at top and inserts a line at bottom. The lines in between move one up.
+     *
+     * @param top    Index of the first line of the region.
+     * @param bottom Index of the last line of the region.
+     * @param line   The line to insert at bottom.
+     * @return The removed line.
+     */
+    public Line scrollUp(int top, int bottom, Line line) {
+        checkRegion(top, bottom);
+        final Line removed = get(top);
+        if ((bottom - top) <= (size - 1 - (bottom - top))) {
+            for (int i = top; i < bottom; ++i)
+                lines[slot(i)] = lines[slot(i + 1)];
+        } else {
+            // Rotate the whole ring one up, then move the lines outside the region back down.
+            final Line first = lines[head];
+            lines[head] = null;
+            head = (head + 1) % lines.length;
+            lines[slot(size - 1)] = first;
+            for (int i = size - 1; i > bottom; --i)
+                lines[slot(i)] = lines[slot(i - 1)];
+            if (top > 0) {
+                for (int i = top - 1; i > 0; --i)
+                    lines[slot(i)] = lines[slot(i - 1)];
+                lines[head] = first;
+            }
+        }
+        lines[slot(bottom)] = line;
+        ++modCount;
+        return removed;
+    }
+
+    /**
+     * Removes the line at bottom and inserts a line at top. The lines in between move one down.
+     *
+     * @param top    Index of the first line of the region.
+     * @param bottom Index of the last line of the region.
+     * @param line   The line to insert at top.
+     * @return The removed line.
+     */
+    public Line scrollDown(int top, int bottom, Line line) {
+        checkRegion(top, bottom);
+        final Line removed = get(bottom);
+        if ((bottom - top) <= (size - 1 - (bottom - top))) {
+            for (int i = bottom; i > top; --i)
+                lines[slot(i)] = lines[slot(i - 1)];
+        } else {
+            // Rotate the whole ring one down, then move the lines outside the region back up.
+            final int lastSlot = slot(size - 1);
+            final Line last = lines[lastSlot];
+            lines[lastSlot] = null;
+            head = (head + lines.length - 1) % lines.length;
+            lines[head] = last;
+            for (int i = 0; i < top; ++i)
+                lines[slot(i)] = lines[slot(i + 1)];
+            if (bottom < size - 1) {
+                for (int i = bottom + 1; i < size - 1; ++i)
+                    lines[slot(i)] = lines[slot(i + 1)];
+                lines[slot(size - 1)] = last;
+            }
+        }
+        lines[slot(top)] = line;
+        ++modCount;
+        return removed;
+    }
+
+    /**
+     * Rotates a region of lines. The lines that are moved out at one end of the region are inserted at the other end.
+     *
+     * @param top    Index of the first line of the region.
+     * @param bottom Index of the last line of the region.
+     * @param n      Number of lines to move up, negative to move down.
+     */
+    public void rotate(int top, int bottom, int n) {
+        checkRegion(top, bottom);
+        final int height = bottom - top + 1;
+        n %= height;
+        if (n < 0)
+            n += height;
+        if (n != 0) {
+            reverse(top, top + n - 1);
+            reverse(top + n, bottom);
+            reverse(top, bottom);
+            ++modCount;
+        }
+    }
+
+    private void reverse(int from, int to) {
+        while (from < to) {
+            final int a = slot(from++);
+            final int b = slot(to--);
+            final Line l = lines[a];
+            lines[a] = lines[b];
+            lines[b] = l;
+        }
+    }
+
+    private void checkRegion(int top, int bottom) {
+        if (top < 0 || bottom >= size || top > bottom)
+            throw new IndexOutOfBoundsException("Region " + top + "-" + bottom + " outside of " + size + " lines");
+    }
+
+    private int slot(int index) {
+        int s = head + index;
+        return s >= lines.length ? s - lines.length : s;
+    }
+
+    private void grow() {
+        if (size == lines.length) {
+            Line[] n = new Line[(int) Math.min(limit, Math.max(16L, lines.length * 2L))];
+            for (int i = 0; i < size; ++i)
+                n[i] = lines[slot(i)];
+            lines = n;
+            head = 0;
+        }
+    }
+}
@@ -0,0 +1,566 @@
+/**
+ * Copyright 2025, Bernd Wengenroth.
+ * This is free and unencumbered software released into the public domain.
+ * Check LICENSE for details.
+ */
+package com.bw.sshTerm.model;
+
+import com.bw.sshTerm.TraceRecorder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A screen buffer of a {@link TerminalModel} with its scrollback-buffers.<p>
+ * The screen lines are a {@link LineRing ring}: Scrolling rotates the lines. The scrollback-buffers drop their
+ * oldest lines if the {@link TerminalModel#getScrollbackLimit() limit} is reached, older lines of the upper buffer
+ * are {@link ScrollbackBuffer encoded}.<br>
+ * Modifications are done by the thread that handles the terminal output. Readers have to hold the
+ * {@link TerminalModel#getLock() lock} of the model.<br>
+ * Changed rows are collected, so that only these rows are copied into the next {@link ScreenSnapshot}.
+ */
+public class Screen {
+
+    /**
+     * Maximal number of lines that {@link #reflow()} takes back from the scrollback-buffer.
+     */
+    private static final int MAX_REFLOW_TAKE_BACK = 1000;
+
+    private final TerminalModel model;
+    /**
+     * Zero based upper margin in range [0, termHeight-1[
+     */
+    public int marginTop = 0;
+    /**
+     * Zero based lower margin in range [1, termHeight[
+     */
+    public int marginBottom;
+    public int lastCaretX;
+    public int lastCaretY;
+    public final ScrollbackBuffer topScrollBuffer;
+    public final LineRing bottomScrollBuffer;
+    public final LineRing term = new LineRing();
+    // Line evicted from a scrollback-buffer, re-used for the next scroll.
+    private Line spare;
+    // Rows changed since the last collectDirtyRows.
+    private final BitSet dirty = new BitSet();
+    // Row each unchanged row had at the last collectDirtyRows, rows move if the screen scrolls.
+    private int[] origins = new int[0];
+
+    Screen(TerminalModel model) {
+        this.model = model;
+        topScrollBuffer = new ScrollbackBuffer(model.getAttributeTable(), model.getGraphemes(), model.getScrollbackLimit(), model.getScrollbackColdDistance());
+        topScrollBuffer.setCompressed(model.isScrollbackCompressed());
+        bottomScrollBuffer = new LineRing(model.getScrollbackLimit());
+        marginBottom = model.getRows() - 1;
+        ensureSpace();
+    }
+
+    private Line newLine() {
+        return new Line(model.getColumns());
+    }
+
+    /**
+     * Gets an empty line to insert, re-uses the line that was last evicted from a scrollback-buffer.
+     */
+    private Line takeSpare() {
+        if (spare == null)
+            return newLine();
+        Line l = spare;
+        spare = null;
+        l.clear();
+        return l;
+    }
+
+    /**
+     * Sets the maximal number of lines in the scrollback-buffers.
+     */
+    void setScrollbackLimit(int lines) {
+        topScrollBuffer.setLimit(lines);
+        bottomScrollBuffer.setLimit(lines);
+        model.fire(TerminalModel.SCROLLBACK);
+    }
+
+    void setScrollbackSpill(ScrollbackSpill spill) {
+        topScrollBuffer.setSpill(spill);
+        model.fire(TerminalModel.SCROLLBACK | TerminalModel.CONTENT);
+    }
+
+    /**
+     * Sets how the upper scrollback-buffer encodes old lines.
+     */
+    void setScrollbackEncoding(int coldDistance, boolean compressed) {
+        topScrollBuffer.setCompressed(compressed);
+        topScrollBuffer.setColdDistance(coldDistance);
+    }
+
+    private Line getLine(int y) {
+        while (term.size() <= y) {
+            term.add(newLine());
+        }
+        return term.get(y);
+    }
+
+    /**
+     * Marks rows as changed.
+     *
+     * @param from The first row.
+     * @param to   The row behind the last row.
+     */
+    void markDirty(int from, int to) {
+        if (from < to)
+            dirty.set(Math.max(from, 0), to);
+    }
+
+    /**
+     * Marks rows as moved. Row y shows the line that was at row y+n before, the rows the lines
+     * were moved out of are marked as changed.
+     *
+     * @param from The first row.
+     * @param to   The row behind the last row.
+     * @param n    Number of rows the lines moved up, negative if moved down.
+     */
+    void markMoved(int from, int to, int n) {
+        if (Math.abs(n) >= to - from) {
+            markDirty(from, to);
+            return;
+        }
+        ensureOrigins(to);
+        if (n > 0) {
+            for (int y = from; y < to - n; ++y) {
+                origins[y] = origins[y + n];
+                dirty.set(y, dirty.get(y + n));
+            }
+            markDirty(to - n, to);
+        } else if (n < 0) {
+            for (int y = to - 1; y >= from - n; --y) {
+                origins[y] = origins[y + n];
+                dirty.set(y, dirty.get(y + n));
+            }
+            markDirty(from, from - n);
+        }
+    }
+
+    private void ensureOrigins(int rows) {
+        if (origins.length < rows) {
+            final int length = origins.length;
+            origins = Arrays.copyOf(origins, rows);
+            for (int y = length; y < rows; ++y)
+                origins[y] = y;
+        }
+    }
+
+    /**
+     * Adds the changed rows to a set and resets them.
+     *
+     * @param rows    The set of changed rows.
+     * @param origins Receives for each unchanged row the row it had at the last call. At least as long as the screen.
+     */
+    void collectDirtyRows(BitSet rows, int[] origins) {
+        ensureOrigins(term.size());
+        System.arraycopy(this.origins, 0, origins, 0, term.size());
+        for (int y = 0; y < this.origins.length; ++y)
+            this.origins[y] = y;
+        rows.or(dirty);
+        dirty.clear();
+    }
+
+    /**
+     * Marks the attribute ids used by all lines of this screen, including the scrollback-buffers.
+     */
+    void markAttributes(boolean[] used) {
+        topScrollBuffer.markAttributes(used);
+        for (Line l : term)
+            l.markAttributes(used);
+        for (Line l : bottomScrollBuffer)
+            l.markAttributes(used);
+    }
+
+    /**
+     * Marks the cluster ids used by all lines of this screen, including the scrollback-buffers.
+     */
+    void markClusters(boolean[] used) {
+        topScrollBuffer.markClusters(used);
+        for (Line l : term)
+            l.markClusters(used);
+        for (Line l : bottomScrollBuffer)
+            l.markClusters(used);
+    }
+
+    public void insert(int x, int y, int c) {
+        if (x >= 0 && y >= 0) {
+            getLine(y).insert(x, c, model.getAttributes());
+            markDirty(y, y + 1);
+            model.fire(TerminalModel.CONTENT);
+        }
+    }
+
+    public void deleteChar(int x, int y) {
+        if (x >= 0 && y >= 0) {
+            getLine(y).delete(x);
+            markDirty(y, y + 1);
+            model.fire(TerminalModel.CONTENT);
+        }
+    }
+
+    public void setMargins(int top, int bottom) {
+        model.trace.record(TraceRecorder.MARGINS, top, bottom, 0);
+        top = Math.max(top, 0);
+        bottom = Math.min(bottom, model.getRows() - 1);
+        if (top > bottom)
+            return;
+        marginTop = top;
+        marginBottom = bottom;
+        while (term.size() < (marginBottom - marginTop))
+            term.add(newLine());
+    }
+
+    protected void ensureSpace() {
+        final int rows = model.getRows();
+        while (term.size() > rows)
+            term.removeLast();
+        while (term.size() < rows) {
+            term.add(newLine());
+        }
+        markDirty(0, rows);
+        model.fire(TerminalModel.SCROLLBACK);
+    }
+
+    /**
+     * Marks a line as {@link Line#isWrapped() wrapped}.
+     */
+    void setWrapped(int y) {
+        if (y >= 0)
+            getLine(y).setWrapped(true);
+    }
+
+    /**
+     * Reflows the lines to the current number of columns. Wrapped lines are joined with the following lines
+     * and wrapped again at the new width. {@link #lastCaretX}/{@link #lastCaretY} are moved with the text.<br>
+     * A wrapped line that started in the scrollback-buffer is taken back. If the lines need more rows than
+     * the screen has, the upper lines are moved to the scrollback-buffer.
+     */
+    void reflow() {
+        final int columns = model.getColumns();
+        final List<Line> source = new ArrayList<>(term.size() + 1);
+        while (source.size() < MAX_REFLOW_TAKE_BACK && !topScrollBuffer.isEmpty()
+                && topScrollBuffer.get(topScrollBuffer.size() - 1).isWrapped())
+            source.add(topScrollBuffer.removeLast());
+        Collections.reverse(source);
+        final int caretY = source.size() + Math.min(Math.max(lastCaretY, 0), term.size() - 1);
+        source.addAll(term);
+        // Empty lines below the caret are not kept.
+        int used = source.size();
+        while (used > caretY + 1 && source.get(used - 1).getLength() == 0)
+            --used;
+        final List<Line> rows = new ArrayList<>(used + 1);
+        int newCaretX = lastCaretX;
+        int newCaretY = caretY;
+        for (int y = 0; y < used; ) {
+            // The caret is found while its line is copied.
+            boolean caretFound = false;
+            Line row = new Line(columns);
+            int x = 0;
+            boolean wrapped;
+            do {
+                final Line line = source.get(y);
+                for (int from = 0; from < line.getLength(); ) {
+                    if (x == columns) {
+                        row.setWrapped(true);
+                        rows.add(row);
+                        row = new Line(columns);
+                        x = 0;
+                    }
+                    // A wide character is not split, like in TerminalModel#setChars the last cell of the row stays empty.
+                    // With one column it takes one cell.
+                    int n = line.fit(from, columns - x);
+                    int skip = 0;
+                    if (n == 0 && x == 0) {
+                        n = row.copy(x, line, from, 1);
+                        skip = 1;
+                    } else
+                        row.copy(x, line, from, n);
+                    if (y == caretY && lastCaretX >= from && lastCaretX < from + n + skip) {
+                        newCaretY = rows.size();
+                        newCaretX = x + Math.min(lastCaretX - from, n - 1);
+                        caretFound = true;
+                    }
+                    x = n < columns - x && from + n < line.getLength() ? columns : x + n;
+                    from += n + skip;
+                }
+                if (y == caretY && !caretFound) {
+                    // The caret is behind the last cell, e.g. if a wrap is pending.
+                    final int cx = x + Math.max(lastCaretX - line.getLength(), 0);
+                    final boolean next = cx > columns || (cx == columns && line.isWrapped());
+                    newCaretY = rows.size() + (next ? cx / columns : 0);
+                    newCaretX = next ? cx % columns : cx;
+                    caretFound = true;
+                }
+                wrapped = line.isWrapped();
+                ++y;
+            } while (wrapped && y < used);
+            rows.add(row);
+            if (caretFound && newCaretY >= rows.size()) {
+                newCaretY = rows.size() - 1;
+                newCaretX = columns;
+            }
+        }
+        final int screenRows = model.getRows();
+        // Keep the caret on the screen, move upper lines to the scrollback-buffer.
+        final int top = Math.min(Math.max(rows.size() - screenRows, 0), newCaretY);
+        for (int i = 0; i < top; ++i) {
+            Line evicted = topScrollBuffer.addLast(rows.get(i));
+            if (evicted != null)
+                spare = evicted;
+        }
+        term.clear();
+        for (int i = top; i < rows.size() && term.size() < screenRows; ++i)
+            term.add(rows.get(i));
+        lastCaretX = newCaretX;
+        lastCaretY = newCaretY - top;
+        ensureSpace();
+        model.fire(TerminalModel.SCROLLBACK | TerminalModel.CONTENT);
+    }
+
+    /**
+     * Erases cells of a row (EL, ECH). If the cells up to the right border are erased, the line is no longer wrapped.
+     *
+     * @param y          The row.
+     * @param from       The first column.
+     * @param to         The column behind the last column.
+     * @param attributes The attribute id of the erased cells.
+     */
+    public void erase(int y, int from, int to, int attributes) {
+        if (y >= 0 && from < to) {
+            final Line line = getLine(y);
+            line.splitWide(from, to);
+            line.erase(from, to, attributes);
+            if (to >= model.getColumns())
+                line.setWrapped(false);
+            markDirty(y, y + 1);
+            model.fire(TerminalModel.CONTENT);
+        }
+    }
+
+    /**
+     * Erases rows (ED).
+     *
+     * @param from       The first row.
+     * @param to         The row behind the last row.
+     * @param attributes The attribute id of the erased cells.
+     */
+    public void eraseRows(int from, int to, int attributes) {
+        from = Math.max(from, 0);
+        to = Math.min(to, model.getRows());
+        if (from < to) {
+            final int columns = model.getColumns();
+            for (int y = from; y < to; ++y) {
+                final Line line = getLine(y);
+                line.clear();
+                line.erase(0, columns, attributes);
+            }
+            markDirty(from, to);
+            model.fire(TerminalModel.CONTENT);
+        }
+    }
+
+    /**
+     * Removes all lines of the scrollback-buffers, the screen is not changed.
+     */
+    public void clearScrollback() {
+        topScrollBuffer.clear();
+        bottomScrollBuffer.clear();
+        model.fire(TerminalModel.SCROLLBACK | TerminalModel.CONTENT);
+    }
+
+    /**
+     * Removes all lines of the screen and resets the margins. The scrollback-buffers are kept, see {@link #clearScrollback()}.
+     */
+    public void clear() {
+        spare = null;
+        term.clear();
+        setMargins(0, model.getRows() - 1);
+        ensureSpace();
+        model.fire(TerminalModel.CONTENT);
+    }
+
+    public void scrollDown() {
+        scrollDown(1);
+    }
+
+    public void scrollUp() {
+        scrollUp(1);
+    }
+
+    /**
+     * Moves the lines between the margins up. The lines that leave the region at top are moved to the upper
+     * scrollback-buffer, at bottom lines of the lower scrollback-buffer or empty lines are inserted.
+     *
+     * @param n Number of lines.
+     */
+    public void scrollDown(int n) {
+        if (n <= 0)
+            return;
+        model.trace.record(TraceRecorder.SCROLL, n, marginTop, marginBottom);
+        getLine(marginBottom);
+        final int moved = n;
+        if (n == 1) {
+            Line bottom = bottomScrollBuffer.removeLast();
+            Line evicted = topScrollBuffer.addLast(term.scrollUp(marginTop, marginBottom, bottom == null ? takeSpare() : bottom));
+            if (evicted != null)
+                spare = evicted;
+        } else {
+            final int height = marginBottom - marginTop + 1;
+            for (; n > 0; n -= height) {
+                final int k = Math.min(n, height);
+                // The first k lines move to the bottom of the region, in order.
+                term.rotate(marginTop, marginBottom, k);
+                for (int y = marginBottom - k + 1; y <= marginBottom; ++y) {
+                    Line bottom = bottomScrollBuffer.removeLast();
+                    Line evicted = topScrollBuffer.addLast(term.set(y, bottom == null ? takeSpare() : bottom));
+                    if (evicted != null)
+                        spare = evicted;
+                }
+            }
+        }
+        markMoved(marginTop, marginBottom + 1, moved);
+        model.fire(TerminalModel.SCROLLBACK | TerminalModel.CONTENT);
+    }
+
+    /**
+     * Moves the lines between the margins down. The lines that leave the region at bottom are moved to the lower
+     * scrollback-buffer, at top lines of the upper scrollback-buffer or empty lines are inserted.
+     *
+     * @param n Number of lines.
+     */
+    public void scrollUp(int n) {
+        if (n <= 0)
+            return;
+        model.trace.record(TraceRecorder.SCROLL, -n, marginTop, marginBottom);
+        getLine(marginBottom);
+        final int moved = -n;
+        if (n == 1) {
+            Line top = topScrollBuffer.removeLast();
+            Line evicted = bottomScrollBuffer.addLast(term.scrollDown(marginTop, marginBottom, top == null ? takeSpare() : top));
+            if (evicted != null)
+                spare = evicted;
+        } else {
+            final int height = marginBottom - marginTop + 1;
+            for (; n > 0; n -= height) {
+                final int k = Math.min(n, height);
+                // The last k lines move to the top of the region, in order.
+                term.rotate(marginTop, marginBottom, -k);
+                for (int y = marginTop + k - 1; y >= marginTop; --y) {
+                    Line top = topScrollBuffer.removeLast();
+                    Line evicted = bottomScrollBuffer.addLast(term.set(y, top == null ? takeSpare() : top));
+                    if (evicted != null)
+                        spare = evicted;
+                }
+            }
+        }
+        markMoved(marginTop, marginBottom + 1, moved);
+        model.fire(TerminalModel.SCROLLBACK | TerminalModel.CONTENT);
+    }
+
+    /**
+     * Inserts empty lines (IL). The lines from y to the bottom margin move down, lines that leave the region are dropped.
+     *
+     * @param y The row, nothing is done if it is outside the margins.
+     * @param n Number of lines.
+     */
+    public void insertLines(int y, int n) {
+        if (y < marginTop || y > marginBottom || n <= 0)
+            return;
+        getLine(marginBottom);
+        n = Math.min(n, marginBottom - y + 1);
+        term.rotate(y, marginBottom, -n);
+        for (int i = y; i < y + n; ++i)
+            term.get(i).clear();
+        markMoved(y, marginBottom + 1, -n);
+        model.fire(TerminalModel.CONTENT);
+    }
+
+    /**
+     * Deletes lines (DL). The lines below move up to y, empty lines are inserted at the bottom margin.
+     *
+     * @param y The row, nothing is done if it is outside the margins.
+     * @param n Number of lines.
+     */
+    public void deleteLines(int y, int n) {
+        if (y < marginTop || y > marginBottom || n <= 0)
+            return;
+        getLine(marginBottom);
+        n = Math.min(n, marginBottom - y + 1);
+        term.rotate(y, marginBottom, n);
+        for (int i = marginBottom - n + 1; i <= marginBottom; ++i)
+            term.get(i).clear();
+        markMoved(y, marginBottom + 1, n);
+        model.fire(TerminalModel.CONTENT);
+    }
+
+    /**
+     * Sets a run of characters with current attributes at the zero based coordinates.<br>
+     * Doesn't wrap or scroll, the caller has to ensure that the run fits into the line.
+     */
+    public void setChars(int x, int y, int[] chars, int offset, int length) {
+        final Line line = getLine(y);
+        line.splitWide(x, x + length);
+        line.set(x, chars, offset, length, model.getAttributes());
+        markDirty(y, y + 1);
+        model.fire(TerminalModel.CONTENT);
+    }
+
+    /**
+     * Sets a {@link CharWidth wide} character with current attributes at the zero based coordinates.
+     * The character takes this and the next cell.<br>
+     * Doesn't wrap or scroll, the caller has to ensure that both cells fit into the line.
+     */
+    public void setWide(int x, int y, int cp) {
+        final Line line = getLine(y);
+        final int attributes = model.getAttributes();
+        line.splitWide(x, x + 2);
+        line.set(x, cp, attributes);
+        line.set(x + 1, Line.WIDE_TAIL, attributes);
+        markDirty(y, y + 1);
+        model.fire(TerminalModel.CONTENT);
+    }
+
+    /**
+     * Attaches a combining mark to the character in a cell, see {@link Graphemes}.
+     * The mark is dropped if the cell is empty or no cluster id is free.
+     */
+    public void combine(int x, int y, int mark) {
+        final Line line = getLine(y);
+        if (x > 0 && x < line.getLength() && line.getCodePoint(x) == Line.WIDE_TAIL)
+            --x;
+        if (x >= 0 && x < line.getLength()) {
+            final long cell = line.getCell(x);
+            final int cp = Line.codePoint(cell);
+            if (cp != 0 && cp != Line.WIDE_TAIL) {
+                line.set(x, model.combine(cp, mark), Line.attributes(cell));
+                markDirty(y, y + 1);
+                model.fire(TerminalModel.CONTENT);
+            }
+        }
+    }
+
+    /**
+     * Sets a character with current attributes at the zero based coordinates.<br>
+     * Scrolls, if the position is outside the margin.
+     */
+    public void setCharAt(int x, int y, int b) {
+        if (y >= 0 && x >= 0) {
+            if (y > marginBottom) {
+                scrollDown(y - marginBottom);
+                y = marginBottom;
+            }
+            if (getLine(y).set(x, b, model.getAttributes())) {
+                markDirty(y, y + 1);
+                model.fire(TerminalModel.CONTENT);
+            }
+        }
+    }
+}
@@ -0,0 +1,249 @@
+/**
+ * Copyright 2025, Bernd Wengenroth.
+ * This is free and unencumbered software released into the public domain.
+ * Check LICENSE for details.
+ */
+package com.bw.sshTerm.model;
+
+import java.util.BitSet;
+
+/**
+ * Immutable snapshot of the active screen and the caret, published by the {@link TerminalModel} at the end of each
+ * batch of updates, see {@link TerminalModel#getSnapshot()}.<p>
+ * Views paint from the latest snapshot without holding the lock of the model. While painting they
+ * {@link TerminalModel#acquireSnapshot() acquire} it, so that the attribute and cluster ids of its cells stay valid.
+ * Rows that didn't change since the previous snapshot share the same {@link Line} instance, so a view can find
+ * the changed rows by comparing the lines of two snapshots. Lines that were moved by scrolling keep their instance
+ * at the new row. The lines of a snapshot must not be modified.<br>
+ * A snapshot also contains the rows of the scrollback-buffer that a view requested by
+ * {@link TerminalModel#setScrollbackView(int, int)}, so that scrolled back views don't need the lock either.
+ */
+public final class ScreenSnapshot {
+
+    /**
+     * Number of columns.
+     */
+    public final int columns;
+
+    /**
+     * Number of rows.
+     */
+    public final int rows;
+
+    /**
+     * Zero based column of the caret.
+     */
+    public final int caretX;
+
+    /**
+     * Zero based row of the caret.
+     */
+    public final int caretY;
+
+    /**
+     * Id of the active screen.
+     */
+    public final int activeScreen;
+
+    /**
+     * Absolute number of the first line of the screen, see {@link SearchHit}.
+     */
+    public final long firstLineNumber;
+
+    /**
+     * Number of rows of the scrollback-buffer above the screen, if reflowed to the number of columns.
+     */
+    public final int scrollbackRows;
+
+    /**
+     * Number of lines of the scrollback-buffer below the screen.
+     */
+    public final int bottomLines;
+
+    private final Line[] lines;
+    private final ScrollbackView scrollbackView;
+
+    /**
+     * Copied rows of the scrollback-buffer. Shared by the next snapshots, as long as the buffer, the width and the
+     * requested rows don't change.
+     */
+    private static final class ScrollbackView {
+        final long request;
+        final int columns;
+        final int modCount;
+        final long firstLineNumber;
+        // The rows starting at the requested row, absolute number and first column of the line of each row.
+        final Line[] rows;
+        final long[] lineNumbers;
+        final int[] lineColumns;
+
+        ScrollbackView(long request, int columns, ScrollbackBuffer scrollback) {
+            this.request = request;
+            this.columns = columns;
+            modCount = scrollback.getModCount();
+            firstLineNumber = scrollback.getFirstLineNumber();
+            final int from = (int) (request >>> 32);
+            final int to = Math.min(from + (int) request, scrollback.getRowCount(columns));
+            rows = new Line[Math.max(0, to - from)];
+            lineNumbers = new long[rows.length];
+            lineColumns = new int[rows.length];
+            for (int i = 0; i < rows.length; ++i) {
+                final long position = scrollback.getRowPosition(columns, from + i);
+                lineNumbers[i] = firstLineNumber + (position >>> 32);
+                lineColumns[i] = (int) position;
+                rows[i] = copy(scrollback.getRow(columns, from + i));
+            }
+        }
+
+        /**
+         * Gets the view of the requested rows, the previous view if it is still valid.
+         *
+         * @param request First row in the upper 32 bits, number of rows in the lower 32 bits. 0 if no rows are requested.
+         */
+        static ScrollbackView next(ScrollbackView previous, long request, int columns, ScrollbackBuffer scrollback) {
+            if ((int) request <= 0)
+                return null;
+            if (previous != null && previous.request == request && previous.columns == columns
+                    && previous.modCount == scrollback.getModCount() && previous.firstLineNumber == scrollback.getFirstLineNumber())
+                return previous;
+            return new ScrollbackView(request, columns, scrollback);
+        }
+
+        int index(int row) {
+            final int i = row - (int) (request >>> 32);
+            return i >= 0 && i < rows.length ? i : -1;
+        }
+    }
+
+    private ScreenSnapshot(int columns, int rows, int caretX, int caretY, int activeScreen, long firstLineNumber,
+                  int scrollbackRows, int bottomLines, Line[] lines, ScrollbackView scrollbackView) {
+        this.columns = columns;
+        this.rows = rows;
+        this.caretX = caretX;
+        this.caretY = caretY;
+        this.activeScreen = activeScreen;
+        this.firstLineNumber = firstLineNumber;
+        this.scrollbackRows = scrollbackRows;
+        this.bottomLines = bottomLines;
+        this.lines = lines;
+        this.scrollbackView = scrollbackView;
+    }
+
+    private static Line copy(Line source) {
+        final Line line = new Line(source.getLength());
+        line.copy(0, source, 0, source.getLength());
+        line.setWrapped(source.isWrapped());
+        return line;
+    }
+
+    /**
+     * Creates the next snapshot. Only the changed rows are copied, the other rows are taken from the previous snapshot.
+     *
+     * @param previous The previous snapshot, null if there is none.
+     * @param model    The model. The caller holds the lock.
+     * @param changed  The rows of the active screen that were changed since the previous snapshot.
+     * @param origins  For each unchanged row, the row in the previous snapshot.
+     */
+    static ScreenSnapshot next(ScreenSnapshot previous, TerminalModel model, BitSet changed, int[] origins) {
+        final Screen screen = model.getScreen();
+        final LineRing term = screen.term;
+        final int columns = model.getColumns();
+        final Line[] lines = new Line[term.size()];
+        final boolean all = previous == null || previous.lines.length != lines.length
+                || previous.columns != columns || previous.activeScreen != model.getActiveScreen();
+        for (int y = 0; y < lines.length; ++y) {
+            if (all || changed.get(y)) {
+                lines[y] = copy(term.get(y));
+            } else {
+                lines[y] = previous.lines[origins[y]];
+            }
+        }
+        final ScrollbackBuffer scrollback = screen.topScrollBuffer;
+        final boolean main = model.getActiveScreen() == 0;
+        return new ScreenSnapshot(columns, model.getRows(), model.getCaretX(), model.getCaretY(), model.getActiveScreen(),
+                scrollback.getFirstLineNumber() + scrollback.size(),
+                main ? scrollback.getRowCount(columns) : 0,
+                screen.bottomScrollBuffer.size(), lines,
+                main ? ScrollbackView.next(previous == null ? null : previous.scrollbackView, model.getScrollbackView(), columns, scrollback) : null);
+    }
+
+    /**
+     * Gets the number of lines of the screen.
+     */
+    public int getLineCount() {
+        return lines.length;
+    }
+
+    /**
+     * Gets a line of the screen.
+     *
+     * @param y The zero based row.
+     * @return The line, must not be modified.
+     */
+    public Line getLine(int y) {
+        return lines[y];
+    }
+
+    /**
+     * Gets a row of the scrollback-buffer, reflowed to the columns of the snapshot.
+     * Only the rows requested by {@link TerminalModel#setScrollbackView(int, int)} are contained.
+     *
+     * @param row The zero based row, see {@link #scrollbackRows}.
+     * @return The row, must not be modified. Null if the row is not contained.
+     */
+    public Line getScrollbackRow(int row) {
+        final int i = scrollbackView == null ? -1 : scrollbackView.index(row);
+        return i < 0 ? null : scrollbackView.rows[i];
+    }
+
+    /**
+     * Gets the absolute number of the line that is shown at the start of a row of the scrollback-buffer, see {@link SearchHit}.
+     *
+     * @param row The zero based row.
+     * @return The line number, -1 if the row is not contained.
+     */
+    public long getScrollbackLineNumber(int row) {
+        final int i = scrollbackView == null ? -1 : scrollbackView.index(row);
+        return i < 0 ? -1 : scrollbackView.lineNumbers[i];
+    }
+
+    /**
+     * Gets the column of the line that is shown at the start of a row of the scrollback-buffer.
+     *
+     * @param row The zero based row.
+     * @return The column, 0 if the row is not contained.
+     */
+    public int getScrollbackColumn(int row) {
+        final int i = scrollbackView == null ? -1 : scrollbackView.index(row);
+        return i < 0 ? 0 : scrollbackView.lineColumns[i];
+    }
+
+    /**
+     * Checks if another snapshot contains the same rows of the scrollback-buffer.
+     */
+    public boolean hasSameScrollbackRows(ScreenSnapshot other) {
+        return other != null && other.scrollbackView == scrollbackView;
+    }
+
+    /**
+     * Marks the attribute ids used by the lines of the snapshot.
+     */
+    void markAttributes(boolean[] used) {
+        for (Line line : lines)
+            line.markAttributes(used);
+        if (scrollbackView != null)
+            for (Line line : scrollbackView.rows)
+                line.markAttributes(used);
+    }
+
+    /**
+     * Marks the cluster ids used by the lines of the snapshot.
+     */
+    void markClusters(boolean[] used) {
+        for (Line line : lines)
+            line.markClusters(used);
+        if (scrollbackView != null)
+            for (Line line : scrollbackView.rows)
+                line.markClusters(used);
+    }
+}
@@ -0,0 +1,646 @@
+/**
+ * Copyright 2025, Bernd Wengenroth.
+ * This is free and unencumbered software released into the public domain.
+ * Check LICENSE for details.
+ */
+package com.bw.sshTerm.model;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The scrollback-buffer above the screen.<p>
+ * The newest lines are kept as {@link Line lines} ("hot"). Lines that fall more than the
+ * {@link #setColdDistance(int) cold distance} behind the screen are collected into blocks, which are
+ * encoded by {@link LineCodec} in the background ("cold"). Cold lines are decoded on access, the decoded blocks
+ * are kept in a small LRU cache.<br>
+ * If the {@link #setLimit(int) limit} is reached, the oldest lines are dropped or, if a {@link #setSpill(ScrollbackSpill) spill}
+ * is set, moved to the spill file.<p>
+ * The lines are stored as they were written. To show them at another width, the buffer is also a list of rows
+ * ({@link #getRowCount(int)}, {@link #getRow(int, int)}), in which {@link Line#isWrapped() wrapped} lines are reflowed.
+ * Reflowing is lazy: Only the rows that are requested are built, a {@link WrapIndex} over the line lengths maps rows to lines.
+ */
+public final class ScrollbackBuffer extends AbstractList<Line> implements RandomAccess {
+
+    /**
+     * Number of lines in a cold block.
+     */
+    static final int BLOCK_LINES = 256;
+
+    /**
+     * Number of decoded blocks to keep.
+     */
+    private static final int CACHED_BLOCKS = 8;
+
+    /**
+     * Encodes the cold blocks of all sessions.
+     */
+    private static final ExecutorService ENCODER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "Scrollback Encoder");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final AttributeTable attributes;
+    private final Graphemes graphemes;
+    private final LineRing hot = new LineRing();
+    private final WrapIndex wraps = new WrapIndex();
+    private final List<Block> blocks = new ArrayList<>();
+    // Number of dropped lines in the first block.
+    private int coldFirst = 0;
+    private int coldSize = 0;
+    private int limit;
+    private int coldDistance;
+    private boolean compressed = false;
+    private ScrollbackSpill spill;
+    // Number of lines in the spill.
+    private int spilled = 0;
+    // Search filters of the spilled blocks, null if not known yet. Also modified by searches.
+    private final List<long[]> spillFilters = new ArrayList<>();
+    // Incremented if the spilled blocks are replaced.
+    private int spillGeneration = 0;
+    // Number of lines that were dropped.
+    private long dropped = 0;
+
+    /**
+     * Decoded blocks, the least recently used are dropped. Guarded by the attribute table, as decoding interns
+     * attributes and clusters and the lines have to be marked consistently by {@link #markAttributes(boolean[])}
+     * and {@link #markClusters(boolean[])}.
+     */
+    private final Map<Object, Line[]> decoded = new LinkedHashMap<>(CACHED_BLOCKS * 2, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Object, Line[]> eldest) {
+            return size() > CACHED_BLOCKS;
+        }
+    };
+
+    /**
+     * A block of cold lines. Either the lines or the encoded data are set.
+     */
+    private static final class Block {
+        Line[] lines = new Line[BLOCK_LINES];
+        byte[] data;
+        boolean deflated;
+        // Search filter, set together with the encoded data.
+        long[] filter;
+        int count;
+        // Incremented on modification, encoding results of older versions are discarded.
+        int version;
+    }
+
+    /**
+     * Creates a buffer.
+     *
+     * @param attributes   The table to resolve the attribute ids.
+     * @param graphemes    The table to resolve the cluster ids.
+     * @param limit        Maximal number of lines.
+     * @param coldDistance Number of lines to keep hot.
+     */
+    public ScrollbackBuffer(AttributeTable attributes, Graphemes graphemes, int limit, int coldDistance) {
+        this.attributes = attributes;
+        this.graphemes = graphemes;
+        this.limit = Math.max(limit, 1);
+        this.coldDistance = Math.max(coldDistance, 0);
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Sets the maximal number of lines. If the buffer contains more lines, the oldest lines are dropped.
+     */
+    public void setLimit(int limit) {
+        this.limit = Math.max(limit, 1);
+        evict();
+    }
+
+    public int getColdDistance() {
+        return coldDistance;
+    }
+
+    /**
+     * Sets the number of lines that are kept as {@link Line lines}. Older lines are encoded.
+     *
+     * @param lines Number of lines, {@link Integer#MAX_VALUE} to keep all lines hot.
+     */
+    public void setColdDistance(int lines) {
+        coldDistance = Math.max(lines, 0);
+        cool();
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * Sets if the cold blocks are compressed. Affects only new blocks.
+     */
+    public void setCompressed(boolean compressed) {
+        this.compressed = compressed;
+    }
+
+    public ScrollbackSpill getSpill() {
+        return spill;
+    }
+
+    /**
+     * Sets a file to move the oldest cold lines to, instead of dropping them. If no lines are cold, the oldest hot lines
+     * are encoded and moved.<br>
+     * The {@link #setLimit(int) limit} then applies only to the lines in memory. Lines in the spill are
+     * decoded on access like cold lines, but they are not moved back to the screen by reverse scrolling.
+     * The blocks that are already in the spill (e.g. of a restored session) are added as oldest lines.<br>
+     * The spill is not closed by the buffer.
+     *
+     * @param spill The spill or null.
+     */
+    public void setSpill(ScrollbackSpill spill) {
+        this.spill = spill;
+        wraps.removeFirst(spilled);
+        spilled = spill == null ? 0 : spill.size() * BLOCK_LINES;
+        // The lengths of restored lines are not known, they are shown as they are.
+        wraps.addFirst(spilled);
+        synchronized (spillFilters) {
+            ++spillGeneration;
+            spillFilters.clear();
+            for (int i = spilled / BLOCK_LINES; i > 0; --i)
+                spillFilters.add(null);
+        }
+        synchronized (attributes) {
+            decoded.clear();
+        }
+        ++modCount;
+        evict();
+    }
+
+    /**
+     * Gets the number of modifications, incremented whenever lines are added or removed.
+     */
+    int getModCount() {
+        return modCount;
+    }
+
+    /**
+     * Gets the absolute number of the first line. This is the number of lines that were dropped.
+     */
+    public long getFirstLineNumber() {
+        return dropped;
+    }
+
+    /**
+     * Gets the number of lines in the spill.
+     */
+    public int getSpilledSize() {
+        return spilled;
+    }
+
+    /**
+     * Gets the number of cold lines in memory.
+     */
+    public int getColdSize() {
+        return coldSize;
+    }
+
+    @Override
+    public int size() {
+        return spilled + coldSize + hot.size();
+    }
+
+    @Override
+    public Line get(int index) {
+        if (index < spilled && index >= 0)
+            return getSpilledLine(index / BLOCK_LINES, index % BLOCK_LINES);
+        index -= spilled;
+        if (index < coldSize && index >= 0) {
+            final int i = index + coldFirst;
+            return getLine(blocks.get(i / BLOCK_LINES), i % BLOCK_LINES);
+        }
+        return hot.get(index - coldSize);
+    }
+
+    /**
+     * Gets the number of rows if the lines are reflowed to a width.
+     *
+     * @param columns The width.
+     */
+    public int getRowCount(int columns) {
+        return wraps.getRowCount(columns);
+    }
+
+    /**
+     * Gets a row of the lines reflowed to a width.<br>
+     * If the row is a line as it was written, the line is returned. Otherwise, a new line with the cells of the row is created.
+     *
+     * @param columns The width.
+     * @param row     The zero based row, see {@link #getRowCount(int)}.
+     * @return The row, null if it doesn't exist.
+     */
+    public Line getRow(int columns, int row) {
+        final long position = wraps.findRow(columns, row);
+        if (position < 0)
+            return null;
+        int index = (int) (position >>> 32);
+        int from = (int) position;
+        Line line = get(index);
+        if (from == 0 && (wraps.isWrapped(index) ? line.getLength() == columns : line.getLength() <= columns))
+            return line;
+        // A wide character is not split, see WrapIndex.
+        final Line result = new Line(columns);
+        int n = line.fit(from, columns);
+        int x = result.copy(0, line, from, n == 0 && columns == 1 ? 1 : n);
+        while (x < columns && n == line.getLength() - from && wraps.isWrapped(index) && ++index < size()) {
+            line = get(index);
+            from = 0;
+            n = line.fit(0, columns - x);
+            x += result.copy(x, line, 0, n);
+        }
+        return result;
+    }
+
+    /**
+     * Gets the line that is shown at the start of a row, see {@link #getRow(int, int)}.
+     *
+     * @param columns The width.
+     * @param row     The zero based row.
+     * @return The index of the line in the upper 32 bits and the column of the first cell of the row in the lower 32 bits.
+     * -1 if the row doesn't exist.
+     */
+    public long getRowPosition(int columns, int row) {
+        return wraps.findRow(columns, row);
+    }
+
+    /**
+     * Gets the row that shows a cell of a line, see {@link #getRow(int, int)}.
+     *
+     * @param columns The width.
+     * @param index   The index of the line.
+     * @param column  The column of the cell in the line.
+     */
+    public int getRowOf(int columns, int index, int column) {
+        return wraps.getRow(columns, Math.min(Math.max(index, 0), size()), Math.max(column, 0));
+    }
+
+    /**
+     * Appends a line.
+     *
+     * @return A line that was dropped and can be re-used, or null.
+     */
+    public Line addLast(Line line) {
+        ++modCount;
+        hot.addLast(line);
+        wraps.addLast(line.getLength(), line.isWrapped(), line.getWideColumns());
+        cool();
+        return evict();
+    }
+
+    /**
+     * Removes the newest line.
+     *
+     * @return The removed line or null if the buffer is empty.
+     */
+    public Line removeLast() {
+        if (hot.isEmpty() && coldSize == 0)
+            return null;
+        ++modCount;
+        wraps.removeLast();
+        if (hot.size() > 0)
+            return hot.removeLast();
+        final Block block = blocks.get(blocks.size() - 1);
+        Line line;
+        synchronized (attributes) {
+            synchronized (block) {
+                if (block.lines == null) {
+                    // The block gets modified again, so it has to be plain lines.
+                    block.lines = LineCodec.decode(block.data, block.deflated, attributes, graphemes);
+                    block.data = null;
+                    decoded.remove(block);
+                }
+                ++block.version;
+                block.filter = null;
+                // The encoder may still read the array and the lines of the block, both are not modified.
+                block.lines = block.lines.clone();
+                final Line last = block.lines[--block.count];
+                block.lines[block.count] = null;
+                line = new Line(last.getLength());
+                line.copy(0, last, 0, last.getLength());
+                line.setWrapped(last.isWrapped());
+            }
+        }
+        --coldSize;
+        if (block.count == (blocks.size() == 1 ? coldFirst : 0)) {
+            blocks.remove(blocks.size() - 1);
+            if (blocks.isEmpty())
+                coldFirst = 0;
+        }
+        return line;
+    }
+
+    @Override
+    public void clear() {
+        if (spill != null) {
+            try {
+                spill.clear();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        dropped += size();
+        spilled = 0;
+        synchronized (spillFilters) {
+            ++spillGeneration;
+            spillFilters.clear();
+        }
+        hot.clear();
+        wraps.clear();
+        blocks.clear();
+        coldFirst = 0;
+        coldSize = 0;
+        synchronized (attributes) {
+            decoded.clear();
+        }
+        ++modCount;
+    }
+
+    /**
+     * Marks the attribute ids used by the lines that are not encoded.
+     * The caller has to hold the lock of the attribute table.
+     */
+    void markAttributes(boolean[] used) {
+        for (Line l : hot)
+            l.markAttributes(used);
+        for (Block block : blocks) {
+            synchronized (block) {
+                if (block.lines != null)
+                    for (int i = 0; i < block.count; ++i)
+                        block.lines[i].markAttributes(used);
+            }
+        }
+        for (Line[] lines : decoded.values())
+            for (Line l : lines)
+                l.markAttributes(used);
+    }
+
+    /**
+     * Marks the cluster ids used by the lines that are not encoded.
+     * The caller has to hold the lock of the attribute table.
+     */
+    void markClusters(boolean[] used) {
+        for (Line l : hot)
+            l.markClusters(used);
+        for (Block block : blocks) {
+            synchronized (block) {
+                if (block.lines != null)
+                    for (int i = 0; i < block.count; ++i)
+                        block.lines[i].markClusters(used);
+            }
+        }
+        for (Line[] lines : decoded.values())
+            for (Line l : lines)
+                l.markClusters(used);
+    }
+
+    /**
+     * Moves lines that are behind the cold distance to the cold blocks.
+     */
+    private void cool() {
+        while (hot.size() > coldDistance) {
+            Block block = blocks.isEmpty() ? null : blocks.get(blocks.size() - 1);
+            if (block == null || block.count == BLOCK_LINES) {
+                block = new Block();
+                blocks.add(block);
+            }
+            synchronized (block) {
+                block.lines[block.count++] = hot.removeFirst();
+                ++block.version;
+            }
+            ++coldSize;
+            if (block.count == BLOCK_LINES)
+                encode(block);
+        }
+    }
+
+    /**
+     * Drops or spills the oldest lines if the limit is exceeded.
+     *
+     * @return The last dropped hot line or null.
+     */
+    private Line evict() {
+        Line evicted = null;
+        while ((coldSize + hot.size()) > limit) {
+            if (spill != null && coldSize > 0 && coldFirst == 0) {
+                // Only complete blocks are moved to the spill.
+                final Block first = blocks.get(0);
+                if (first.count < BLOCK_LINES)
+                    break;
+                blocks.remove(0);
+                coldSize -= BLOCK_LINES;
+                synchronized (attributes) {
+                    decoded.remove(first);
+                }
+                if (spill(first)) {
+                    spilled += BLOCK_LINES;
+                } else {
+                    dropped += BLOCK_LINES;
+                    wraps.removeFirst(BLOCK_LINES);
+                }
+            } else if (spill != null && coldSize == 0 && hot.size() >= BLOCK_LINES) {
+                // All lines are hot, e.g. if encoding is disabled. The oldest lines are encoded for the spill.
+                final Block first = new Block();
+                while (first.count < BLOCK_LINES)
+                    first.lines[first.count++] = hot.removeFirst();
+                if (spill(first)) {
+                    spilled += BLOCK_LINES;
+                } else {
+                    dropped += BLOCK_LINES;
+                    wraps.removeFirst(BLOCK_LINES);
+                }
+            } else if (coldSize > 0) {
+                ++dropped;
+                wraps.removeFirst(1);
+                --coldSize;
+                final Block first = blocks.get(0);
+                if (++coldFirst == first.count) {
+                    blocks.remove(0);
+                    coldFirst = 0;
+                    synchronized (attributes) {
+                        decoded.remove(first);
+                    }
+                }
+            } else {
+                ++dropped;
+                wraps.removeFirst(1);
+                evicted = hot.removeFirst();
+            }
+            ++modCount;
+        }
+        return evicted;
+    }
+
+    private boolean spill(Block block) {
+        final byte[] data;
+        final boolean deflated;
+        final long[] filter;
+        synchronized (block) {
+            if (block.data == null) {
+                // Not yet encoded by the background thread.
+                block.filter = TrigramFilter.create(block.lines, block.count, graphemes);
+                block.data = LineCodec.encode(block.lines, block.count, attributes, graphemes, compressed);
+                block.deflated = compressed;
+                block.lines = null;
+                ++block.version;
+            }
+            data = block.data;
+            deflated = block.deflated;
+            filter = block.filter;
+        }
+        try {
+            spill.append(data, deflated);
+            synchronized (spillFilters) {
+                spillFilters.add(filter);
+            }
+            return true;
+        } catch (IOException e) {
+            // The lines are lost.
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Collects the lines to search. The caller has to hold the lock of the model.
+     * Encoded lines are only referenced and decoded later by the search.
+     *
+     * @param sources The list to add the sources to.
+     * @return The absolute line number behind the last line.
+     */
+    long collectSearchSources(List<ScrollbackSearch.Source> sources) {
+        long line = dropped;
+        if (spilled > 0) {
+            final ScrollbackSpill s = spill;
+            final int generation;
+            final long[][] filters;
+            synchronized (spillFilters) {
+                generation = spillGeneration;
+                filters = spillFilters.toArray(new long[0][]);
+            }
+            for (int i = 0; i < filters.length; ++i) {
+                final int index = i;
+                sources.add(new ScrollbackSearch.Source(line, filters[i], wraps.isWrapped((int) (line - dropped) + BLOCK_LINES - 1)) {
+                    @Override
+                    String[] texts(BitSet wrapped) throws IOException {
+                        final String[] texts = LineCodec.decodeText(s.read(index), s.isDeflated(index), wrapped);
+                        if (filter == null) {
+                            final long[] f = TrigramFilter.create(texts, wrapped);
+                            synchronized (spillFilters) {
+                                if (generation == spillGeneration && spillFilters.get(index) == null)
+                                    spillFilters.set(index, f);
+                            }
+                        }
+                        return texts;
+                    }
+                });
+                line += BLOCK_LINES;
+            }
+        }
+        for (int bi = 0; bi < blocks.size(); ++bi) {
+            final Block block = blocks.get(bi);
+            final int first = bi == 0 ? coldFirst : 0;
+            synchronized (block) {
+                if (block.lines != null) {
+                    sources.add(ScrollbackSearch.Source.of(line, block.lines, first, block.count, graphemes));
+                } else {
+                    final byte[] data = block.data;
+                    final boolean deflated = block.deflated;
+                    final boolean continued = wraps.isWrapped((int) (line - dropped) + block.count - first - 1);
+                    sources.add(new ScrollbackSearch.Source(line, block.filter, continued) {
+                        @Override
+                        String[] texts(BitSet wrapped) {
+                            if (first == 0)
+                                return LineCodec.decodeText(data, deflated, wrapped);
+                            final BitSet all = new BitSet();
+                            final String[] texts = LineCodec.decodeText(data, deflated, all);
+                            wrapped.or(all.get(first, texts.length));
+                            return Arrays.copyOfRange(texts, first, texts.length);
+                        }
+                    });
+                }
+                line += block.count - first;
+            }
+        }
+        // An empty source would hide that the last cold line continues on the screen.
+        if (hot.size() > 0)
+            sources.add(ScrollbackSearch.Source.of(line, hot.toArray(new Line[0]), 0, hot.size(), graphemes));
+        return line + hot.size();
+    }
+
+    private Line getSpilledLine(int block, int index) {
+        synchronized (attributes) {
+            final Integer key = block;
+            Line[] lines = decoded.get(key);
+            if (lines == null) {
+                final ScrollbackSpill s = spill;
+                if (s == null)
+                    return new Line(1);
+                try {
+                    lines = LineCodec.decode(s.read(block), s.isDeflated(block), attributes, graphemes);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    return new Line(1);
+                }
+                decoded.put(key, lines);
+            }
+            return lines[index];
+        }
+    }
+
+    private void encode(final Block block) {
+        final Line[] lines;
+        final int version;
+        synchronized (block) {
+            lines = block.lines;
+            version = block.version;
+        }
+        final boolean deflate = compressed;
+        // Read without the lock of the block, removeLast replaces the array instead of modifying it.
+        ENCODER.execute(() -> {
+            byte[] data = LineCodec.encode(lines, BLOCK_LINES, attributes, graphemes, deflate);
+            long[] filter = TrigramFilter.create(lines, BLOCK_LINES, graphemes);
+            synchronized (block) {
+                if (block.version == version) {
+                    block.filter = filter;
+                    block.data = data;
+                    block.deflated = deflate;
+                    block.lines = null;
+                }
+            }
+        });
+    }
+
+    private Line getLine(Block block, int index) {
+        final byte[] data;
+        final boolean deflated;
+        synchronized (block) {
+            if (block.lines != null)
+                return block.lines[index];
+            data = block.data;
+            deflated = block.deflated;
+        }
+        synchronized (attributes) {
+            Line[] lines = decoded.get(block);
+            if (lines == null) {
+                lines = LineCodec.decode(data, deflated, attributes, graphemes);
+                decoded.put(block, lines);
+            }
+            return lines[index];
+        }
+    }
+}
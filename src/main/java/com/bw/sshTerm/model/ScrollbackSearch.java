@@ -0,0 +1,400 @@
+/**
+ * Copyright 2025, Bernd Wengenroth.
+ * This is free and unencumbered software released into the public domain.
+ * Check LICENSE for details.
+ */
+package com.bw.sshTerm.model;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Searches the scrollback-buffer and the screen of a {@link TerminalModel}.<p>
+ * The lines are collected while holding the lock of the model, the search itself runs in the background.
+ * Blocks of encoded lines carry a {@link TrigramFilter}, blocks that can't contain the text
+ * (or the literal parts of a regular expression) are skipped without decoding them.<br>
+ * Wrapped lines are joined with the lines they continue in, so a match may span several lines.<br>
+ * If there are more hits than requested, the newest hits are returned.
+ */
+public final class ScrollbackSearch {
+
+    private static final ExecutorService SEARCHER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "Scrollback Search");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private ScrollbackSearch() {
+    }
+
+    /**
+     * Lines to search.
+     */
+    abstract static class Source {
+        final long firstLine;
+        // Filter of the lines, null if not known.
+        final long[] filter;
+        // True if the last line is wrapped and continues in the first line of the next source.
+        final boolean continued;
+
+        Source(long firstLine, long[] filter, boolean continued) {
+            this.firstLine = firstLine;
+            this.filter = filter;
+            this.continued = continued;
+        }
+
+        /**
+         * Gets the texts of the lines.
+         *
+         * @param wrapped Receives the indices of the wrapped lines.
+         */
+        abstract String[] texts(BitSet wrapped) throws IOException;
+
+        /**
+         * Creates a source from lines. The texts are copied immediately.
+         */
+        static Source of(long firstLine, Line[] lines, int from, int to, Graphemes graphemes) {
+            final String[] texts = new String[to - from];
+            final BitSet flags = new BitSet();
+            for (int i = from; i < to; ++i) {
+                texts[i - from] = text(lines[i], graphemes);
+                if (lines[i].isWrapped())
+                    flags.set(i - from);
+            }
+            return new Source(firstLine, null, to > from && lines[to - 1].isWrapped()) {
+                @Override
+                String[] texts(BitSet wrapped) {
+                    wrapped.or(flags);
+                    return texts;
+                }
+            };
+        }
+    }
+
+    /**
+     * Searches a text.
+     *
+     * @param model      The model.
+     * @param text       The text to search.
+     * @param ignoreCase If true, the case is ignored.
+     * @param maxHits    Maximal number of hits.
+     * @return The hits, ordered by position.
+     */
+    public static CompletableFuture<List<SearchHit>> search(TerminalModel model, String text, boolean ignoreCase, int maxHits) {
+        return search(model, Pattern.compile(Pattern.quote(text), flags(ignoreCase)), List.of(text), maxHits);
+    }
+
+    /**
+     * Searches a regular expression.
+     *
+     * @param model      The model.
+     * @param regex      The regular expression, see {@link Pattern}.
+     * @param ignoreCase If true, the case is ignored.
+     * @param maxHits    Maximal number of hits.
+     * @return The hits, ordered by position.
+     * @throws java.util.regex.PatternSyntaxException If the expression is invalid.
+     */
+    public static CompletableFuture<List<SearchHit>> searchRegex(TerminalModel model, String regex, boolean ignoreCase, int maxHits) {
+        return search(model, Pattern.compile(regex, flags(ignoreCase)), requiredLiterals(regex), maxHits);
+    }
+
+    private static int flags(boolean ignoreCase) {
+        return ignoreCase ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : 0;
+    }
+
+    private static CompletableFuture<List<SearchHit>> search(TerminalModel model, Pattern pattern, List<String> literals, int maxHits) {
+        final List<Source> sources = new ArrayList<>();
+        final ReentrantLock lock = model.getLock();
+        lock.lock();
+        try {
+            final Screen screen = model.getScreen();
+            final long line = screen.topScrollBuffer.collectSearchSources(sources);
+            sources.add(Source.of(line, screen.term.toArray(new Line[0]), 0, screen.term.size(), model.getGraphemes()));
+        } finally {
+            lock.unlock();
+        }
+        final CompletableFuture<List<SearchHit>> result = new CompletableFuture<>();
+        SEARCHER.execute(() -> {
+            try {
+                result.complete(search(sources, pattern, literals, maxHits, result));
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        });
+        return result;
+    }
+
+    private static List<SearchHit> search(List<Source> sources, Pattern pattern, List<String> literals, int maxHits,
+                                          CompletableFuture<?> result) throws IOException {
+        final List<SearchHit> hits = new ArrayList<>();
+        final List<SearchHit> lineHits = new ArrayList<>();
+        final Matcher matcher = pattern.matcher("");
+        final BitSet wrapped = new BitSet();
+        // Texts of the first lines of the newer sources that continue the last line of the current source.
+        final List<String> tail = new ArrayList<>();
+        // From the newest to the oldest lines, so that the newest hits are kept.
+        for (int si = sources.size() - 1; si >= 0 && hits.size() < maxHits && !result.isDone(); --si) {
+            final Source source = sources.get(si);
+            final boolean continues = si > 0 && sources.get(si - 1).continued;
+            // The filters don't know the texts of the neighbours, joined sources are always searched.
+            if (source.filter != null && !source.continued && !continues && !mayContain(source.filter, literals))
+                continue;
+            wrapped.clear();
+            final String[] texts = source.texts(wrapped);
+            final List<String> lines = Arrays.asList(texts);
+            // End of the logical line, lines behind it were searched.
+            int end = texts.length;
+            for (int li = texts.length - 1; li >= 0 && hits.size() < maxHits; --li) {
+                if (li > 0 && wrapped.get(li - 1))
+                    continue;
+                if (li == 0 && continues) {
+                    tail.addAll(0, lines.subList(0, end));
+                    break;
+                }
+                List<String> logical = lines.subList(li, end);
+                if (end == texts.length && !tail.isEmpty()) {
+                    logical = new ArrayList<>(logical);
+                    logical.addAll(tail);
+                    tail.clear();
+                }
+                find(matcher, source.firstLine + li, logical, lineHits);
+                for (int h = lineHits.size() - 1; h >= 0 && hits.size() < maxHits; --h)
+                    hits.add(lineHits.get(h));
+                end = li;
+            }
+        }
+        Collections.reverse(hits);
+        return hits;
+    }
+
+    /**
+     * Searches a logical line. A match that spans wrapped lines gets one hit per line.
+     *
+     * @param matcher   The matcher of the pattern.
+     * @param firstLine The number of the first line.
+     * @param lines     The texts of the lines, all but the last are wrapped.
+     * @param hits      Receives the hits, ordered by position.
+     */
+    private static void find(Matcher matcher, long firstLine, List<String> lines, List<SearchHit> hits) {
+        hits.clear();
+        final int[] starts = new int[lines.size() + 1];
+        final String text;
+        if (lines.size() == 1) {
+            text = lines.get(0);
+        } else {
+            final StringBuilder sb = new StringBuilder();
+            for (int k = 0; k < lines.size(); ++k) {
+                starts[k] = sb.length();
+                sb.append(lines.get(k));
+            }
+            text = sb.toString();
+        }
+        starts[lines.size()] = text.length();
+        matcher.reset(text);
+        while (matcher.find()) {
+            final int start = matcher.start();
+            final int end = matcher.end();
+            for (int k = 0; k < lines.size() && starts[k] < end; ++k) {
+                final int from = Math.max(start, starts[k]);
+                final int to = Math.min(end, starts[k + 1]);
+                if (from < to)
+                    hits.add(new SearchHit(firstLine + k, cells(text, starts[k], from), cells(text, from, to)));
+            }
+        }
+    }
+
+    private static boolean mayContain(long[] filter, List<String> literals) {
+        for (String literal : literals)
+            if (!TrigramFilter.mayContain(filter, literal))
+                return false;
+        return true;
+    }
+
+    /**
+     * Gets the number of cells of a part of a text, see {@link CharWidth}.
+     */
+    private static int cells(String text, int from, int to) {
+        int cells = 0;
+        for (int i = from; i < to; ) {
+            final int cp = text.codePointAt(i);
+            cells += CharWidth.of(cp);
+            i += Character.charCount(cp);
+        }
+        return cells;
+    }
+
+    /**
+     * Gets the text of a line. Empty cells are returned as spaces, the second cells of wide characters are skipped.
+     */
+    static String text(Line line, Graphemes graphemes) {
+        final StringBuilder sb = new StringBuilder(line.getLength());
+        for (int x = 0; x < line.getLength(); ++x) {
+            final int cp = line.getCodePoint(x);
+            if (cp == 0)
+                sb.append(' ');
+            else if (cp == Line.WIDE_TAIL)
+                continue;
+            else if (Graphemes.isCluster(cp))
+                sb.append(graphemes.toString(cp));
+            else if (Character.isValidCodePoint(cp))
+                sb.appendCodePoint(cp);
+            else
+                sb.append('\uFFFD');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Gets literal parts of a regular expression that every match has to contain.<br>
+     * The analysis is conservative: alternatives, groups, classes and optional characters are not used.
+     *
+     * @param regex The regular expression.
+     * @return The literals, empty if none could be found.
+     */
+    static List<String> requiredLiterals(String regex) {
+        final List<String> literals = new ArrayList<>();
+        if (regex.contains("(?"))
+            // Inline flags, e.g. comments mode, change the meaning of the characters.
+            return literals;
+        final StringBuilder run = new StringBuilder();
+        int depth = 0;
+        for (int i = 0; i < regex.length(); ++i) {
+            final char c = regex.charAt(i);
+            switch (c) {
+                case '|':
+                    return new ArrayList<>();
+                case '\\':
+                    if (++i < regex.length()) {
+                        final char n = regex.charAt(i);
+                        if (n == 'Q') {
+                            // Quoted text up to \E.
+                            int e = regex.indexOf("\\E", i + 1);
+                            if (e < 0)
+                                e = regex.length();
+                            if (depth == 0)
+                                run.append(regex, i + 1, e);
+                            i = e + 1;
+                        } else if (Character.isLetterOrDigit(n)) {
+                            addLiteral(literals, run);
+                            i = skipEscape(regex, i);
+                        } else if (depth == 0) {
+                            run.append(n);
+                        }
+                    }
+                    break;
+                case '[':
+                    addLiteral(literals, run);
+                    // Skip the class, a ']' directly after the start is part of the class.
+                    ++i;
+                    if (i < regex.length() && regex.charAt(i) == '^')
+                        ++i;
+                    if (i < regex.length() && regex.charAt(i) == ']')
+                        ++i;
+                    int classDepth = 1;
+                    for (; i < regex.length() && classDepth > 0; ++i) {
+                        char k = regex.charAt(i);
+                        if (k == '\\')
+                            ++i;
+                        else if (k == '[')
+                            ++classDepth;
+                        else if (k == ']')
+                            --classDepth;
+                    }
+                    --i;
+                    break;
+                case '(':
+                    addLiteral(literals, run);
+                    ++depth;
+                    break;
+                case ')':
+                    addLiteral(literals, run);
+                    --depth;
+                    break;
+                case '*':
+                case '?':
+                case '{':
+                    // The previous character is optional.
+                    if (run.length() > 0)
+                        run.setLength(run.length() - 1);
+                    addLiteral(literals, run);
+                    if (c == '{') {
+                        while (i < regex.length() && regex.charAt(i) != '}')
+                            ++i;
+                    }
+                    break;
+                case '+':
+                case '.':
+                case '^':
+                case '$':
+                    addLiteral(literals, run);
+                    break;
+                default:
+                    if (depth == 0)
+                        run.append(c);
+                    break;
+            }
+        }
+        addLiteral(literals, run);
+        return literals;
+    }
+
+    /**
+     * Skips the arguments of an escape, e.g. the digits of "\x41" or the name of "\p{Lu}".
+     *
+     * @param regex The regular expression.
+     * @param i     The index of the letter or digit behind the backslash.
+     * @return The index of the last character of the escape.
+     */
+    private static int skipEscape(String regex, int i) {
+        final char n = regex.charAt(i);
+        final int next = i + 1;
+        final char a = next < regex.length() ? regex.charAt(next) : 0;
+        switch (n) {
+            case 'x':
+                return a == '{' ? skipTo(regex, next, '}') : Math.min(i + 2, regex.length() - 1);
+            case 'u':
+                return Math.min(i + 4, regex.length() - 1);
+            case 'c':
+                return Math.min(next, regex.length() - 1);
+            case 'k':
+                return a == '<' ? skipTo(regex, next, '>') : i;
+            case 'p':
+            case 'P':
+                return a == '{' ? skipTo(regex, next, '}') : Math.min(next, regex.length() - 1);
+            case 'N':
+                return a == '{' ? skipTo(regex, next, '}') : i;
+            case '0':
+                while (i + 1 < regex.length() && i < next + 2 && regex.charAt(i + 1) >= '0' && regex.charAt(i + 1) <= '7')
+                    ++i;
+                return i;
+            default:
+                // Back references may have more digits.
+                if (n >= '1' && n <= '9') {
+                    while (i + 1 < regex.length() && Character.isDigit(regex.charAt(i + 1)))
+                        ++i;
+                }
+                return i;
+        }
+    }
+
+    private static int skipTo(String regex, int i, char end) {
+        final int e = regex.indexOf(end, i);
+        return e < 0 ? regex.length() - 1 : e;
+    }
+
+    private static void addLiteral(List<String> literals, StringBuilder run) {
+        if (run.length() >= 3)
+            literals.add(run.toString());
+        run.setLength(0);
+    }
+}
@@ -0,0 +1,226 @@
+/**
+ * Copyright 2025, Bernd Wengenroth.
+ * This is free and unencumbered software released into the public domain.
+ * Check LICENSE for details.
+ */
+package com.bw.sshTerm.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Memory-mapped file that stores encoded blocks of scrollback lines, see {@link ScrollbackBuffer#setSpill}.<p>
+ * Format: The header "JSTS", a version byte and 3 reserved bytes, followed by records.
+ * Each record is the length of the block (4 bytes), a flag byte (1 if deflated) and the block as written by {@link LineCodec}.
+ * A length of 0 marks the end, -1 continues at the next segment. Records don't cross segment borders.<br>
+ * The offsets of all records are kept in an index, so any block can be read in O(1).
+ */
+public final class ScrollbackSpill implements Closeable {
+
+    static final byte[] MAGIC = {'J', 'S', 'T', 'S'};
+    static final int VERSION = 3;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 5;
+    private static final int SKIP = -1;
+
+    /**
+     * Size of the mapped segments of the file.
+     */
+    static final long SEGMENT_SIZE = 32L << 20;
+
+    private final Path file;
+    private final boolean keep;
+    private final FileChannel channel;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private long[] offsets = new long[64];
+    private int count = 0;
+    private long end = HEADER_SIZE;
+
+    /**
+     * Creates a spill in a temporary file that is deleted on {@link #close()}.
+     *
+     * @throws IOException If the file can't be created.
+     */
+    public static ScrollbackSpill createTempFile() throws IOException {
+        return new ScrollbackSpill(Files.createTempFile("sshTerm", ".scrollback"), false);
+    }
+
+    /**
+     * Opens a spill file.
+     *
+     * @param file The file.
+     * @param keep If true, the file is kept on {@link #close()} and the blocks of an existing file are restored.
+     *             If false, the file is overwritten and deleted on close.
+     * @throws IOException If the file can't be opened or is no spill file.
+     */
+    public ScrollbackSpill(Path file, boolean keep) throws IOException {
+        this.file = file;
+        this.keep = keep;
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (keep && channel.size() >= HEADER_SIZE) {
+                restore();
+            } else {
+                channel.truncate(0);
+                MappedByteBuffer segment = segment(0);
+                segment.put(0, MAGIC);
+                segment.put(MAGIC.length, (byte) VERSION);
+                segment.putInt(HEADER_SIZE, 0);
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Gets the number of blocks.
+     */
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * Appends a block.
+     *
+     * @param data     The encoded block.
+     * @param deflated True if the block is compressed.
+     * @throws IOException If the block can't be written.
+     */
+    public synchronized void append(byte[] data, boolean deflated) throws IOException {
+        if (data.length + RECORD_HEADER_SIZE > SEGMENT_SIZE)
+            throw new IOException("Block of " + data.length + " bytes doesn't fit into a segment");
+        int pos = (int) (end % SEGMENT_SIZE);
+        if (pos + RECORD_HEADER_SIZE + data.length > SEGMENT_SIZE) {
+            if (pos + 4 <= SEGMENT_SIZE)
+                segment(end / SEGMENT_SIZE).putInt(pos, SKIP);
+            end += SEGMENT_SIZE - pos;
+            pos = 0;
+        }
+        final MappedByteBuffer segment = segment(end / SEGMENT_SIZE);
+        segment.putInt(pos, data.length);
+        segment.put(pos + 4, (byte) (deflated ? 1 : 0));
+        segment.put(pos + RECORD_HEADER_SIZE, data);
+        if (count == offsets.length)
+            offsets = Arrays.copyOf(offsets, count * 2);
+        offsets[count++] = end;
+        end += RECORD_HEADER_SIZE + data.length;
+        pos += RECORD_HEADER_SIZE + data.length;
+        if (pos + 4 <= SEGMENT_SIZE)
+            segment.putInt(pos, 0);
+    }
+
+    /**
+     * Reads a block.
+     *
+     * @param index Index of the block.
+     * @return The encoded block.
+     * @throws IndexOutOfBoundsException If the block doesn't exist.
+     */
+    public synchronized byte[] read(int index) throws IOException {
+        final long offset = offset(index);
+        final MappedByteBuffer segment = segment(offset / SEGMENT_SIZE);
+        final int pos = (int) (offset % SEGMENT_SIZE);
+        final byte[] data = new byte[segment.getInt(pos)];
+        segment.get(pos + RECORD_HEADER_SIZE, data);
+        return data;
+    }
+
+    /**
+     * Checks if a block is compressed.
+     *
+     * @param index Index of the block.
+     * @throws IndexOutOfBoundsException If the block doesn't exist.
+     */
+    public synchronized boolean isDeflated(int index) throws IOException {
+        final long offset = offset(index);
+        return segment(offset / SEGMENT_SIZE).get((int) (offset % SEGMENT_SIZE) + 4) != 0;
+    }
+
+    private long offset(int index) {
+        // Offsets of removed blocks are still in the index, but the data may be overwritten.
+        if (index < 0 || index >= count)
+            throw new IndexOutOfBoundsException(index);
+        return offsets[index];
+    }
+
+    /**
+     * Removes all blocks.
+     */
+    public synchronized void clear() throws IOException {
+        count = 0;
+        end = HEADER_SIZE;
+        segment(0).putInt(HEADER_SIZE, 0);
+    }
+
+    /**
+     * Closes the file. If the file shall not be kept, it is deleted.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (keep) {
+            for (MappedByteBuffer segment : segments)
+                segment.force();
+        }
+        segments.clear();
+        channel.close();
+        if (!keep) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                // Some systems can't delete files that are still mapped.
+                file.toFile().deleteOnExit();
+            }
+        }
+    }
+
+    private void restore() throws IOException {
+        final long size = channel.size();
+        final MappedByteBuffer first = segment(0);
+        final byte[] magic = new byte[MAGIC.length];
+        first.get(0, magic);
+        if (!Arrays.equals(magic, MAGIC) || first.get(MAGIC.length) != VERSION)
+            throw new IOException("Not a scrollback file: " + file);
+        while (end + RECORD_HEADER_SIZE <= size) {
+            final int pos = (int) (end % SEGMENT_SIZE);
+            if (pos + RECORD_HEADER_SIZE > SEGMENT_SIZE) {
+                end += SEGMENT_SIZE - pos;
+                continue;
+            }
+            final int length = segment(end / SEGMENT_SIZE).getInt(pos);
+            if (length == SKIP) {
+                end += SEGMENT_SIZE - pos;
+            } else if (length > 0 && end + RECORD_HEADER_SIZE + length <= size) {
+                if (count == offsets.length)
+                    offsets = Arrays.copyOf(offsets, count * 2);
+                offsets[count++] = end;
+                end += RECORD_HEADER_SIZE + length;
+            } else {
+                break;
+            }
+        }
+    }
+
+    private MappedByteBuffer segment(long index) throws IOException {
+        while (segments.size() <= index)
+            segments.add(null);
+        MappedByteBuffer segment = segments.get((int) index);
+        if (segment == null) {
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, index * SEGMENT_SIZE, SEGMENT_SIZE);
+            segments.set((int) index, segment);
+        }
+        return segment;
+    }
+}
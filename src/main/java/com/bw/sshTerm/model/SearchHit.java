@@ -0,0 +1,42 @@
+/**
+ * Copyright 2025, Bernd Wengenroth.
+ * This is free and unencumbered software released into the public domain.
+ * Check LICENSE for details.
+ */
+package com.bw.sshTerm.model;
+
+/**
+ * A match found by {@link ScrollbackSearch}.<p>
+ * Lines are numbered from the first line that was ever added to the scrollback-buffer, so the number of a line
+ * doesn't change if older lines are dropped. See {@link ScrollbackBuffer#getFirstLineNumber()}.
+ * The lines of the screen follow the lines of the scrollback-buffer.<br>
+ * A match that spans {@link Line#isWrapped() wrapped} lines is reported as one hit per line.
+ */
+public final class SearchHit {
+
+    /**
+     * Absolute number of the line.
+     */
+    public final long line;
+
+    /**
+     * Zero based column of the first matching cell.
+     */
+    public final int column;
+
+    /**
+     * Number of matching cells.
+     */
+    public final int length;
+
+    public SearchHit(long line, int column, int length) {
+        this.line = line;
+        this.column = column;
+        this.length = length;
+    }
+
+    @Override
+    public String toString() {
+        return "SearchHit{line=" + line + ", column=" + column + ", length=" + length + '}';
+    }
+}
@@ -0,0 +1,900 @@
+/**
+ * Copyright 2025, Bernd Wengenroth.
+ * This is free and unencumbered software released into the public domain.
+ * Check LICENSE for details.
+ */
+package com.bw.sshTerm.model;
+
+import com.bw.sshTerm.TraceRecorder;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The state of a terminal: screens, scrollback-buffers, caret, current character attributes and title.<p>
+ * The model doesn't depend on AWT or Swing and can be driven by a {@link com.bw.sshTerm.TerminalControl}
+ * without any display. Views register a {@link TerminalModelListener} to get notified about changes.<p>
+ * Modifications are done in batches ({@link #startUpdate()} - {@link #finishUpdate()}) that hold the {@link #getLock() lock}.
+ * Other threads that read the screens have to hold the lock as well.<br>
+ * At the end of each batch a {@link ScreenSnapshot} of the active screen is published, views paint from the
+ * {@link #getSnapshot() latest snapshot} without the lock. Rows of the scrollback-buffer that a view shows are
+ * published with the snapshot, see {@link #setScrollbackView(int, int)}.
+ */
+public class TerminalModel {
+
+    /**
+     * Color value for "use the default color of the view".
+     */
+    public static final int DEFAULT_COLOR = 0;
+
+    /**
+     * Default maximal number of lines in the scrollback-buffers.
+     */
+    public static final int DEFAULT_SCROLLBACK_LIMIT = 10000;
+
+    /**
+     * Default number of scrollback lines behind the screen that are not encoded.
+     */
+    public static final int DEFAULT_SCROLLBACK_COLD_DISTANCE = 1000;
+
+    // Change flags, collected during batches.
+    static final int CONTENT = 1;
+    static final int CARET = 2;
+    static final int SCROLLBACK = 4;
+    static final int SCREEN = 8;
+    static final int TITLE = 16;
+
+    /**
+     * Publishes snapshots and looks up scrollback rows for views, so that views never wait for the lock.
+     */
+    private static final ExecutorService PUBLISHER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "Snapshot Publisher");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Map<Integer, Screen> screens = new HashMap<>();
+    private final List<TerminalModelListener> listeners = new CopyOnWriteArrayList<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    TraceRecorder trace = new TraceRecorder();
+
+    // Current character attributes, used for all new characters.
+    private final AttributeTable attributeTable = new AttributeTable();
+    private int foreground = DEFAULT_COLOR;
+    private int background = DEFAULT_COLOR;
+    private int style = 0;
+    // Id of the current attributes, -1 if it needs to be looked up.
+    private int attributes = 0;
+    // Number of failed lookups to skip before the next sweep for unused attribute ids.
+    private static final int RECLAIM_BACKOFF = 1024;
+    private int reclaimBackoff = 0;
+    // Characters with combining marks and the failed lookups to skip before the next sweep for unused cluster ids.
+    private final Graphemes graphemes = new Graphemes();
+    private int clusterReclaimBackoff = 0;
+
+    private int scrollbackLimit = DEFAULT_SCROLLBACK_LIMIT;
+    private int scrollbackColdDistance = DEFAULT_SCROLLBACK_COLD_DISTANCE;
+    private boolean scrollbackCompressed = false;
+    private int columns;
+    private int rows;
+    private int caretX = 0;
+    private int caretY = 0;
+    private boolean cursorVisible = true;
+    private String title = null;
+    private Screen activeScreenBuffer;
+    private int activeScreen = 0;
+    private int updateDepth = 0;
+    private int pendingChanges = 0;
+    // Latest published snapshot and the rows changed since, collected from the active screen.
+    // Unchanged rows may have been moved by scrolling, rowOrigins gives their rows in the snapshot.
+    private volatile ScreenSnapshot snapshot;
+    // Snapshots that views paint and how often each one is acquired, guarded by itself. See acquireSnapshot.
+    private final Map<ScreenSnapshot, Integer> acquiredSnapshots = new IdentityHashMap<>();
+    private final BitSet changedRows = new BitSet();
+    private int[] rowOrigins = new int[0];
+    // Rows of the scrollback-buffer to publish with the snapshots, first row << 32 | number of rows. 0 for none.
+    private volatile long scrollbackView = 0;
+
+    /**
+     * Creates a model with 80x24 characters.
+     */
+    public TerminalModel() {
+        this(80, 24);
+    }
+
+    /**
+     * Creates a model.
+     *
+     * @param columns Number of columns.
+     * @param rows    Number of rows.
+     */
+    public TerminalModel(int columns, int rows) {
+        this.columns = Math.max(columns, 1);
+        this.rows = Math.max(rows, 1);
+        activeScreenBuffer = new Screen(this);
+        screens.put(0, activeScreenBuffer);
+        snapshot = ScreenSnapshot.next(null, this, changedRows, rowOrigins);
+    }
+
+    /**
+     * Sets the trace recorder to record scrolling, margins and other events of the screen.
+     */
+    public void setTrace(TraceRecorder trace) {
+        this.trace = trace;
+    }
+
+    public void addListener(TerminalModelListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(TerminalModelListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Gets the lock that is held during updates. Threads that read the screens while the model
+     * may be updated, have to hold this lock.
+     */
+    public ReentrantLock getLock() {
+        return lock;
+    }
+
+    /**
+     * Starts a batch of updates and acquires the {@link #getLock() lock}. Changes until the matching {@link #finishUpdate()}
+     * are collected and notified only once.
+     */
+    public void startUpdate() {
+        lock.lock();
+        ++updateDepth;
+    }
+
+    /**
+     * Finishes a batch of updates started by {@link #startUpdate()}, releases the lock and notifies
+     * the collected changes.
+     */
+    public void finishUpdate() {
+        if (updateDepth > 0) {
+            int changes = 0;
+            if (--updateDepth == 0) {
+                changes = pendingChanges;
+                pendingChanges = 0;
+                if (changes != 0)
+                    publishSnapshot();
+            }
+            lock.unlock();
+            // Listeners are called without lock, they may e.g. wait for the UI thread.
+            if (changes != 0)
+                notifyListeners(changes);
+        }
+    }
+
+    void fire(int changes) {
+        if (updateDepth > 0)
+            pendingChanges |= changes;
+        else {
+            // During construction the snapshot is created at the end.
+            if (snapshot != null) {
+                lock.lock();
+                try {
+                    publishSnapshot();
+                } finally {
+                    lock.unlock();
+                }
+            }
+            notifyListeners(changes);
+        }
+    }
+
+    private void publishSnapshot() {
+        if (rowOrigins.length < activeScreenBuffer.term.size())
+            rowOrigins = new int[activeScreenBuffer.term.size()];
+        activeScreenBuffer.collectDirtyRows(changedRows, rowOrigins);
+        snapshot = ScreenSnapshot.next(snapshot, this, changedRows, rowOrigins);
+        changedRows.clear();
+    }
+
+    private void notifyListeners(int changes) {
+        for (TerminalModelListener l : listeners) {
+            if ((changes & SCREEN) != 0)
+                l.screenSwitched(this);
+            if ((changes & SCROLLBACK) != 0)
+                l.scrollbackChanged(this);
+            if ((changes & CONTENT) != 0)
+                l.contentChanged(this);
+            if ((changes & CARET) != 0)
+                l.caretMoved(this);
+            if ((changes & TITLE) != 0)
+                l.titleChanged(this);
+        }
+    }
+
+    /**
+     * Gets the latest snapshot of the active screen, published at the end of each batch of updates.
+     * The lock is not needed.
+     */
+    public ScreenSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Gets the latest snapshot to paint it. Until the snapshot is {@link #releaseSnapshot released}, the attribute and
+     * cluster ids of its cells are not reclaimed, even if newer snapshots are published meanwhile.
+     * The lock is not needed.
+     */
+    public ScreenSnapshot acquireSnapshot() {
+        while (true) {
+            final ScreenSnapshot s = snapshot;
+            synchronized (acquiredSnapshots) {
+                acquiredSnapshots.merge(s, 1, Integer::sum);
+            }
+            // Reclaiming marks the latest snapshot. If it is still the latest, no reclaim could have missed it.
+            if (s == snapshot)
+                return s;
+            releaseSnapshot(s);
+        }
+    }
+
+    /**
+     * Releases a snapshot that was {@link #acquireSnapshot() acquired}.
+     */
+    public void releaseSnapshot(ScreenSnapshot s) {
+        synchronized (acquiredSnapshots) {
+            acquiredSnapshots.computeIfPresent(s, (k, n) -> n > 1 ? n - 1 : null);
+        }
+    }
+
+    /**
+     * Gets the snapshots whose ids must not be reclaimed: The latest and the acquired ones.
+     */
+    private List<ScreenSnapshot> getUsedSnapshots() {
+        final List<ScreenSnapshot> used = new ArrayList<>();
+        used.add(snapshot);
+        synchronized (acquiredSnapshots) {
+            used.addAll(acquiredSnapshots.keySet());
+        }
+        return used;
+    }
+
+    /**
+     * Sets the rows of the scrollback-buffer that a view shows. The rows are reflowed to the current width and
+     * published with the snapshots, see {@link ScreenSnapshot#getScrollbackRow(int)}.<br>
+     * If the rows changed, a snapshot is published by a background thread and the listeners are notified about
+     * changed content. The lock is not needed.
+     *
+     * @param row   The first row.
+     * @param count The number of rows, 0 if the view shows no rows of the scrollback-buffer.
+     */
+    public void setScrollbackView(int row, int count) {
+        final long view = count > 0 ? ((long) Math.max(row, 0) << 32) | count : 0;
+        if (view != scrollbackView) {
+            scrollbackView = view;
+            if (view != 0) {
+                PUBLISHER.execute(() -> {
+                    startUpdate();
+                    try {
+                        fire(CONTENT);
+                    } finally {
+                        finishUpdate();
+                    }
+                });
+            }
+        }
+    }
+
+    long getScrollbackView() {
+        return scrollbackView;
+    }
+
+    /**
+     * Finds the row of the scrollback-buffer of the main screen that shows a cell, if reflowed to the current width.
+     * The lock is acquired by a background thread.
+     *
+     * @param line   The absolute number of the line, see {@link SearchHit}.
+     * @param column The column of the cell in the line.
+     * @return The row, the number of rows of the scrollback-buffer if the line is on the screen.
+     */
+    public CompletableFuture<Integer> findScrollbackRow(long line, int column) {
+        final CompletableFuture<Integer> result = new CompletableFuture<>();
+        PUBLISHER.execute(() -> {
+            final int row;
+            lock.lock();
+            try {
+                final ScrollbackBuffer scrollback = screens.get(0).topScrollBuffer;
+                final long index = line - scrollback.getFirstLineNumber();
+                row = index < scrollback.size() ? scrollback.getRowOf(columns, (int) Math.max(0, index), column)
+                        : scrollback.getRowCount(columns);
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+                return;
+            } finally {
+                lock.unlock();
+            }
+            result.complete(row);
+        });
+        return result;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Sets the size of the terminal.
+     *
+     * @param columns Number of columns.
+     * @param rows    Number of rows.
+     */
+    public void setSize(int columns, int rows) {
+        columns = Math.max(columns, 1);
+        rows = Math.max(rows, 1);
+        startUpdate();
+        try {
+            resize(columns, rows);
+        } finally {
+            finishUpdate();
+        }
+    }
+
+    private void resize(int columns, int rows) {
+        if (columns != this.columns || rows != this.rows) {
+            final int oldRows = this.rows;
+            final boolean reflow = columns != this.columns;
+            this.columns = columns;
+            this.rows = rows;
+            if (activeScreenBuffer.marginBottom == (oldRows - 1) || activeScreenBuffer.marginBottom >= rows) {
+                activeScreenBuffer.setMargins(Math.min(activeScreenBuffer.marginTop, rows - 1), rows - 1);
+            }
+            if (reflow) {
+                // Only the main screen, applications that use other screens redraw them.
+                // The scrollback-buffer is reflowed lazily by the view, see ScrollbackBuffer#getRow.
+                final Screen main = screens.get(0);
+                if (main == activeScreenBuffer) {
+                    main.lastCaretX = caretX;
+                    main.lastCaretY = caretY;
+                }
+                main.reflow();
+                if (main == activeScreenBuffer) {
+                    caretX = main.lastCaretX;
+                    caretY = main.lastCaretY;
+                    fire(CARET);
+                }
+            }
+            activeScreenBuffer.ensureSpace();
+            trace.record(TraceRecorder.RESIZE, columns, rows, 0);
+            fire(CONTENT);
+        }
+    }
+
+    public int getScrollbackLimit() {
+        return scrollbackLimit;
+    }
+
+    /**
+     * Sets the maximal number of lines in the scrollback-buffers of all screens.
+     * If the limit is reached, the oldest lines are dropped.
+     *
+     * @param lines Number of lines, at least 1.
+     */
+    public void setScrollbackLimit(int lines) {
+        startUpdate();
+        try {
+            scrollbackLimit = Math.max(lines, 1);
+            for (Screen screen : screens.values())
+                screen.setScrollbackLimit(scrollbackLimit);
+        } finally {
+            finishUpdate();
+        }
+    }
+
+    public int getScrollbackColdDistance() {
+        return scrollbackColdDistance;
+    }
+
+    public boolean isScrollbackCompressed() {
+        return scrollbackCompressed;
+    }
+
+    /**
+     * Sets how old lines of the scrollback-buffers are stored.<br>
+     * Lines that are more than coldDistance lines behind the screen are encoded in the background
+     * and decoded again if needed. See {@link ScrollbackBuffer}.
+     *
+     * @param coldDistance Number of lines to keep unencoded, {@link Integer#MAX_VALUE} to disable encoding.
+     * @param compressed   If true, the encoded lines are compressed additionally.
+     */
+    public void setScrollbackEncoding(int coldDistance, boolean compressed) {
+        startUpdate();
+        try {
+            scrollbackColdDistance = Math.max(coldDistance, 0);
+            scrollbackCompressed = compressed;
+            for (Screen screen : screens.values())
+                screen.setScrollbackEncoding(scrollbackColdDistance, scrollbackCompressed);
+        } finally {
+            finishUpdate();
+        }
+    }
+
+    /**
+     * Sets a file to move the oldest scrollback lines of the main screen to, instead of dropping them.
+     * See {@link ScrollbackBuffer#setSpill(ScrollbackSpill)}.<br>
+     * The caller has to close the spill after it was removed by calling this method with null.
+     *
+     * @param spill The spill or null.
+     */
+    public void setScrollbackSpill(ScrollbackSpill spill) {
+        startUpdate();
+        try {
+            screens.get(0).setScrollbackSpill(spill);
+        } finally {
+            finishUpdate();
+        }
+    }
+
+    /**
+     * Get the id of the active screen.
+     *
+     * @return The id of the active screen.
+     */
+    public int getActiveScreen() {
+        return activeScreen;
+    }
+
+    /**
+     * Gets the buffer of the active screen.
+     */
+    public Screen getScreen() {
+        return activeScreenBuffer;
+    }
+
+    /**
+     * Switch active screen. A new screen is created if needed.
+     *
+     * @param id The id of the active screen. Can be any integer.
+     */
+    public void switchScreen(int id, boolean restoreCaret) {
+        if (activeScreen != id) {
+            activeScreen = id;
+            activeScreenBuffer.lastCaretX = caretX;
+            activeScreenBuffer.lastCaretY = caretY;
+
+            activeScreenBuffer = screens.get(id);
+            if (activeScreenBuffer == null) {
+                activeScreenBuffer = new Screen(this);
+                screens.put(id, activeScreenBuffer);
+            }
+            if (restoreCaret) {
+                caretX = activeScreenBuffer.lastCaretX;
+                caretY = activeScreenBuffer.lastCaretY;
+            }
+            activeScreenBuffer.markDirty(0, rows);
+            trace.record(TraceRecorder.SCREEN, id, 0, 0);
+            fire(SCREEN | SCROLLBACK | CONTENT | CARET);
+        }
+    }
+
+    /**
+     * Moved the caret relative. Scrolls if the margin is reached.
+     *
+     * @param xd The delta in x-direction.
+     * @param yd The delta in y-direction.
+     */
+    public void moveCaret(int xd, int yd) {
+        caretX += xd;
+        caretY += yd;
+        if (caretY > activeScreenBuffer.marginBottom) {
+            activeScreenBuffer.scrollDown(caretY - activeScreenBuffer.marginBottom);
+            caretY = activeScreenBuffer.marginBottom;
+        } else if (caretY < activeScreenBuffer.marginTop) {
+            activeScreenBuffer.scrollUp(activeScreenBuffer.marginTop - caretY);
+            caretY = activeScreenBuffer.marginTop;
+        }
+        fire(CARET);
+    }
+
+    /**
+     * Sets the caret. Scrolls if the margin reached.
+     *
+     * @param x The x-ordinate.
+     * @param y The y-ordinate.
+     */
+    public void setCaretAbsolute(int x, int y) {
+        if (x < 0) x = 0;
+        if (y < 0) y = 0;
+        if (y > activeScreenBuffer.marginBottom) {
+            activeScreenBuffer.scrollDown(y - activeScreenBuffer.marginBottom);
+            y = activeScreenBuffer.marginBottom;
+        } else if (y < activeScreenBuffer.marginTop) {
+            activeScreenBuffer.scrollUp(activeScreenBuffer.marginTop - y);
+            y = activeScreenBuffer.marginTop;
+        }
+        caretX = x;
+        caretY = y;
+        fire(CARET);
+    }
+
+    /**
+     * Scrolls the lines between the margins (SU/SD). The caret is not moved.
+     *
+     * @param n Number of lines. Positive values move the lines up, new lines are inserted at the bottom margin.
+     *          Negative values move the lines down.
+     */
+    public void scroll(int n) {
+        if (n > 0)
+            activeScreenBuffer.scrollDown(n);
+        else
+            activeScreenBuffer.scrollUp(-n);
+    }
+
+    /**
+     * Inserts empty lines at the caret (IL). The caret moves to the start of the line.
+     * Nothing is done if the caret is outside the margins.
+     *
+     * @param n Number of lines.
+     */
+    public void insertLines(int n) {
+        if (caretY >= activeScreenBuffer.marginTop && caretY <= activeScreenBuffer.marginBottom) {
+            activeScreenBuffer.insertLines(caretY, n);
+            caretX = 0;
+            fire(CARET);
+        }
+    }
+
+    /**
+     * Deletes lines at the caret (DL). The caret moves to the start of the line.
+     * Nothing is done if the caret is outside the margins.
+     *
+     * @param n Number of lines.
+     */
+    public void deleteLines(int n) {
+        if (caretY >= activeScreenBuffer.marginTop && caretY <= activeScreenBuffer.marginBottom) {
+            activeScreenBuffer.deleteLines(caretY, n);
+            caretX = 0;
+            fire(CARET);
+        }
+    }
+
+    /**
+     * Get the x-ordinate of the caret.
+     */
+    public int getCaretX() {
+        return caretX;
+    }
+
+    /**
+     * Get the y-ordinate of the caret.
+     */
+    public int getCaretY() {
+        return caretY;
+    }
+
+    public boolean isCursorVisible() {
+        return cursorVisible;
+    }
+
+    public void setCursorVisible(boolean visible) {
+        if (cursorVisible != visible) {
+            cursorVisible = visible;
+            fire(CARET);
+        }
+    }
+
+    /**
+     * Set char
+     *
+     * @param x The column in terminal. [0 - columns[
+     * @param y The row in terminal. [0 - rows[
+     * @param b The character (unicode code point) to set
+     */
+    public void setCharAt(int x, int y, int b) {
+        activeScreenBuffer.setCharAt(x, y, b);
+    }
+
+    /**
+     * Set char at a current caret (doesn't move the caret)
+     *
+     * @param b The character (unicode code point) to set
+     */
+    public void setChar(int b) {
+        setCharAt(caretX, caretY, b);
+    }
+
+    /**
+     * Writes a run of printable characters at the caret and moves the caret behind the run.<br>
+     * Wraps at the right border and scrolls if the bottom margin is reached.
+     * {@link CharWidth Wide} characters take two cells, combining marks are attached to the previous character.
+     *
+     * @param chars  The buffer with the characters (unicode code points).
+     * @param offset Offset of the first character in chars.
+     * @param length Number of characters to write.
+     */
+    public void setChars(int[] chars, int offset, int length) {
+        final Screen screen = activeScreenBuffer;
+        final int end = offset + length;
+        int x = caretX;
+        int y = caretY;
+        while (offset < end) {
+            final int width = CharWidth.of(chars[offset]);
+            if (width == 0) {
+                if (x > 0)
+                    screen.combine(x - 1, y, chars[offset]);
+                ++offset;
+                continue;
+            }
+            final boolean wide = width == 2 && columns > 1;
+            if (x >= columns || (wide && x == columns - 1)) {
+                // A wide character that doesn't fit leaves the last cell empty.
+                if (x < columns)
+                    screen.erase(y, x, columns, 0);
+                screen.setWrapped(y);
+                x = 0;
+                ++y;
+            }
+            if (y > screen.marginBottom) {
+                screen.scrollDown(y - screen.marginBottom);
+                y = screen.marginBottom;
+            }
+            if (wide) {
+                screen.setWide(x, y, chars[offset++]);
+                x += 2;
+            } else {
+                // Characters with one cell are written in runs.
+                final int max = Math.min(end - offset, columns - x);
+                int n = 1;
+                while (n < max && CharWidth.of(chars[offset + n]) == 1)
+                    ++n;
+                screen.setChars(x, y, chars, offset, n);
+                offset += n;
+                x += n;
+            }
+        }
+        caretX = x;
+        caretY = y;
+        fire(CARET);
+    }
+
+    /**
+     * Wraps at the right border: Marks the line of the caret as {@link Line#isWrapped() wrapped} and
+     * moves the caret to the start of the next line. Scrolls if the bottom margin is reached.
+     */
+    public void wrapLine() {
+        activeScreenBuffer.setWrapped(caretY);
+        setCaretAbsolute(0, caretY + 1);
+    }
+
+    public void clear() {
+        activeScreenBuffer.clear();
+        caretX = 0;
+        caretY = 0;
+        fire(CARET);
+    }
+
+    /**
+     * Erases in the line of the caret (EL). The caret is not moved.
+     *
+     * @param mode 0: From the caret to the end of the line, 1: From the start of the line to the caret, 2: The whole line.
+     */
+    public void eraseInLine(int mode) {
+        // A caret behind the last column (pending wrap) is on the last column.
+        final int x = Math.min(caretX, columns - 1);
+        switch (mode) {
+            case 0 -> activeScreenBuffer.erase(caretY, x, columns, getEraseAttributes());
+            case 1 -> activeScreenBuffer.erase(caretY, 0, x + 1, getEraseAttributes());
+            case 2 -> activeScreenBuffer.erase(caretY, 0, columns, getEraseAttributes());
+            default -> {
+            }
+        }
+    }
+
+    /**
+     * Erases in the screen (ED). The caret is not moved.
+     *
+     * @param mode 0: From the caret to the end of the screen, 1: From the start of the screen to the caret,
+     *             2: The whole screen, 3: The scrollback-buffers.
+     */
+    public void eraseInDisplay(int mode) {
+        final int x = Math.min(caretX, columns - 1);
+        switch (mode) {
+            case 0 -> {
+                activeScreenBuffer.erase(caretY, x, columns, getEraseAttributes());
+                activeScreenBuffer.eraseRows(caretY + 1, rows, getEraseAttributes());
+            }
+            case 1 -> {
+                activeScreenBuffer.eraseRows(0, caretY, getEraseAttributes());
+                activeScreenBuffer.erase(caretY, 0, x + 1, getEraseAttributes());
+            }
+            case 2 -> activeScreenBuffer.eraseRows(0, rows, getEraseAttributes());
+            case 3 -> activeScreenBuffer.clearScrollback();
+            default -> {
+            }
+        }
+    }
+
+    /**
+     * Erases characters from the caret to the right (ECH). The caret is not moved.
+     *
+     * @param n Number of characters.
+     */
+    public void eraseChars(int n) {
+        final int x = Math.min(caretX, columns - 1);
+        activeScreenBuffer.erase(caretY, x, (int) Math.min((long) x + n, columns), getEraseAttributes());
+    }
+
+    /**
+     * Gets the attribute id for erased cells: The current background color without style.
+     */
+    private int getEraseAttributes() {
+        if (background == DEFAULT_COLOR)
+            return 0;
+        return Math.max(0, attributeTable.intern(DEFAULT_COLOR, background, 0));
+    }
+
+    /**
+     * Deletes the character at the caret, the rest of the line is moved left.
+     */
+    public void deleteChar() {
+        activeScreenBuffer.deleteChar(caretX, caretY);
+    }
+
+    /**
+     * Inserts a character at the caret, the rest of the line is moved right.
+     */
+    public void insert(int c) {
+        activeScreenBuffer.insert(caretX, caretY, c);
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String text) {
+        if (!Objects.equals(text, this.title)) {
+            this.title = text;
+            fire(TITLE);
+        }
+    }
+
+    public void setMargins(int top, int bottom) {
+        activeScreenBuffer.setMargins(top, bottom);
+    }
+
+    /**
+     * Gets the foreground color for new characters.
+     *
+     * @return ARGB value or {@link #DEFAULT_COLOR}.
+     */
+    public int getForeground() {
+        return foreground;
+    }
+
+    /**
+     * Sets the foreground color for new characters.
+     *
+     * @param argb ARGB value or {@link #DEFAULT_COLOR}.
+     */
+    public void setForeground(int argb) {
+        foreground = argb;
+        attributes = -1;
+    }
+
+    /**
+     * Gets the background color for new characters.
+     *
+     * @return ARGB value or {@link #DEFAULT_COLOR}.
+     */
+    public int getBackground() {
+        return background;
+    }
+
+    /**
+     * Sets the background color for new characters.
+     *
+     * @param argb ARGB value or {@link #DEFAULT_COLOR}.
+     */
+    public void setBackground(int argb) {
+        background = argb;
+        attributes = -1;
+    }
+
+    /**
+     * Set char style by combination of values from {@link com.bw.sshTerm.CharStyle}.
+     *
+     * @param style The style, combination of values from {@link com.bw.sshTerm.CharStyle}.
+     */
+    public void setStyle(int style) {
+        this.style = style;
+        attributes = -1;
+    }
+
+    public int getStyle() {
+        return style;
+    }
+
+    public void clearStyle(int i) {
+        style = (style & ~i);
+        attributes = -1;
+    }
+
+    /**
+     * Gets the id of the current attributes in the {@link #getAttributeTable() attribute table}.
+     */
+    public int getAttributes() {
+        if (attributes < 0) {
+            attributes = attributeTable.intern(foreground, background, style);
+            if (attributes < 0 && --reclaimBackoff <= 0) {
+                // The table is full, free the ids that are no longer used by any cell.
+                // Decoding of scrollback lines has to wait, it interns attributes.
+                synchronized (attributeTable) {
+                    boolean[] used = new boolean[attributeTable.size()];
+                    for (Screen screen : screens.values())
+                        screen.markAttributes(used);
+                    // Views may still paint the latest snapshot or older ones they acquired.
+                    for (ScreenSnapshot s : getUsedSnapshots())
+                        s.markAttributes(used);
+                    attributeTable.reclaim(used);
+                    attributes = attributeTable.intern(foreground, background, style);
+                }
+                // If nothing could be freed, don't sweep again for the next lookups.
+                reclaimBackoff = attributes < 0 ? RECLAIM_BACKOFF : 0;
+            }
+            if (attributes < 0) {
+                // All ids are used on screen. Keep the style, but drop the colors.
+                attributes = Math.max(0, attributeTable.intern(DEFAULT_COLOR, DEFAULT_COLOR, style));
+            }
+        }
+        return attributes;
+    }
+
+    /**
+     * Gets the table of attributes, used to resolve the attribute ids in the cells of a {@link Line}.
+     */
+    public AttributeTable getAttributeTable() {
+        return attributeTable;
+    }
+
+    /**
+     * Attaches a combining mark to a character, see {@link Graphemes#combine}.
+     *
+     * @return The id of the cluster, cp if no id is free.
+     */
+    int combine(int cp, int mark) {
+        int id = graphemes.combine(cp, mark);
+        if (id < 0 && --clusterReclaimBackoff <= 0) {
+            // The table is full, free the ids that are no longer used by any cell.
+            // Decoding of scrollback lines has to wait, it combines characters.
+            synchronized (attributeTable) {
+                boolean[] used = new boolean[graphemes.size()];
+                for (Screen screen : screens.values())
+                    screen.markClusters(used);
+                // Views may still paint the latest snapshot or older ones they acquired.
+                for (ScreenSnapshot s : getUsedSnapshots())
+                    s.markClusters(used);
+                graphemes.reclaim(used);
+                id = graphemes.combine(cp, mark);
+            }
+            // If nothing could be freed, don't sweep again for the next lookups.
+            clusterReclaimBackoff = id < 0 ? RECLAIM_BACKOFF : 0;
+        }
+        return id < 0 ? cp : id;
+    }
+
+    /**
+     * Gets the table of characters with combining marks, used to resolve the cluster ids in the cells of a {@link Line}.
+     */
+    public Graphemes getGraphemes() {
+        return graphemes;
+    }
+}
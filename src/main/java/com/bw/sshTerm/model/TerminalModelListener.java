@@ -0,0 +1,44 @@
+/**
+ * Copyright 2025, Bernd Wengenroth.
+ * This is free and unencumbered software released into the public domain.
+ * Check LICENSE for details.
+ */
+package com.bw.sshTerm.model;
+
+/**
+ * Listener for changes of a {@link TerminalModel}.<p>
+ * Inside a batch of updates (see {@link TerminalModel#startUpdate()}) each kind of change is notified only once,
+ * at the end of the batch. The methods are called from the thread that modifies the model.
+ */
+public interface TerminalModelListener {
+
+    /**
+     * Characters or attributes on the screen have changed.
+     */
+    default void contentChanged(TerminalModel model) {
+    }
+
+    /**
+     * The caret was moved.
+     */
+    default void caretMoved(TerminalModel model) {
+    }
+
+    /**
+     * Lines were moved into or out of the scrollback-buffer.
+     */
+    default void scrollbackChanged(TerminalModel model) {
+    }
+
+    /**
+     * An other screen was activated.
+     */
+    default void screenSwitched(TerminalModel model) {
+    }
+
+    /**
+     * The title was changed.
+     */
+    default void titleChanged(TerminalModel model) {
+    }
+}
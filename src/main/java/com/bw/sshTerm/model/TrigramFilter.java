@@ -0,0 +1,138 @@
+/**
+ * Copyright 2025, Bernd Wengenroth.
+ * This is free and unencumbered software released into the public domain.
+ * Check LICENSE for details.
+ */
+package com.bw.sshTerm.model;
+
+import java.util.BitSet;
+
+/**
+ * Bloom filter of the trigrams (three consecutive characters, in lower case) of a block of lines.<p>
+ * Empty cells are treated as spaces, like in the text of the lines that is searched, see {@link ScrollbackSearch#text(Line, Graphemes)}.<br>
+ * Used by {@link ScrollbackSearch} to skip blocks that can't contain a text.
+ * Trigrams continue from a wrapped line into the next line.
+ * A filter may report false positives, but never false negatives.
+ */
+final class TrigramFilter {
+
+    // 16384 bits, two hashes per trigram.
+    private static final int WORDS = 256;
+    private static final int MASK = WORDS * 64 - 1;
+
+    private TrigramFilter() {
+    }
+
+    /**
+     * Creates the filter of lines.
+     *
+     * @param lines     The lines.
+     * @param count     Number of lines.
+     * @param graphemes The table to resolve the cluster ids.
+     */
+    static long[] create(Line[] lines, int count, Graphemes graphemes) {
+        final long[] filter = new long[WORDS];
+        int c1 = 0;
+        int c2 = 0;
+        int n = 0;
+        for (int i = 0; i < count; ++i) {
+            final Line line = lines[i];
+            final int length = line.getLength();
+            if (i > 0 && !lines[i - 1].isWrapped())
+                n = 0;
+            for (int x = 0; x < length; ++x) {
+                final int cp = line.getCodePoint(x);
+                if (cp == Line.WIDE_TAIL)
+                    continue;
+                final int[] cluster = Graphemes.isCluster(cp) ? graphemes.codePoints(cp) : null;
+                for (int k = 0; k < (cluster == null ? 1 : cluster.length); ++k) {
+                    final int c3 = fold(cluster == null ? cp : cluster[k]);
+                    if (++n >= 3)
+                        add(filter, c1, c2, c3);
+                    c1 = c2;
+                    c2 = c3;
+                }
+            }
+        }
+        return filter;
+    }
+
+    /**
+     * Creates the filter of texts.
+     *
+     * @param texts   The texts of the lines.
+     * @param wrapped The indices of the wrapped lines.
+     */
+    static long[] create(String[] texts, BitSet wrapped) {
+        final long[] filter = new long[WORDS];
+        int c1 = 0;
+        int c2 = 0;
+        int n = 0;
+        for (int li = 0; li < texts.length; ++li) {
+            final String text = texts[li];
+            if (li > 0 && !wrapped.get(li - 1))
+                n = 0;
+            for (int i = 0; i < text.length(); ) {
+                final int cp = text.codePointAt(i);
+                final int c3 = fold(cp);
+                i += Character.charCount(cp);
+                if (++n >= 3)
+                    add(filter, c1, c2, c3);
+                c1 = c2;
+                c2 = c3;
+            }
+        }
+        return filter;
+    }
+
+    /**
+     * Checks if a block may contain a text.
+     *
+     * @param filter The filter of the block.
+     * @param text   The text, case is ignored. Texts with less than 3 characters always match.
+     */
+    static boolean mayContain(long[] filter, String text) {
+        int c1 = 0;
+        int c2 = 0;
+        int n = 0;
+        for (int i = 0; i < text.length(); ) {
+            final int cp = text.codePointAt(i);
+            final int c3 = fold(cp);
+            i += Character.charCount(cp);
+            if (++n >= 3) {
+                final int h = hash(c1, c2, c3);
+                if (!isSet(filter, h) || !isSet(filter, h >>> 16 ^ h * 0x9E3779B9))
+                    return false;
+            }
+            c1 = c2;
+            c2 = c3;
+        }
+        return true;
+    }
+
+    private static int fold(int cp) {
+        return cp == 0 ? ' ' : Character.toLowerCase(cp);
+    }
+
+    private static void add(long[] filter, int c1, int c2, int c3) {
+        final int h = hash(c1, c2, c3);
+        set(filter, h);
+        set(filter, h >>> 16 ^ h * 0x9E3779B9);
+    }
+
+    private static int hash(int c1, int c2, int c3) {
+        int h = (c1 * 31 + c2) * 31 + c3;
+        h *= 0x85EBCA6B;
+        return h ^ (h >>> 15);
+    }
+
+    private static void set(long[] filter, int h) {
+        h &= MASK;
+        filter[h >>> 6] |= 1L << h;
+    }
+
+    private static boolean isSet(long[] filter, int h) {
+        h &= MASK;
+        return (filter[h >>> 6] & (1L << h)) != 0;
+    }
+}
@@ -0,0 +1,314 @@
+/**
+ * Copyright 2025, Bernd Wengenroth.
+ * This is free and unencumbered software released into the public domain.
+ * Check LICENSE for details.
+ */
+package com.bw.sshTerm.model;
+
+import java.util.Arrays;
+
+/**
+ * Index of the rows of a list of lines, if the lines are reflowed to a width. Used by {@link ScrollbackBuffer}.<p>
+ * Only the length and the {@link Line#isWrapped() wrap flag} of each line are stored (4 bytes per line), for lines with
+ * wide characters also their columns. Like on the screen, a wide character is not split: If it would start in the
+ * last column of a row, this cell stays empty and the character starts the next row. With one column a wide
+ * character takes one cell.
+ * The rows are computed on request for the requested width: For each group of 256 lines the first row of the
+ * logical line at the start of the group and the offset into this logical line are kept,
+ * so a row is found by a binary search over the groups and a scan of at most one group.
+ * Changing the width only invalidates the groups, they are computed again on the next request.
+ * Removing the first lines keeps the groups, as long as no logical line is cut.
+ */
+final class WrapIndex {
+
+    private static final int GROUP = 256;
+
+    // Length << 1 | wrapped, the first line is at index first.
+    private int[] lines = new int[GROUP];
+    private int first = 0;
+    private int size = 0;
+    // Columns of the wide characters of each line, same index as lines. Null as long as no line has wide characters.
+    private int[][] wide;
+
+    // Width of the computed groups.
+    private int columns = 0;
+    // Row of the logical line at the start of each group and the cells of this logical line in previous lines.
+    private int[] groupRow = new int[16];
+    private int[] groupOffset = new int[16];
+    // Number of groups with valid start, the start of group 0 is always valid.
+    private int groups = 1;
+    // Group 0 starts at line 0, group g > 0 at line g * GROUP - phase. Changed if first lines are removed.
+    private int phase = 0;
+
+    // Scan state: first row of the current logical line and the cells of the logical line before the current line,
+    // including the empty cells before wide characters.
+    private int row;
+    private int offset;
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Adds a line.
+     *
+     * @param length  The number of cells.
+     * @param wrapped True if the line is wrapped.
+     * @param columns The columns of the wide characters, see {@link Line#getWideColumns()}. Null if none.
+     */
+    void addLast(int length, boolean wrapped, int[] columns) {
+        if (first + size == lines.length) {
+            if (first >= lines.length / 2) {
+                System.arraycopy(lines, first, lines, 0, size);
+                if (wide != null) {
+                    System.arraycopy(wide, first, wide, 0, size);
+                    Arrays.fill(wide, size, first + size, null);
+                }
+                first = 0;
+            } else {
+                lines = Arrays.copyOf(lines, lines.length * 2);
+                if (wide != null)
+                    wide = Arrays.copyOf(wide, lines.length);
+            }
+        }
+        if (columns != null && wide == null)
+            wide = new int[lines.length][];
+        if (wide != null)
+            wide[first + size] = columns;
+        lines[first + size++] = (length << 1) | (wrapped ? 1 : 0);
+    }
+
+    void removeLast() {
+        if (size > 0) {
+            --size;
+            if (wide != null)
+                wide[first + size] = null;
+            // The start of a group depends only on the lines before.
+            groups = Math.min(groups, groupOf(size) + 1);
+        }
+    }
+
+    /**
+     * Removes the first lines.
+     */
+    void removeFirst(int count) {
+        count = Math.min(count, size);
+        if (count > 0) {
+            if (count < size && columns > 0 && !isWrapped(count - 1)) {
+                // The rows of the remaining lines only move up by the rows of the removed lines.
+                // The groups behind the removed lines are kept, the other groups are dropped.
+                scan(validate(columns, groupOf(count)), count);
+                final int removedRows = row;
+                final int next = Math.max(1, (count + phase + GROUP - 1) / GROUP);
+                final int shift = (count + phase) % GROUP == 0 ? next : next - 1;
+                phase = (count + phase) % GROUP == 0 ? 0 : phase + count - shift * GROUP;
+                if (shift > 0) {
+                    final int kept = Math.max(0, groups - shift);
+                    System.arraycopy(groupRow, shift, groupRow, 0, kept);
+                    System.arraycopy(groupOffset, shift, groupOffset, 0, kept);
+                    groups = Math.max(1, kept);
+                }
+                for (int g = 1; g < groups; ++g)
+                    groupRow[g] -= removedRows;
+                groupRow[0] = 0;
+                groupOffset[0] = 0;
+            } else {
+                groups = 1;
+                phase = 0;
+            }
+            if (wide != null)
+                Arrays.fill(wide, first, first + count, null);
+            first += count;
+            size -= count;
+        }
+    }
+
+    /**
+     * Inserts lines with unknown length before the first line. Each of these lines is one row.
+     */
+    void addFirst(int count) {
+        if (count > 0) {
+            final int[] l = new int[Math.max(GROUP, size + count + (size >> 1))];
+            System.arraycopy(lines, first, l, count, size);
+            if (wide != null) {
+                final int[][] w = new int[l.length][];
+                System.arraycopy(wide, first, w, count, size);
+                wide = w;
+            }
+            lines = l;
+            first = 0;
+            size += count;
+            groups = 1;
+            phase = 0;
+        }
+    }
+
+    void clear() {
+        wide = null;
+        first = 0;
+        size = 0;
+        groups = 1;
+        phase = 0;
+    }
+
+    boolean isWrapped(int index) {
+        return (lines[first + index] & 1) != 0;
+    }
+
+    int getLength(int index) {
+        return lines[first + index] >>> 1;
+    }
+
+    /**
+     * Gets the number of rows.
+     */
+    int getRowCount(int columns) {
+        scan(validate(columns, groupOf(size)), size);
+        return offset > 0 ? row + ceilDiv(offset, columns) : row;
+    }
+
+    /**
+     * Finds the line that is shown at the start of a row.
+     *
+     * @return The index of the line in the upper 32 bits and the first cell of the row in the line
+     * in the lower 32 bits. -1 if the row doesn't exist.
+     */
+    long findRow(int columns, int row) {
+        if (row < 0)
+            return -1;
+        final int last = validate(columns, groupOf(size));
+        // The last group that starts at or before the row.
+        int low = 0;
+        int high = last;
+        while (low < high) {
+            final int mid = (low + high + 1) >>> 1;
+            if (groupRow[mid] + ceilDiv(groupOffset[mid], columns) <= row)
+                low = mid;
+            else
+                high = mid - 1;
+        }
+        this.row = groupRow[low];
+        offset = groupOffset[low];
+        for (int i = start(low); i < size; ++i) {
+            final int line = lines[first + i];
+            final int end = offset + (line >>> 1) + padding(i, Integer.MAX_VALUE, columns);
+            if (row >= this.row) {
+                final long start = (long) (row - this.row) * columns;
+                if (start < end || ((line & 1) == 0 && row < this.row + Math.max(1, ceilDiv(end, columns))))
+                    return ((long) i << 32) | column(i, (int) (start - offset), columns);
+            }
+            step(i, columns);
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the row that shows a cell of a line.
+     */
+    int getRow(int columns, int index, int column) {
+        scan(validate(columns, groupOf(index)), index);
+        return row + (offset + column + (index < size ? padding(index, column + 1, columns) : 0)) / columns;
+    }
+
+    /**
+     * Sets the width and computes the starts of the groups up to a group.
+     *
+     * @return The group, limited to the existing groups.
+     */
+    private int validate(int columns, int group) {
+        columns = Math.max(columns, 1);
+        if (columns != this.columns) {
+            this.columns = columns;
+            groups = 1;
+        }
+        group = Math.min(group, groupOf(size));
+        if (groups <= group) {
+            if (groupRow.length <= group) {
+                groupRow = Arrays.copyOf(groupRow, Math.max(group + 1, groupRow.length * 2));
+                groupOffset = Arrays.copyOf(groupOffset, groupRow.length);
+            }
+            row = groupRow[groups - 1];
+            offset = groupOffset[groups - 1];
+            for (int i = start(groups - 1); groups <= group; ++groups) {
+                for (final int end = start(groups); i < end; ++i)
+                    step(i, columns);
+                groupRow[groups] = row;
+                groupOffset[groups] = offset;
+            }
+        }
+        return group;
+    }
+
+    /**
+     * Scans lines, starting at the start of a group.
+     */
+    private void scan(int group, int to) {
+        row = groupRow[group];
+        offset = groupOffset[group];
+        for (int i = start(group); i < to; ++i)
+            step(i, columns);
+    }
+
+    private int groupOf(int index) {
+        return (index + phase) / GROUP;
+    }
+
+    private int start(int group) {
+        return Math.max(0, group * GROUP - phase);
+    }
+
+    /**
+     * Gets the number of cells that are left empty before the wide characters of a line, if the line starts at the
+     * current offset. With one column a wide character takes only one cell, like in {@link TerminalModel#setChars},
+     * the padding is negative.
+     *
+     * @param index The index of the line.
+     * @param to    Only the wide characters before this column are counted.
+     */
+    private int padding(int index, int to, int columns) {
+        final int[] w = wide == null ? null : wide[first + index];
+        int padding = 0;
+        if (w != null) {
+            for (int i = 0; i < w.length && w[i] < to; ++i) {
+                if (columns == 1) {
+                    if (w[i] + 1 < to)
+                        --padding;
+                } else if ((offset + w[i] + padding) % columns == columns - 1)
+                    ++padding;
+            }
+        }
+        return padding;
+    }
+
+    /**
+     * Gets the column of a line at a cell of the logical line, relative to the current offset.
+     */
+    private int column(int index, int cell, int columns) {
+        final int[] w = wide == null ? null : wide[first + index];
+        int padding = 0;
+        if (w != null) {
+            for (int i = 0; i < w.length && w[i] + padding < cell; ++i) {
+                if (columns == 1)
+                    --padding;
+                else if ((offset + w[i] + padding) % columns == columns - 1)
+                    ++padding;
+            }
+        }
+        return cell - padding;
+    }
+
+    private void step(int index, int columns) {
+        final int line = lines[first + index];
+        final int end = offset + (line >>> 1) + padding(index, Integer.MAX_VALUE, columns);
+        if ((line & 1) != 0) {
+            offset = end;
+        } else {
+            row += Math.max(1, ceilDiv(end, columns));
+            offset = 0;
+        }
+    }
+
+    private static int ceilDiv(int a, int b) {
+        return (a + b - 1) / b;
+    }
+}
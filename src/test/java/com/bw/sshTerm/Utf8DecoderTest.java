@@ -0,0 +1,65 @@
+/**
+ * Copyright 2025, Bernd Wengenroth.
+ * This is free and unencumbered software released into the public domain.
+ * Check LICENSE for details.
+ */
+package com.bw.sshTerm;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class Utf8DecoderTest {
+
+    private static int[] decode(Utf8Decoder decoder, byte[] data) {
+        final int[] dst = new int[data.length + 1];
+        return Arrays.copyOf(dst, decoder.decode(data, 0, data.length, dst));
+    }
+
+    private static int[] decode(byte[] data) {
+        return decode(new Utf8Decoder(), data);
+    }
+
+    @Test
+    void decodesAllLengths() {
+        final String text = "a\u00E4\u20AC\uD83D\uDE00";
+        assertArrayEquals(text.codePoints().toArray(), decode(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void continuesSplitSequences() {
+        final byte[] data = "x\uD83D\uDE00y".getBytes(StandardCharsets.UTF_8);
+        final Utf8Decoder decoder = new Utf8Decoder();
+        assertArrayEquals(new int[]{'x'}, decode(decoder, Arrays.copyOfRange(data, 0, 3)));
+        assertTrue(decoder.isPending());
+        assertArrayEquals(new int[]{0x1F600, 'y'}, decode(decoder, Arrays.copyOfRange(data, 3, data.length)));
+        assertFalse(decoder.isPending());
+    }
+
+    @Test
+    void replacesInvalidInput() {
+        final int r = Utf8Decoder.REPLACEMENT_CHARACTER;
+        // Illegal byte, overlong encoding of '/' and an encoded surrogate.
+        assertArrayEquals(new int[]{'a', r, 'b'}, decode(new byte[]{'a', (byte) 0xFF, 'b'}));
+        assertArrayEquals(new int[]{r}, decode(new byte[]{(byte) 0xC0, (byte) 0xAF}));
+        assertArrayEquals(new int[]{r}, decode(new byte[]{(byte) 0xED, (byte) 0xA0, (byte) 0x80}));
+        // An interrupted sequence, the interrupting byte is decoded.
+        assertArrayEquals(new int[]{r, 'a'}, decode(new byte[]{(byte) 0xE2, (byte) 0x82, 'a'}));
+    }
+
+    @Test
+    void stopsBehindC1Control() {
+        final byte[] data = {'a', (byte) 0xC2, (byte) 0x9B, 'b'};
+        final Utf8Decoder decoder = new Utf8Decoder();
+        final int[] dst = new int[data.length + 1];
+        assertEquals(2, decoder.decode(data, 0, data.length, dst));
+        assertEquals(0x9B, dst[1]);
+        assertEquals(3, decoder.getPosition());
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ * Copyright 2025, Bernd Wengenroth.
+ * This is free and unencumbered software released into the public domain.
+ * Check LICENSE for details.
+ */
+package com.bw.sshTerm;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VtParserTest {
+
+    /**
+     * Records the actions as readable strings.
+     */
+    private static final class Recorder implements VtParser.Handler {
+        final List<String> actions = new ArrayList<>();
+
+        @Override
+        public void print(byte c) {
+            actions.add("print " + (c & 0xFF));
+        }
+
+        @Override
+        public void execute(int c) {
+            actions.add("execute " + c);
+        }
+
+        @Override
+        public void escDispatch(int intermediates, int c) {
+            actions.add("esc " + intermediates + " " + (char) c);
+        }
+
+        @Override
+        public void csiDispatch(int privateMarker, int intermediates, int c, ControlSequenceParameters params) {
+            actions.add("csi " + privateMarker + " " + intermediates + " " + (char) c + " " + params);
+        }
+
+        @Override
+        public void oscDispatch(int terminator, ControlSequenceParameters params) {
+            actions.add("osc " + terminator + " " + params.getInt(0, -1) + " " + params.getText());
+        }
+
+        @Override
+        public void hook(int privateMarker, int intermediates, int c, ControlSequenceParameters params) {
+            actions.add("hook " + privateMarker + " " + intermediates + " " + (char) c + " " + params);
+        }
+
+        @Override
+        public void put(byte c) {
+            actions.add("put " + (char) c);
+        }
+
+        @Override
+        public void unhook() {
+            actions.add("unhook");
+        }
+    }
+
+    private static List<String> parse(String input) {
+        final Recorder recorder = new Recorder();
+        final VtParser parser = new VtParser(recorder);
+        for (byte b : input.getBytes(StandardCharsets.UTF_8))
+            parser.advance(b);
+        return recorder.actions;
+    }
+
+    @Test
+    void printAndExecute() {
+        assertEquals(List.of("print 97", "execute 13", "execute 10"), parse("a\r\n"));
+    }
+
+    @Test
+    void utf8IsPrinted() {
+        assertEquals(List.of("print 195", "print 164"), parse("\u00E4"));
+    }
+
+    @Test
+    void csiWithParameters() {
+        assertEquals(List.of("csi 0 0 m 1,38:5:123"), parse("\u001b[1;38:5:123m"));
+        assertEquals(List.of("csi 63 0 h 25"), parse("\u001b[?25h"));
+        assertEquals(List.of("csi 0 32 q 2"), parse("\u001b[2 q"));
+    }
+
+    @Test
+    void csiExecutesControls() {
+        assertEquals(List.of("execute 8", "csi 0 0 A 5"), parse("\u001b[5\bA"));
+    }
+
+    @Test
+    void invalidCsiIsIgnored() {
+        assertEquals(List.of("print 120"), parse("\u001b[1?2mx"));
+    }
+
+    @Test
+    void cancelAbortsSequence() {
+        assertEquals(List.of("execute 24", "print 120"), parse("\u001b[12\u0018x"));
+    }
+
+    @Test
+    void escapeWithIntermediate() {
+        assertEquals(List.of("esc 40 B"), parse("\u001b(B"));
+        assertEquals(List.of("esc 0 7"), parse("\u001b7"));
+    }
+
+    @Test
+    void oscTerminatedByBel() {
+        assertEquals(List.of("osc " + VtParser.BEL + " 0 title"), parse("\u001b]0;title\u0007"));
+    }
+
+    @Test
+    void oscTerminatedBySt() {
+        assertEquals(List.of("osc " + VtParser.ST + " 2 a;b", "esc 0 \\"), parse("\u001b]2;a;b\u001b\\"));
+    }
+
+    @Test
+    void dcsPassthrough() {
+        assertEquals(List.of("hook 0 36 q ", "put m", "unhook", "esc 0 \\"), parse("\u001bP$qm\u001b\\"));
+    }
+
+    @Test
+    void stringsAreIgnored() {
+        assertEquals(List.of("esc 0 \\", "print 120"), parse("\u001b_apc\u001b\\x"));
+    }
+
+    @Test
+    void c1Control() {
+        final Recorder recorder = new Recorder();
+        final VtParser parser = new VtParser(recorder);
+        parser.advanceC1(0x9B);
+        assertFalse(parser.isGround());
+        parser.advance((byte) '3');
+        parser.advance((byte) 'B');
+        assertTrue(parser.isGround());
+        assertEquals(List.of("csi 0 0 B 3"), recorder.actions);
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright 2025, Bernd Wengenroth.
+ * This is free and unencumbered software released into the public domain.
+ * Check LICENSE for details.
+ */
+package com.bw.sshTerm.model;
+
+import com.bw.sshTerm.CharStyle;
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LineCodecTest {
+
+    private final AttributeTable attributes = new AttributeTable();
+    private final Graphemes graphemes = new Graphemes();
+
+    private Line[] lines() {
+        final int bold = attributes.intern(0xFF0000, 0x000000, CharStyle.BOLD);
+        final int background = attributes.intern(0x00FF00, 0x0000FF, 0);
+        final Line text = new Line(10);
+        text.set(0, 'a', 0);
+        text.set(1, 'b', bold);
+        text.set(2, 0x1F600, bold);
+        // Empty cells with a background color.
+        text.erase(3, 6, background);
+        text.setWrapped(true);
+        final Line wide = new Line(10);
+        wide.set(0, '\u4E2D', 0);
+        wide.set(1, Line.WIDE_TAIL, 0);
+        wide.set(2, graphemes.combine(graphemes.combine('e', 0x301), 0x302), bold);
+        // A noncharacter from the remote side is no wide character.
+        wide.set(3, 0xFDD0, 0);
+        return new Line[]{text, wide, new Line(10)};
+    }
+
+    @Test
+    void roundTrip() {
+        for (boolean deflate : new boolean[]{false, true}) {
+            final Line[] lines = lines();
+            final byte[] data = LineCodec.encode(lines, lines.length, attributes, graphemes, deflate);
+            // Decoded into other tables, the ids may differ.
+            final AttributeTable otherAttributes = new AttributeTable();
+            final Graphemes otherGraphemes = new Graphemes();
+            final Line[] decoded = LineCodec.decode(data, deflate, otherAttributes, otherGraphemes);
+            assertEquals(lines.length, decoded.length);
+            for (int li = 0; li < lines.length; ++li) {
+                final Line line = lines[li];
+                final Line other = decoded[li];
+                assertEquals(line.getLength(), other.getLength());
+                assertEquals(line.isWrapped(), other.isWrapped());
+                for (int x = 0; x < line.getLength(); ++x) {
+                    final int cp = line.getCodePoint(x);
+                    final int otherCp = other.getCodePoint(x);
+                    if (Graphemes.isCluster(cp))
+                        assertArrayEquals(graphemes.codePoints(cp), otherGraphemes.codePoints(otherCp));
+                    else
+                        assertEquals(cp, otherCp);
+                    final int attr = line.getAttributes(x);
+                    final int otherAttr = other.getAttributes(x);
+                    assertEquals(attributes.getForeground(attr), otherAttributes.getForeground(otherAttr));
+                    assertEquals(attributes.getBackground(attr), otherAttributes.getBackground(otherAttr));
+                    assertEquals(attributes.getStyle(attr), otherAttributes.getStyle(otherAttr));
+                }
+            }
+        }
+    }
+
+    @Test
+    void decodeText() {
+        final Line[] lines = lines();
+        final byte[] data = LineCodec.encode(lines, lines.length, attributes, graphemes, true);
+        final BitSet wrapped = new BitSet();
+        final String[] texts = LineCodec.decodeText(data, true, wrapped);
+        for (int li = 0; li < lines.length; ++li)
+            assertEquals(ScrollbackSearch.text(lines[li], graphemes), texts[li]);
+        assertTrue(wrapped.get(0));
+        assertEquals(1, wrapped.cardinality());
+    }
+}
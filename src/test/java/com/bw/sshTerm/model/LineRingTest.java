@@ -0,0 +1,87 @@
+/**
+ * Copyright 2025, Bernd Wengenroth.
+ * This is free and unencumbered software released into the public domain.
+ * Check LICENSE for details.
+ */
+package com.bw.sshTerm.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LineRingTest {
+
+    /**
+     * Creates a ring with a head that is not at the start of the array.
+     */
+    private static LineRing ring(int size, List<Line> reference) {
+        final LineRing ring = new LineRing(size);
+        for (int i = 0; i < size + 5; ++i) {
+            final Line line = new Line(1);
+            ring.addLast(line);
+            reference.add(line);
+        }
+        reference.subList(0, 5).clear();
+        return ring;
+    }
+
+    @Test
+    void rotate() {
+        final List<Line> reference = new ArrayList<>();
+        final LineRing ring = ring(6, reference);
+        final Line[] lines = reference.toArray(new Line[0]);
+        ring.rotate(1, 4, 1);
+        assertEquals(List.of(lines[0], lines[2], lines[3], lines[4], lines[1], lines[5]), ring);
+        ring.rotate(1, 4, -1);
+        assertEquals(reference, ring);
+        // A full turn changes nothing.
+        ring.rotate(0, 5, 6);
+        assertEquals(reference, ring);
+    }
+
+    @Test
+    void rotateMatchesReference() {
+        final Random random = new Random(42);
+        for (int round = 0; round < 200; ++round) {
+            final List<Line> reference = new ArrayList<>();
+            final LineRing ring = ring(1 + random.nextInt(20), reference);
+            final int top = random.nextInt(ring.size());
+            final int bottom = top + random.nextInt(ring.size() - top);
+            final int n = random.nextInt(41) - 20;
+            ring.rotate(top, bottom, n);
+            // Collections.rotate moves towards higher indices.
+            Collections.rotate(reference.subList(top, bottom + 1), -n);
+            assertEquals(reference, ring);
+        }
+    }
+
+    @Test
+    void scroll() {
+        final List<Line> reference = new ArrayList<>();
+        final LineRing ring = ring(8, reference);
+        final Line inserted = new Line(1);
+        assertSame(reference.get(2), ring.scrollUp(2, 6, inserted));
+        reference.remove(2);
+        reference.add(6, inserted);
+        assertEquals(reference, ring);
+        final Line other = new Line(1);
+        assertSame(reference.get(7), ring.scrollDown(0, 7, other));
+        reference.remove(7);
+        reference.add(0, other);
+        assertEquals(reference, ring);
+    }
+
+    @Test
+    void invalidRegion() {
+        final LineRing ring = ring(4, new ArrayList<>());
+        assertThrows(IndexOutOfBoundsException.class, () -> ring.rotate(2, 4, 1));
+        assertThrows(IndexOutOfBoundsException.class, () -> ring.rotate(3, 2, 1));
+    }
+}
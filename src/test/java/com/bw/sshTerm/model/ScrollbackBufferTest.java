@@ -0,0 +1,83 @@
+/**
+ * Copyright 2025, Bernd Wengenroth.
+ * This is free and unencumbered software released into the public domain.
+ * Check LICENSE for details.
+ */
+package com.bw.sshTerm.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ScrollbackBufferTest {
+
+    private static Line line(String text, boolean wrapped) {
+        final Line line = new Line(text.length());
+        int x = 0;
+        for (int i = 0; i < text.length(); ) {
+            final int cp = text.codePointAt(i);
+            i += Character.charCount(cp);
+            line.set(x++, cp, 0);
+            if (CharWidth.of(cp) == 2)
+                line.set(x++, Line.WIDE_TAIL, 0);
+        }
+        line.setWrapped(wrapped);
+        return line;
+    }
+
+    private static String text(Line line) {
+        return line == null ? null : ScrollbackSearch.text(line, null);
+    }
+
+    private static List<String> rows(ScrollbackBuffer buffer, int columns) {
+        final List<String> rows = new ArrayList<>();
+        for (int row = 0; row < buffer.getRowCount(columns); ++row)
+            rows.add(text(buffer.getRow(columns, row)));
+        assertNull(buffer.getRow(columns, buffer.getRowCount(columns)));
+        return rows;
+    }
+
+    private static ScrollbackBuffer buffer() {
+        return new ScrollbackBuffer(new AttributeTable(), new Graphemes(), 1000, Integer.MAX_VALUE);
+    }
+
+    @Test
+    void reflow() {
+        final ScrollbackBuffer buffer = buffer();
+        buffer.addLast(line("abcdef", true));
+        buffer.addLast(line("ghijkl", false));
+        buffer.addLast(line("xy", false));
+        assertEquals(List.of("abcdef", "ghijkl", "xy"), rows(buffer, 6));
+        assertEquals(List.of("abcd", "efgh", "ijkl", "xy"), rows(buffer, 4));
+        assertEquals(List.of("abcdefgh", "ijkl", "xy"), rows(buffer, 8));
+        assertEquals(List.of("abcdefghijkl", "xy"), rows(buffer, 20));
+        assertEquals(List.of("abcde", "fghij", "kl", "xy"), rows(buffer, 5));
+    }
+
+    @Test
+    void reflowWideCharacters() {
+        final ScrollbackBuffer buffer = buffer();
+        buffer.addLast(line("\u4E2D\u6587\u5B57\u7B26\u53F7\u7801\u8868", false));
+        // A wide character is not split, it moves to the next row.
+        assertEquals(List.of("\u4E2D\u6587", "\u5B57\u7B26", "\u53F7\u7801", "\u8868"), rows(buffer, 5));
+        assertEquals(List.of("\u4E2D\u6587\u5B57", "\u7B26\u53F7\u7801", "\u8868"), rows(buffer, 6));
+        assertEquals(2, buffer.getRowOf(5, 0, 9));
+        assertEquals(3, buffer.getRowOf(5, 0, 12));
+        assertEquals((0L << 32) | 8, buffer.getRowPosition(5, 2));
+    }
+
+    @Test
+    void rowsAfterRemovingLines() {
+        final ScrollbackBuffer buffer = buffer();
+        for (int i = 0; i < 10; ++i)
+            buffer.addLast(line("line" + i + "-abc", i % 2 == 0));
+        buffer.removeLast();
+        buffer.setLimit(5);
+        assertEquals(5, buffer.size());
+        assertEquals(List.of("line4-", "abclin", "e5-abc", "line6-", "abclin", "e7-abc", "line8-", "abc"), rows(buffer, 6));
+    }
+}
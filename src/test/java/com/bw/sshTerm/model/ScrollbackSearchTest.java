@@ -0,0 +1,38 @@
+/**
+ * Copyright 2025, Bernd Wengenroth.
+ * This is free and unencumbered software released into the public domain.
+ * Check LICENSE for details.
+ */
+package com.bw.sshTerm.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ScrollbackSearchTest {
+
+    @Test
+    void requiredLiterals() {
+        assertEquals(List.of("hello"), ScrollbackSearch.requiredLiterals("hello"));
+        assertEquals(List.of("abc", "def"), ScrollbackSearch.requiredLiterals("abc.*def"));
+        assertEquals(List.of("error"), ScrollbackSearch.requiredLiterals("errors?"));
+        assertEquals(List.of("a.b"), ScrollbackSearch.requiredLiterals("a\\.b"));
+        assertEquals(List.of(), ScrollbackSearch.requiredLiterals("abc|def"));
+        assertEquals(List.of(), ScrollbackSearch.requiredLiterals("(?x)a b c"));
+        assertEquals(List.of("xyz"), ScrollbackSearch.requiredLiterals("[abc]+xyz"));
+    }
+
+    @Test
+    void requiredLiteralsSkipEscapeArguments() {
+        assertEquals(List.of("abc", "xyz"), ScrollbackSearch.requiredLiterals("abc\\x41xyz"));
+        assertEquals(List.of("abc", "xyz"), ScrollbackSearch.requiredLiterals("abc\\x{41}xyz"));
+        assertEquals(List.of("abc", "xyz"), ScrollbackSearch.requiredLiterals("abc\\u0041xyz"));
+        assertEquals(List.of("abc", "xyz"), ScrollbackSearch.requiredLiterals("abc\\0101xyz"));
+        assertEquals(List.of("abc", "xyz"), ScrollbackSearch.requiredLiterals("abc\\k<name>xyz"));
+        assertEquals(List.of("abc", "xyz"), ScrollbackSearch.requiredLiterals("abc\\p{Lu}xyz"));
+        assertEquals(List.of("abc", "xyz"), ScrollbackSearch.requiredLiterals("abc\\cAxyz"));
+        assertEquals(List.of("foo.*+bar"), ScrollbackSearch.requiredLiterals("foo\\Q.*+\\Ebar"));
+    }
+}
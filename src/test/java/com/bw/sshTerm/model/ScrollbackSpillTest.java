@@ -0,0 +1,74 @@
+/**
+ * Copyright 2025, Bernd Wengenroth.
+ * This is free and unencumbered software released into the public domain.
+ * Check LICENSE for details.
+ */
+package com.bw.sshTerm.model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ScrollbackSpillTest {
+
+    @TempDir
+    Path dir;
+
+    private static Line[] lines(int first) {
+        final Line[] lines = new Line[ScrollbackBuffer.BLOCK_LINES];
+        for (int i = 0; i < lines.length; ++i) {
+            final String text = "line " + (first + i);
+            lines[i] = new Line(text.length());
+            for (int x = 0; x < text.length(); ++x)
+                lines[i].set(x, text.charAt(x), 0);
+        }
+        return lines;
+    }
+
+    @Test
+    void restore() throws IOException {
+        final Path file = dir.resolve("session.scrollback");
+        final AttributeTable attributes = new AttributeTable();
+        final Graphemes graphemes = new Graphemes();
+        final byte[] first = LineCodec.encode(lines(0), ScrollbackBuffer.BLOCK_LINES, attributes, graphemes, false);
+        final byte[] second = LineCodec.encode(lines(256), ScrollbackBuffer.BLOCK_LINES, attributes, graphemes, true);
+        try (ScrollbackSpill spill = new ScrollbackSpill(file, true)) {
+            spill.append(first, false);
+            spill.append(second, true);
+        }
+        try (ScrollbackSpill spill = new ScrollbackSpill(file, true)) {
+            assertEquals(2, spill.size());
+            assertArrayEquals(first, spill.read(0));
+            assertFalse(spill.isDeflated(0));
+            assertArrayEquals(second, spill.read(1));
+            assertTrue(spill.isDeflated(1));
+            assertThrows(IndexOutOfBoundsException.class, () -> spill.read(2));
+            assertThrows(IndexOutOfBoundsException.class, () -> spill.isDeflated(-1));
+
+            // The restored blocks are the oldest lines of a buffer.
+            final ScrollbackBuffer buffer = new ScrollbackBuffer(attributes, graphemes, 1000, Integer.MAX_VALUE);
+            buffer.addLast(lines(512)[0]);
+            buffer.setSpill(spill);
+            assertEquals(2 * ScrollbackBuffer.BLOCK_LINES + 1, buffer.size());
+            assertEquals("line 0", ScrollbackSearch.text(buffer.get(0), graphemes));
+            assertEquals("line 300", ScrollbackSearch.text(buffer.get(300), graphemes));
+            assertEquals("line 512", ScrollbackSearch.text(buffer.get(512), graphemes));
+        }
+    }
+
+    @Test
+    void otherFileIsRejected() throws IOException {
+        final Path file = dir.resolve("other");
+        Files.writeString(file, "no spill file");
+        assertThrows(IOException.class, () -> new ScrollbackSpill(file, true));
+    }
+}
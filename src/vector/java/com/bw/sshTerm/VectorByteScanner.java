@@ -0,0 +1,46 @@
+/**
+ * Copyright 2025, Bernd Wengenroth.
+ * This is free and unencumbered software released into the public domain.
+ * Check LICENSE for details.
+ */
+package com.bw.sshTerm;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Scanner that classifies whole blocks of bytes at once by the Vector API.<p>
+ * Don't use this class directly, it can only be loaded if module "jdk.incubator.vector" is available.
+ * Use {@link ByteScanner#create()}.
+ */
+final class VectorByteScanner implements ByteScanner {
+
+    /**
+     * The species, 32 bytes for AVX2, 64 bytes for AVX-512.
+     */
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+
+    private final ScalarByteScanner tail = new ScalarByteScanner();
+
+    @Override
+    public int findControl(byte[] buffer, int start, int end) {
+        final int step = SPECIES.length();
+        final int upperBound = start + SPECIES.loopBound(end - start);
+        int i = start;
+        for (; i < upperBound; i += step) {
+            ByteVector v = ByteVector.fromArray(SPECIES, buffer, i);
+            // Bytes are signed, compare unsigned to handle bytes >= 0x80 as text.
+            VectorMask<Byte> control = v.compare(VectorOperators.UNSIGNED_LT, (byte) 0x20).or(v.eq((byte) 0x7F));
+            if (control.anyTrue())
+                return i + control.firstTrue();
+        }
+        return tail.findControl(buffer, i, end);
+    }
+
+    @Override
+    public String getName() {
+        return "vector" + (SPECIES.length() * 8);
+    }
+}